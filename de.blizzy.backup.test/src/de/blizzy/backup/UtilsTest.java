@@ -7,6 +7,8 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
 
 import org.junit.Test;
 
@@ -14,15 +16,16 @@ import de.blizzy.backup.vfs.IFolder;
 
 public class UtilsTest {
 	@Test
-	public void createBackupFilePath() {
-		String path = Utils.createBackupFilePath("dummy"); //$NON-NLS-1$
+	public void createBackupFolderPath() {
+		String path = Utils.createBackupFolderPath();
 		assertTrue(Integer.parseInt(path.substring(0, 4)) >= 1);
 		assertEquals("/", path.substring(4, 5)); //$NON-NLS-1$
 		assertTrue(Integer.parseInt(path.substring(5, 7)) >= 1);
 		assertEquals("/", path.substring(7, 8)); //$NON-NLS-1$
 		assertTrue(Integer.parseInt(path.substring(8, 10)) >= 1);
 		assertEquals("/", path.substring(10, 11)); //$NON-NLS-1$
-		assertTrue(path.substring(11).length() > 0);
+		assertTrue(Integer.parseInt(path.substring(11, 15)) >= 0);
+		assertEquals(15, path.length());
 	}
 	
 	@Test
@@ -83,4 +86,13 @@ public class UtilsTest {
 		// wrong order
 		assertFalse(Utils.isParent(folder2, folder1));
 	}
+	
+	@Test
+	public void getTrigrams() {
+		assertEquals(new HashSet<>(Arrays.asList("abc", "bca", "cab")), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				Utils.getTrigrams("abcabc")); //$NON-NLS-1$
+		assertEquals(new HashSet<>(Arrays.asList("abc")), Utils.getTrigrams("abc")); //$NON-NLS-1$ //$NON-NLS-2$
+		// too short
+		assertTrue(Utils.getTrigrams("ab").isEmpty()); //$NON-NLS-1$
+	}
 }
@@ -0,0 +1,63 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import static org.junit.Assert.*;
+
+import java.util.Calendar;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class RetentionPolicyTest {
+	@Test
+	public void getBackupsToRemove() {
+		Calendar c = Calendar.getInstance();
+		c.set(2012, Calendar.JUNE, 15, 12, 0, 0);
+		c.set(Calendar.MILLISECOND, 0);
+		long now = c.getTimeInMillis();
+
+		RetentionPolicy policy = new RetentionPolicy(7, 30, 365);
+		// hourlies
+		policy.addBackup(1, getTime(now, -1, 10), false);
+		policy.addBackup(2, getTime(now, -1, 11), false);
+		// dailies
+		policy.addBackup(3, getTime(now, -10, 10), false);
+		policy.addBackup(4, getTime(now, -10, 14), false);
+		// weeklies
+		policy.addBackup(5, getTime(now, -60, 10), false);
+		policy.addBackup(6, getTime(now, -60, 14), false);
+		policy.addBackup(7, getTime(now, -1, 12), true);
+		policy.addBackup(8, getTime(now, -400, 10), false);
+
+		Map<Integer, RetentionPolicy.Reason> backupsToRemove = policy.getBackupsToRemove(now);
+		assertEquals(4, backupsToRemove.size());
+		assertEquals(RetentionPolicy.Reason.DAILY, backupsToRemove.get(Integer.valueOf(3)));
+		assertEquals(RetentionPolicy.Reason.WEEKLY, backupsToRemove.get(Integer.valueOf(5)));
+		assertEquals(RetentionPolicy.Reason.FAILED, backupsToRemove.get(Integer.valueOf(7)));
+		assertEquals(RetentionPolicy.Reason.AGE, backupsToRemove.get(Integer.valueOf(8)));
+	}
+
+	private static long getTime(long now, int days, int hour) {
+		Calendar c = Calendar.getInstance();
+		c.setTimeInMillis(now);
+		c.add(Calendar.DAY_OF_YEAR, days);
+		c.set(Calendar.HOUR_OF_DAY, hour);
+		return c.getTimeInMillis();
+	}
+}
@@ -0,0 +1,125 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.BrokenInputStream;
+import org.jooq.Record;
+
+import de.blizzy.backup.database.Database;
+import de.blizzy.backup.database.schema.Tables;
+
+public class BackupFileReader {
+	private Database database;
+	private String outputFolder;
+	private Collection<IStorageInterceptor> storageInterceptors;
+
+	public BackupFileReader(Database database, String outputFolder,
+			Collection<IStorageInterceptor> storageInterceptors) {
+
+		this.database = database;
+		this.outputFolder = outputFolder;
+		this.storageInterceptors = storageInterceptors;
+	}
+
+	// returns the uncompressed contents of a file - backupPath is null if the file is stored as chunks,
+	// packOffset is -1 unless the file is stored in a pack file
+	public InputStream open(int fileId, String backupPath, long packOffset, long packLength, long length,
+			Compression compression) throws IOException {
+
+		if (backupPath != null) {
+			return open(backupPath, packOffset, packLength, length, compression);
+		}
+
+		final List<Record> chunks = database.factory()
+			.select(Tables.CHUNKS.BACKUP_PATH, Tables.CHUNKS.LENGTH, Tables.CHUNKS.COMPRESSION)
+			.from(Tables.FILE_CHUNKS)
+			.join(Tables.CHUNKS)
+				.on(Tables.CHUNKS.ID.equal(Tables.FILE_CHUNKS.CHUNK_ID))
+			.where(Tables.FILE_CHUNKS.FILE_ID.equal(Integer.valueOf(fileId)))
+			.orderBy(Tables.FILE_CHUNKS.IDX)
+			.fetch();
+		final Iterator<Record> iter = chunks.iterator();
+		Enumeration<InputStream> streams = new Enumeration<InputStream>() {
+			@Override
+			public boolean hasMoreElements() {
+				return iter.hasNext();
+			}
+
+			@Override
+			public InputStream nextElement() {
+				if (!iter.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Record record = iter.next();
+				try {
+					return open(record.getValue(Tables.CHUNKS.BACKUP_PATH), -1, -1,
+							record.getValue(Tables.CHUNKS.LENGTH).longValue(),
+							Compression.fromValue(record.getValue(Tables.CHUNKS.COMPRESSION).intValue()));
+				} catch (IOException e) {
+					// SequenceInputStream only allows for unchecked exceptions
+					return new BrokenInputStream(e);
+				}
+			}
+		};
+		return new SequenceInputStream(streams);
+	}
+
+	private InputStream open(String backupPath, long packOffset, long packLength, long length,
+			Compression compression) throws IOException {
+
+		File backupFile = Utils.toBackupFile(backupPath, outputFolder);
+		InputStream in;
+		if (packOffset >= 0) {
+			FileInputStream fileIn = new FileInputStream(backupFile);
+			try {
+				FileChannel channel = fileIn.getChannel();
+				channel.position(packOffset);
+			} catch (IOException | RuntimeException e) {
+				IOUtils.closeQuietly(fileIn);
+				throw e;
+			}
+			in = new BufferedInputStream(new BoundedInputStream(fileIn, packLength));
+		} else {
+			in = new BufferedInputStream(new FileInputStream(backupFile));
+		}
+		try {
+			for (IStorageInterceptor interceptor : storageInterceptors) {
+				in = interceptor.interceptInputStream(in, length);
+			}
+			return compression.getInputStream(in);
+		} catch (IOException | RuntimeException e) {
+			IOUtils.closeQuietly(in);
+			throw e;
+		}
+	}
+}
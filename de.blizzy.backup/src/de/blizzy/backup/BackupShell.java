@@ -389,10 +389,15 @@ class BackupShell {
 					if (status != null) {
 						int numEntries = status.getNumEntries();
 						int totalEntries = status.getTotalEntries();
+						long readRate = status.getReadRate();
+						long writeRate = status.getWriteRate();
+						FileLengthFormat format = new FileLengthFormat();
 						synchronized (backupErrors) {
 							text = Messages.Label_Status + ": " + Messages.Running + " " + //$NON-NLS-1$ //$NON-NLS-2$
 									(((numEntries >= 0) && (totalEntries >= 0)) ?
 											("(" + (int) Math.round(numEntries * 100d / totalEntries) + "%) ") : "") + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+									(((readRate >= 0) && (writeRate >= 0)) ?
+											("(" + NLS.bind(Messages.Format_Rates, format.format(readRate), format.format(writeRate)) + ") ") : "") + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 									(!backupErrors.isEmpty() ? "(<a href=\"errors\">" + Messages.Errors + "</a>) " : "") + //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 									"- " + //$NON-NLS-1$
 									status.getText();
@@ -26,9 +26,29 @@ import java.util.zip.GZIPOutputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+
 public enum Compression {
 	GZIP(1),
-	BZIP2(2);
+	BZIP2(2),
+	STORE(3),
+	LZ4(4),
+	ZSTD(5);
+
+	public static final int DEFAULT_LEVEL = -1;
+	public static final int MIN_LEVEL = 1;
+	public static final int MAX_LEVEL = 9;
+
+	private static final int LZ4_BLOCK_SIZE = 64 * 1024;
+	private static final int ZSTD_DEFAULT_LEVEL = 3;
+	// highest level that doesn't need a lot more memory for decompressing
+	private static final int ZSTD_MAX_LEVEL = 19;
 	
 	private int value;
 
@@ -45,21 +65,72 @@ public enum Compression {
 			return new GZIPInputStream(in);
 		}
 		if (this == BZIP2) {
-			return new BZip2CompressorInputStream(in);
+			// splitting the stream into blocks is just overhead on a single processor
+			return (Runtime.getRuntime().availableProcessors() > 1) ?
+					new ParallelBZip2CompressorInputStream(in) :
+					new BZip2CompressorInputStream(in);
+		}
+		if (this == STORE) {
+			return in;
+		}
+		if (this == LZ4) {
+			return new LZ4BlockInputStream(in);
+		}
+		if (this == ZSTD) {
+			return new ZstdInputStream(in);
 		}
 		throw new RuntimeException();
 	}
 	
 	public OutputStream getOutputStream(OutputStream out) throws IOException {
+		return getOutputStream(out, DEFAULT_LEVEL);
+	}
+
+	// level is MIN_LEVEL-MAX_LEVEL (fastest to best) or DEFAULT_LEVEL, and is ignored by STORE
+	public OutputStream getOutputStream(OutputStream out, final int level) throws IOException {
 		if (this == GZIP) {
-			return new GZIPOutputStream(out);
+			return new GZIPOutputStream(out) {
+				{
+					def.setLevel(level);
+				}
+			};
 		}
 		if (this == BZIP2) {
-			return new BZip2CompressorOutputStream(out);
+			// block size is the only tunable of BZip2
+			return new ParallelBZip2CompressorOutputStream(out,
+					(level != DEFAULT_LEVEL) ? level : BZip2CompressorOutputStream.MAX_BLOCKSIZE);
+		}
+		if (this == STORE) {
+			return out;
+		}
+		if (this == LZ4) {
+			// compresses much faster than GZIP, but less densely; only the best level uses the slower high compressor
+			LZ4Factory factory = LZ4Factory.fastestInstance();
+			return new LZ4BlockOutputStream(out, LZ4_BLOCK_SIZE,
+					(level == MAX_LEVEL) ? factory.highCompressor() : factory.fastCompressor());
+		}
+		if (this == ZSTD) {
+			// levels are spread over Zstandard's range of 1-19
+			int zstdLevel = (level != DEFAULT_LEVEL) ?
+					1 + (level - MIN_LEVEL) * (ZSTD_MAX_LEVEL - 1) / (MAX_LEVEL - MIN_LEVEL) :
+					ZSTD_DEFAULT_LEVEL;
+			return new ZstdOutputStream(out, zstdLevel).setChecksum(true);
 		}
 		throw new RuntimeException();
 	}
 
+	// ZSTD needs a native library, which isn't available for all platforms
+	public boolean isAvailable() {
+		if (this == ZSTD) {
+			try {
+				Native.load();
+			} catch (UnsatisfiedLinkError e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	public static Compression fromValue(int value) {
 		if (value == GZIP.value) {
 			return GZIP;
@@ -67,6 +138,15 @@ public enum Compression {
 		if (value == BZIP2.value) {
 			return BZIP2;
 		}
+		if (value == STORE.value) {
+			return STORE;
+		}
+		if (value == LZ4.value) {
+			return LZ4;
+		}
+		if (value == ZSTD.value) {
+			return ZSTD;
+		}
 		throw new IllegalArgumentException("unknown value: " + value); //$NON-NLS-1$
 	}
 }
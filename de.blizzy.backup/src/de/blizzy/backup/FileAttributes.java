@@ -131,6 +131,16 @@ public class FileAttributes {
 		return null;
 	}
 	
+	public String getFileKey() {
+		Object fileKey = null;
+		if (dosAttrs != null) {
+			fileKey = dosAttrs.fileKey();
+		} else if (posixAttrs != null) {
+			fileKey = posixAttrs.fileKey();
+		}
+		return (fileKey != null) ? fileKey.toString() : null;
+	}
+	
 	public void setTimes(FileTime creationTime, FileTime modificationTime) throws IOException {
 		if (dosView != null) {
 			dosView.setTimes(modificationTime, null, creationTime);
@@ -42,6 +42,11 @@ public class Messages extends NLS {
 	public static String CleaningUp;
 	public static String CompareFilesChecksum;
 	public static String CompareFilesMetadata;
+	public static String Compression_BZIP2;
+	public static String Compression_GZIP;
+	public static String Compression_LZ4;
+	public static String Compression_STORE;
+	public static String Compression_ZSTD;
 	public static String DropFoldersHelp;
 	public static String Errors;
 	public static String ErrorsWhileCheckingBackup;
@@ -56,27 +61,41 @@ public class Messages extends NLS {
 	public static String Format_GB;
 	public static String Format_KB;
 	public static String Format_MB;
+	public static String Format_Rates;
 	public static String Idle;
 	public static String Initializing;
 	public static String Label_BackupOutputFolder;
+	public static String Label_BackupThreads;
+	public static String Label_Compression;
+	public static String Label_CompressionLevel;
 	public static String Label_CurrentFolder;
+	public static String Label_Default;
 	public static String Label_DeleteAfterDays;
 	public static String Label_DiskFillRate;
 	public static String Label_Folder;
 	public static String Label_Host;
 	public static String Label_KeepAll;
 	public static String Label_Login;
+	public static String Label_MaxBackupFilesPerFolder;
+	public static String Label_MaxPackedFileLength;
+	public static String Label_MinChunkedFileLength;
 	public static String Label_ModificationDate;
+	public static String Label_MoreSearchResults;
 	public static String Label_Name;
 	public static String Label_NextRun;
 	public static String Label_Password;
 	public static String Label_Port;
+	public static String Label_RateLimitHours;
+	public static String Label_ReadRateLimit;
+	public static String Label_RehashInterval;
 	public static String Label_RunDaily;
 	public static String Label_RunHourly;
 	public static String Label_SearchFileFolder;
 	public static String Label_ShowBackupContentsAt;
 	public static String Label_Size;
 	public static String Label_Status;
+	public static String Label_WriteRateLimit;
+	public static String Label_ZeroMeansOff;
 	public static String ModifyBackupSettings;
 	public static String NewVersionAvailable;
 	public static String NoNewVersionAvailable;
@@ -119,6 +138,7 @@ public class Messages extends NLS {
 	public static String Title_NoNewVersionAvailable;
 	public static String Title_OpenBackupDatabase;
 	public static String Title_OutputFolder;
+	public static String Title_Performance;
 	public static String Title_ProgramRunning;
 	public static String Title_Restore;
 	public static String Title_RestoreFromBackup;
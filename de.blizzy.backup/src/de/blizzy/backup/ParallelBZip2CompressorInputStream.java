@@ -0,0 +1,446 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+// splits a BZip2 stream at its block boundaries and decodes the blocks on a shared worker pool
+class ParallelBZip2CompressorInputStream extends InputStream {
+	private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+	private static final int MAX_PENDING_SEGMENTS = NUM_THREADS * 2;
+	// blocks that decode to more than this are decoded while reading instead
+	private static final int MAX_DECODED_SEGMENT_LENGTH = 8 * 1024 * 1024;
+	private static final long BLOCK_MAGIC = 0x314159265359L;
+	private static final long MAGIC_MASK = 0xFFFFFFFFFFFFL;
+
+	private static ExecutorService decompressors;
+
+	private static class Segment {
+		byte[] data;
+		int startBit;
+		long endBit;
+		Future<byte[]> decoded;
+
+		Segment(byte[] data, int startBit, long endBit) {
+			this.data = data;
+			this.startBit = startBit;
+			this.endBit = endBit;
+		}
+
+		int getBlockCRC() {
+			return (int) readBits(data, startBit + 48, 32);
+		}
+	}
+
+	private InputStream in;
+	private byte[] inBuf = new byte[65536];
+	private int inPos;
+	private int inLength;
+	private boolean inEOF;
+	private byte[] header;
+	private int maxSegmentLength;
+	private long window;
+	private long byteIndex;
+	private int currentBit = -1;
+	private byte[] segmentData = new byte[1024 * 1024];
+	private int segmentDataLength;
+	private long segmentDataStartByte;
+	private long segmentStartBit = -1;
+	private boolean endOfStream;
+	private int streamCRC;
+	// combined CRC of the blocks found so far by scanning
+	private int scannedCRC;
+	private LinkedList<Segment> pendingSegments = new LinkedList<>();
+	private boolean firstSegment = true;
+	private InputStream current;
+	private int combinedCRC;
+	private boolean closed;
+
+	ParallelBZip2CompressorInputStream(InputStream in) throws IOException {
+		this.in = in;
+		header = new byte[4];
+		if ((IOUtils.read(in, header) != header.length) ||
+			(header[0] != 'B') || (header[1] != 'Z') || (header[2] != 'h') ||
+			(header[3] < '1') || (header[3] > '9')) {
+
+			throw new IOException("not a BZip2 stream"); //$NON-NLS-1$
+		}
+		for (byte b : header) {
+			window = (window << 8) | (b & 0xFF);
+		}
+		byteIndex = header.length - 1;
+		segmentDataStartByte = header.length;
+		// a block can be slightly larger than its uncompressed data, and false block boundaries
+		// are joined up to this length
+		maxSegmentLength = (header[3] - '0') * 100000 * 2;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] buf = new byte[1];
+		int count;
+		while ((count = read(buf, 0, 1)) == 0) {
+			// nothing
+		}
+		return (count > 0) ? (buf[0] & 0xFF) : -1;
+	}
+
+	@Override
+	public int read(byte[] buf, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("stream closed"); //$NON-NLS-1$
+		}
+		if (len == 0) {
+			return 0;
+		}
+		for (;;) {
+			if (current != null) {
+				int count = current.read(buf, off, len);
+				if (count >= 0) {
+					return count;
+				}
+				current.close();
+				current = null;
+			}
+
+			fillPendingSegments();
+			if (pendingSegments.isEmpty()) {
+				if (combinedCRC != streamCRC) {
+					throw new IOException("stream CRC mismatch"); //$NON-NLS-1$
+				}
+				return -1;
+			}
+			current = nextSegment();
+		}
+	}
+
+	private void fillPendingSegments() throws IOException {
+		while (!endOfStream && (pendingSegments.size() < MAX_PENDING_SEGMENTS)) {
+			Segment segment = scanSegment();
+			if (segment == null) {
+				break;
+			}
+			pendingSegments.add(segment);
+
+			// single-block streams are decoded directly in the reading thread
+			if (!firstSegment) {
+				for (Segment pendingSegment : pendingSegments) {
+					if (pendingSegment.decoded == null) {
+						submit(pendingSegment);
+					}
+				}
+			}
+			firstSegment = false;
+		}
+	}
+
+	private Segment scanSegment() throws IOException {
+		while (!endOfStream) {
+			if (currentBit < 0) {
+				if (fillInput(1) == 0) {
+					throw new IOException("unexpected end of stream"); //$NON-NLS-1$
+				}
+				int b = inBuf[inPos++] & 0xFF;
+				if (segmentDataLength == segmentData.length) {
+					segmentData = Arrays.copyOf(segmentData, segmentData.length * 2);
+				}
+				segmentData[segmentDataLength++] = (byte) b;
+				window = (window << 8) | b;
+				byteIndex++;
+				currentBit = 7;
+			}
+			// segments may end in the middle of a byte, so continue from there
+			while (currentBit >= 0) {
+				int i = currentBit--;
+				long magic = (window >>> i) & MAGIC_MASK;
+				if (magic == BLOCK_MAGIC) {
+					long startBit = byteIndex * 8 + 8 - i - 48;
+					Segment segment = finishSegment(startBit);
+					segmentStartBit = startBit;
+					if (segment != null) {
+						scannedCRC = combineCRC(scannedCRC, segment.getBlockCRC());
+						return segment;
+					}
+				} else if ((magic == ParallelBZip2CompressorOutputStream.END_OF_STREAM_MAGIC) &&
+						isEndOfStream((int) window & 0xFF, i)) {
+
+					Segment segment = finishSegment(byteIndex * 8 + 8 - i - 48);
+					streamCRC = peekStreamCRC((int) window & 0xFF, i);
+					endOfStream = true;
+					return segment;
+				}
+			}
+		}
+		return null;
+	}
+
+	// the end-of-stream marker may occur by chance inside a block, but the real one is followed
+	// by the stream CRC, and then either by the end of the file or by data not part of the stream
+	private boolean isEndOfStream(int b, int remainingBitsInByte) throws IOException {
+		int crcBytes = (32 - remainingBitsInByte + 7) / 8;
+		int length = fillInput(crcBytes + 1);
+		if (length < crcBytes) {
+			return false;
+		}
+		if (length == crcBytes) {
+			return true;
+		}
+		int expectedCRC = scannedCRC;
+		if (segmentStartBit >= 0) {
+			// block that ends at the marker
+			expectedCRC = combineCRC(expectedCRC,
+					(int) readBits(segmentData, segmentStartBit - segmentDataStartByte * 8 + 48, 32));
+		}
+		return peekStreamCRC(b, remainingBitsInByte) == expectedCRC;
+	}
+
+	private static int combineCRC(int combinedCRC, int blockCRC) {
+		return ((combinedCRC << 1) | (combinedCRC >>> 31)) ^ blockCRC;
+	}
+
+	private int fillInput(int length) throws IOException {
+		while ((inLength - inPos < length) && !inEOF) {
+			System.arraycopy(inBuf, inPos, inBuf, 0, inLength - inPos);
+			inLength -= inPos;
+			inPos = 0;
+			int count = in.read(inBuf, inLength, inBuf.length - inLength);
+			if (count < 0) {
+				inEOF = true;
+			} else {
+				inLength += count;
+			}
+		}
+		return inLength - inPos;
+	}
+
+	private Segment finishSegment(long endBit) {
+		Segment segment = null;
+		if (segmentStartBit >= 0) {
+			int startByte = (int) (segmentStartBit / 8 - segmentDataStartByte);
+			segment = new Segment(Arrays.copyOfRange(segmentData, startByte, segmentDataLength),
+					(int) (segmentStartBit % 8), endBit - segmentStartBit / 8 * 8);
+		}
+
+		// keep the bytes that contain the start of the next segment
+		int nextStartByte = (int) (endBit / 8 - segmentDataStartByte);
+		System.arraycopy(segmentData, nextStartByte, segmentData, 0, segmentDataLength - nextStartByte);
+		segmentDataLength -= nextStartByte;
+		segmentDataStartByte += nextStartByte;
+		return segment;
+	}
+
+	private int peekStreamCRC(int b, int remainingBitsInByte) {
+		long crc = b & ((1 << remainingBitsInByte) - 1);
+		int numBits = remainingBitsInByte;
+		for (int pos = inPos; numBits < 32; pos++) {
+			crc = (crc << 8) | (inBuf[pos] & 0xFF);
+			numBits += 8;
+		}
+		return (int) (crc >>> (numBits - 32));
+	}
+
+	private void submit(final Segment segment) {
+		segment.decoded = getDecompressors().submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws IOException {
+				return decode(segment);
+			}
+		});
+	}
+
+	private byte[] decode(Segment segment) throws IOException {
+		InputStream in = openSegment(segment);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(segment.data.length * 4);
+			byte[] buf = new byte[65536];
+			int count;
+			while ((count = in.read(buf)) >= 0) {
+				out.write(buf, 0, count);
+				if (out.size() > MAX_DECODED_SEGMENT_LENGTH) {
+					return null;
+				}
+			}
+			return out.toByteArray();
+		} catch (RuntimeException e) {
+			throw new IOException(e);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private InputStream openSegment(Segment segment) throws IOException {
+		try {
+			// this decodes the whole block already
+			return new BZip2CompressorInputStream(new ByteArrayInputStream(toStream(segment)));
+		} catch (RuntimeException e) {
+			// corrupt data may cause all sorts of exceptions
+			throw new IOException(e);
+		}
+	}
+
+	private InputStream toInputStream(Segment segment, byte[] decoded) throws IOException {
+		InputStream in = (decoded != null) ? new ByteArrayInputStream(decoded) : openSegment(segment);
+		combinedCRC = combineCRC(combinedCRC, segment.getBlockCRC());
+		return in;
+	}
+
+	private InputStream nextSegment() throws IOException {
+		Segment segment = pendingSegments.removeFirst();
+		IOException error = null;
+		try {
+			// segments that have not been decoded in advance are decoded while reading
+			byte[] decoded = (segment.decoded != null) ? getResult(segment.decoded) : null;
+			return toInputStream(segment, decoded);
+		} catch (IOException e) {
+			error = e;
+		}
+
+		// block magic may occur by chance inside a block, so try joining the segment with the following ones
+		for (;;) {
+			fillPendingSegments();
+			if (pendingSegments.isEmpty() || (segment.data.length > maxSegmentLength)) {
+				throw error;
+			}
+			Segment nextSegment = pendingSegments.removeFirst();
+			if (nextSegment.decoded != null) {
+				nextSegment.decoded.cancel(true);
+			}
+			segment = join(segment, nextSegment);
+			try {
+				return toInputStream(segment, decode(segment));
+			} catch (IOException e) {
+				// try again
+			}
+		}
+	}
+
+	private static Segment join(Segment segment, Segment nextSegment) {
+		int overlapByte = (int) (segment.endBit / 8);
+		byte[] data = new byte[overlapByte + nextSegment.data.length];
+		System.arraycopy(segment.data, 0, data, 0, overlapByte);
+		System.arraycopy(nextSegment.data, 0, data, overlapByte, nextSegment.data.length);
+		return new Segment(data, segment.startBit, overlapByte * 8L + nextSegment.endBit);
+	}
+
+	// creates a standalone single-block stream from a segment
+	private byte[] toStream(Segment segment) {
+		int numBits = (int) (segment.endBit - segment.startBit);
+		byte[] stream = new byte[header.length + (numBits + 80 + 7) / 8];
+		System.arraycopy(header, 0, stream, 0, header.length);
+		int pos = header.length;
+		int numBytes = numBits / 8;
+		int shift = segment.startBit;
+		for (int i = 0; i < numBytes; i++) {
+			int b = (segment.data[i] & 0xFF) << shift;
+			if (shift > 0) {
+				b |= (segment.data[i + 1] & 0xFF) >>> (8 - shift);
+			}
+			stream[pos++] = (byte) b;
+		}
+		// remaining bits, end-of-stream marker, stream CRC
+		int remainingBits = numBits % 8;
+		long tail = (remainingBits > 0) ? readBits(segment.data, segment.startBit + numBytes * 8, remainingBits) : 0;
+		tail = (tail << 48) | ParallelBZip2CompressorOutputStream.END_OF_STREAM_MAGIC;
+		int bitCount = remainingBits + 48;
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			stream[pos++] = (byte) (tail >>> bitCount);
+		}
+		tail = (tail << 32) | (segment.getBlockCRC() & 0xFFFFFFFFL);
+		bitCount += 32;
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			stream[pos++] = (byte) (tail >>> bitCount);
+		}
+		if (bitCount > 0) {
+			stream[pos] = (byte) (tail << (8 - bitCount));
+		}
+		return stream;
+	}
+
+	private static long readBits(byte[] data, long bitOffset, int numBits) {
+		long result = 0;
+		for (int i = 0; i < numBits; i++) {
+			long bit = bitOffset + i;
+			result = (result << 1) | ((data[(int) (bit / 8)] >>> (7 - (bit % 8))) & 1);
+		}
+		return result;
+	}
+
+	private static byte[] getResult(Future<byte[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		for (Segment segment : pendingSegments) {
+			if (segment.decoded != null) {
+				segment.decoded.cancel(true);
+			}
+		}
+		pendingSegments.clear();
+		IOUtils.closeQuietly(current);
+		in.close();
+	}
+
+	private static synchronized ExecutorService getDecompressors() {
+		if (decompressors == null) {
+			decompressors = Executors.newFixedThreadPool(NUM_THREADS, new ThreadFactory() {
+				private AtomicInteger threadNumber = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "BZip2 Decompressor " + threadNumber.incrementAndGet()); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return decompressors;
+	}
+}
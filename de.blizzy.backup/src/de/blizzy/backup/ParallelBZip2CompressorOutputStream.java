@@ -0,0 +1,241 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+
+// compresses BZip2 blocks on a shared worker pool and splices them into a single stream
+class ParallelBZip2CompressorOutputStream extends OutputStream {
+	private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+	static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+
+	private static ExecutorService compressors;
+
+	private OutputStream out;
+	private int blockSize;
+	private byte[] segment;
+	private int segmentLength;
+	private LinkedList<Future<byte[]>> pendingSegments = new LinkedList<>();
+	private boolean headerWritten;
+	private int combinedCRC;
+	private long bitBuffer;
+	private int bitCount;
+	private boolean closed;
+
+	ParallelBZip2CompressorOutputStream(OutputStream out, int blockSize) {
+		this.out = out;
+		this.blockSize = blockSize;
+		// RLE1 may expand the input by up to 5/4, so this guarantees each segment
+		// fits into a single block
+		segment = new byte[(blockSize * 100000 - 100) / 5 * 4];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (closed) {
+			throw new IOException("stream closed"); //$NON-NLS-1$
+		}
+		if (segmentLength == segment.length) {
+			submitSegment();
+		}
+		segment[segmentLength++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] buf, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("stream closed"); //$NON-NLS-1$
+		}
+		while (len > 0) {
+			if (segmentLength == segment.length) {
+				submitSegment();
+			}
+			int count = Math.min(len, segment.length - segmentLength);
+			System.arraycopy(buf, off, segment, segmentLength, count);
+			segmentLength += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	private void submitSegment() throws IOException {
+		final byte[] data = segment;
+		final int length = segmentLength;
+		pendingSegments.add(getCompressors().submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws IOException {
+				return compress(data, length);
+			}
+		}));
+		segment = new byte[segment.length];
+		segmentLength = 0;
+
+		// limit the amount of memory held by uncompressed segments
+		while (pendingSegments.size() > NUM_THREADS) {
+			writeSegment(getResult(pendingSegments.removeFirst()));
+		}
+	}
+
+	private byte[] compress(byte[] data, int length) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream(length / 4);
+		BZip2CompressorOutputStream bzipOut = new BZip2CompressorOutputStream(buf, blockSize);
+		bzipOut.write(data, 0, length);
+		bzipOut.close();
+		return buf.toByteArray();
+	}
+
+	private void writeSegment(byte[] stream) throws IOException {
+		if (!headerWritten) {
+			// "BZh" plus block size
+			out.write(stream, 0, 4);
+			headerWritten = true;
+		}
+
+		int endBits = findEndOfStream(stream);
+		// stream CRC of a single-block stream is the block CRC
+		int blockCRC = (int) readBits(stream, endBits + 48, 32);
+		combinedCRC = ((combinedCRC << 1) | (combinedCRC >>> 31)) ^ blockCRC;
+
+		// the blocks start byte-aligned after the header, but need to be shifted
+		// to where the previous segment ended
+		int endBytes = endBits / 8;
+		byte[] buf = new byte[endBytes - 4];
+		long bits = bitBuffer;
+		for (int i = 4; i < endBytes; i++) {
+			bits = (bits << 8) | (stream[i] & 0xFF);
+			buf[i - 4] = (byte) (bits >>> bitCount);
+		}
+		bitBuffer = bits;
+		out.write(buf);
+		int remainingBits = endBits % 8;
+		if (remainingBits > 0) {
+			writeBits((stream[endBytes] & 0xFF) >>> (8 - remainingBits), remainingBits);
+		}
+	}
+
+	private static int findEndOfStream(byte[] stream) throws IOException {
+		int totalBits = stream.length * 8;
+		// stream is padded with up to 7 zero bits after the end-of-stream marker and CRC
+		for (int padding = 0; padding < 8; padding++) {
+			int endBits = totalBits - padding - 80;
+			if ((endBits >= 32) && (readBits(stream, endBits, 48) == END_OF_STREAM_MAGIC)) {
+				return endBits;
+			}
+		}
+		throw new IOException("end of stream marker not found"); //$NON-NLS-1$
+	}
+
+	private static long readBits(byte[] stream, int bitOffset, int numBits) {
+		long result = 0;
+		for (int i = 0; i < numBits; i++) {
+			int bit = bitOffset + i;
+			result = (result << 1) | ((stream[bit / 8] >>> (7 - (bit % 8))) & 1);
+		}
+		return result;
+	}
+
+	private void writeBits(long bits, int numBits) throws IOException {
+		bitBuffer = (bitBuffer << numBits) | bits;
+		bitCount += numBits;
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			out.write((int) (bitBuffer >>> bitCount));
+		}
+	}
+
+	private static byte[] getResult(Future<byte[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			if (pendingSegments.isEmpty()) {
+				// small stream, no need to splice anything
+				BZip2CompressorOutputStream bzipOut = new BZip2CompressorOutputStream(out, blockSize);
+				bzipOut.write(segment, 0, segmentLength);
+				bzipOut.close();
+				return;
+			}
+
+			if (segmentLength > 0) {
+				submitSegment();
+			}
+			while (!pendingSegments.isEmpty()) {
+				writeSegment(getResult(pendingSegments.removeFirst()));
+			}
+			writeBits(END_OF_STREAM_MAGIC, 48);
+			writeBits(combinedCRC & 0xFFFFFFFFL, 32);
+			if (bitCount > 0) {
+				writeBits(0, 8 - bitCount);
+			}
+			out.close();
+		} finally {
+			for (Future<byte[]> future : pendingSegments) {
+				future.cancel(true);
+			}
+			segment = null;
+			// closing again has no effect if the stream has been closed above
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	private static synchronized ExecutorService getCompressors() {
+		if (compressors == null) {
+			compressors = Executors.newFixedThreadPool(NUM_THREADS, new ThreadFactory() {
+				private AtomicInteger threadNumber = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "BZip2 Compressor " + threadNumber.incrementAndGet()); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return compressors;
+	}
+}
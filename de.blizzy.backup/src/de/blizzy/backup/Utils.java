@@ -17,32 +17,39 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package de.blizzy.backup;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.zip.Deflater;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jface.dialogs.IDialogSettings;
 import org.eclipse.swt.widgets.Display;
+import org.jooq.Field;
 import org.jooq.Record;
+import org.jooq.impl.Factory;
 
 import de.blizzy.backup.database.Database;
 import de.blizzy.backup.database.schema.Tables;
+import de.blizzy.backup.vfs.IChannelFile;
 import de.blizzy.backup.vfs.IFolder;
+import de.blizzy.backup.vfs.IOutputStreamProvider;
 
 public final class Utils {
 	public static interface IFileOrFolderEntry {
@@ -52,9 +59,15 @@ public final class Utils {
 		String getName();
 	}
 
+	// separates the name IDs in entries' name paths
+	public static final String NAME_PATH_SEPARATOR = "/"; //$NON-NLS-1$
+	public static final int TRIGRAM_LENGTH = 3;
+
 	private static final String DIALOG_SECTION = BackupPlugin.ID + ".dialog"; //$NON-NLS-1$
 	private static final DateFormat BACKUP_PATH_FORMAT =
 		new SimpleDateFormat("yyyy'/'MM'/'dd'/'HHmm"); //$NON-NLS-1$
+	private static final int MIN_COPY_BUFFER_SIZE = 8 * 1024;
+	private static final int MAX_COPY_BUFFER_SIZE = 1024 * 1024;
 
 	private Utils() {}
 
@@ -71,16 +84,18 @@ public final class Utils {
 		return section;
 	}
 
-	public static String createBackupFilePath(String outputFolder) {
-		String datePath = BACKUP_PATH_FORMAT.format(new Date());
-		File folder = toBackupFile(datePath + "/dummy", outputFolder).getParentFile(); //$NON-NLS-1$
-		int maxIdx = getMaxBackupFileIndex(folder);
-		int newIdx = maxIdx + 1;
-		return datePath + "/" + toBackupFileName(newIdx); //$NON-NLS-1$
+	public static String createBackupFolderPath() {
+		return toBackupFolderPath(new Date());
+	}
+
+	public static String toBackupFolderPath(Date date) {
+		return BACKUP_PATH_FORMAT.format(date);
 	}
 	
 	public static String createSampleBackupFilePath() {
-		return BACKUP_PATH_FORMAT.format(new Date()) + "/" + toBackupFileName(Integer.MAX_VALUE); //$NON-NLS-1$
+		// backup files are stored in subfolders of the backup folder
+		return createBackupFolderPath() + "/" + toBackupFileName(Integer.MAX_VALUE) + //$NON-NLS-1$
+				"/" + toBackupFileName(Integer.MAX_VALUE); //$NON-NLS-1$
 	}
 
 	public static File toBackupFile(String backupFilePath, String outputFolder) {
@@ -121,22 +136,30 @@ public final class Utils {
 		return false;
 	}
 	
-	public static void zipFile(File source, File target) throws IOException {
-		ZipOutputStream out = null;
+	public static void copy(IChannelFile file, IOutputStreamProvider outputStreamProvider) throws IOException {
+		ReadableByteChannel in = null;
+		OutputStream out = null;
 		try {
-			out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target)));
-			out.setLevel(Deflater.BEST_COMPRESSION);
-			
-			ZipEntry entry = new ZipEntry(source.getName());
-			entry.setTime(source.lastModified());
-			out.putNextEntry(entry);
-			
-			Files.copy(source.toPath(), out);
+			in = file.openChannel();
+			out = outputStreamProvider.getOutputStream();
+			// large buffers let digests and compressors work on big chunks at a time
+			int bufferSize = (int) Math.max(Math.min(file.getLength(), MAX_COPY_BUFFER_SIZE), MIN_COPY_BUFFER_SIZE);
+			ByteBuffer buf = ByteBuffer.allocate(bufferSize);
+			while (in.read(buf) >= 0) {
+				if (!buf.hasRemaining()) {
+					out.write(buf.array(), 0, buf.position());
+					buf.clear();
+				}
+			}
+			out.write(buf.array(), 0, buf.position());
+			out.close();
+			out = null;
 		} finally {
 			IOUtils.closeQuietly(out);
+			IOUtils.closeQuietly(in);
 		}
 	}
-	
+
 	public static File toCanonicalFile(File file) {
 		try {
 			return file.getCanonicalFile();
@@ -149,38 +172,131 @@ public final class Utils {
 	public static int findFileOrFolderEntryInBackup(IFileOrFolderEntry fileOrFolder, int backupId, Database database)
 			throws IOException {
 		
-		if (fileOrFolder.isFolder()) {
-			// try to find folder as root folder
-			Record record = database.factory()
-				.select(Tables.ENTRIES.ID)
-				.from(Tables.ENTRIES)
-				.where(Tables.ENTRIES.NAME.equal(fileOrFolder.getAbsolutePath()), Tables.ENTRIES.PARENT_ID.isNull(),
-						Tables.ENTRIES.BACKUP_ID.equal(Integer.valueOf(backupId)))
-				.fetchAny();
-			if (record != null) {
-				return record.getValue(Tables.ENTRIES.ID).intValue();
+		// the entry and its parent folders, nearest first
+		List<IFileOrFolderEntry> fileOrFolders = new ArrayList<>();
+		for (IFileOrFolderEntry f = fileOrFolder; f != null; f = f.getParentFolder()) {
+			fileOrFolders.add(f);
+		}
+		
+		// any of the folders might be the root folder of the backup
+		Set<String> names = new HashSet<>();
+		List<Integer> rootIndexes = new ArrayList<>();
+		for (int i = 0; i < fileOrFolders.size(); i++) {
+			IFileOrFolderEntry f = fileOrFolders.get(i);
+			names.add(f.getName());
+			if (f.isFolder()) {
+				names.add(f.getAbsolutePath());
+				rootIndexes.add(Integer.valueOf(i));
 			}
 		}
+		Map<String, Integer> nameIds = new HashMap<>();
+		for (Record record : database.factory()
+				.select(Tables.NAMES.ID, Tables.NAMES.NAME)
+				.from(Tables.NAMES)
+				.where(Tables.NAMES.NAME.in(names))
+				.fetch()) {
+			
+			nameIds.put(record.getValue(Tables.NAMES.NAME), record.getValue(Tables.NAMES.ID));
+		}
 		
-		// find entry in parent folder
-		IFileOrFolderEntry parentFolder = fileOrFolder.getParentFolder();
-		if (parentFolder != null) {
-			int parentFolderId = findFileOrFolderEntryInBackup(parentFolder, backupId, database);
-			if (parentFolderId > 0) {
-				Record record = database.factory()
-					.select(Tables.ENTRIES.ID)
-					.from(Tables.ENTRIES)
-					.where(Tables.ENTRIES.NAME.equal(fileOrFolder.getName()),
-							Tables.ENTRIES.PARENT_ID.equal(Integer.valueOf(parentFolderId)),
-							Tables.ENTRIES.BACKUP_ID.equal(Integer.valueOf(backupId)))
-					.fetchAny();
-				if (record != null) {
-					return record.getValue(Tables.ENTRIES.ID).intValue();
-				}
+		List<String> namePaths = new ArrayList<>();
+		for (Integer rootIndex : rootIndexes) {
+			int idx = rootIndex.intValue();
+			Integer nameId = nameIds.get(fileOrFolders.get(idx).getAbsolutePath());
+			String namePath = (nameId != null) ? toNamePath(null, nameId.intValue()) : null;
+			for (int i = idx - 1; (i >= 0) && (namePath != null); i--) {
+				nameId = nameIds.get(fileOrFolders.get(i).getName());
+				namePath = (nameId != null) ? toNamePath(namePath, nameId.intValue()) : null;
+			}
+			if (namePath != null) {
+				namePaths.add(namePath);
 			}
 		}
+		if (namePaths.isEmpty()) {
+			return -1;
+		}
 		
-		return -1;
+		int result = -1;
+		int resultIdx = namePaths.size();
+		for (Record record : database.factory()
+				.select(Tables.ENTRIES.ID, Tables.ENTRIES.NAME_PATH)
+				.from(Tables.ENTRIES)
+				.where(Tables.ENTRIES.NAME_PATH.in(namePaths),
+						Tables.ENTRIES.BACKUP_ID.equal(Integer.valueOf(backupId)))
+				.fetch()) {
+			
+			// prefer the nearest root folder
+			int idx = namePaths.indexOf(record.getValue(Tables.ENTRIES.NAME_PATH));
+			if (idx < resultIdx) {
+				result = record.getValue(Tables.ENTRIES.ID).intValue();
+				resultIdx = idx;
+			}
+		}
+		return result;
+	}
+
+	public static String toNamePath(String parentNamePath, int nameId) {
+		return (parentNamePath != null) ?
+				parentNamePath + NAME_PATH_SEPARATOR + nameId :
+				String.valueOf(nameId);
+	}
+
+	public static String getParentNamePath(String namePath) {
+		return StringUtils.contains(namePath, NAME_PATH_SEPARATOR) ?
+				StringUtils.substringBeforeLast(namePath, NAME_PATH_SEPARATOR) :
+				null;
+	}
+
+	// returns the names of the entries along each name path, root first, looking them all up at once
+	public static List<List<String>> getNames(List<String> namePaths, Database database) {
+		List<List<Integer>> idLists = new ArrayList<>();
+		Set<Integer> allIds = new HashSet<>();
+		for (String namePath : namePaths) {
+			List<Integer> ids = new ArrayList<>();
+			for (String id : StringUtils.split(namePath, NAME_PATH_SEPARATOR)) {
+				ids.add(Integer.valueOf(id));
+			}
+			idLists.add(ids);
+			allIds.addAll(ids);
+		}
+		Map<Integer, String> names = new HashMap<>();
+		if (!allIds.isEmpty()) {
+			for (Record record : database.factory()
+					.select(Tables.NAMES.ID, Tables.NAMES.NAME)
+					.from(Tables.NAMES)
+					.where(Tables.NAMES.ID.in(inline(allIds)))
+					.fetch()) {
+				
+				names.put(record.getValue(Tables.NAMES.ID), record.getValue(Tables.NAMES.NAME));
+			}
+		}
+		List<List<String>> result = new ArrayList<>();
+		for (List<Integer> ids : idLists) {
+			List<String> pathNames = new ArrayList<>();
+			for (Integer id : ids) {
+				pathNames.add(names.get(id));
+			}
+			result.add(pathNames);
+		}
+		return result;
+	}
+
+	// H2 uses indexes for IN lists of constants, but not for IN lists of bind values
+	public static Field<?>[] inline(Collection<Integer> values) {
+		Field<?>[] fields = new Field<?>[values.size()];
+		int i = 0;
+		for (Integer value : values) {
+			fields[i++] = Factory.inline(value);
+		}
+		return fields;
+	}
+
+	public static Set<String> getTrigrams(String text) {
+		Set<String> trigrams = new HashSet<>();
+		for (int i = 0; i <= (text.length() - TRIGRAM_LENGTH); i++) {
+			trigrams.add(text.substring(i, i + TRIGRAM_LENGTH));
+		}
+		return trigrams;
 	}
 
 	public static int getMaxBackupFileIndex(File folder) {
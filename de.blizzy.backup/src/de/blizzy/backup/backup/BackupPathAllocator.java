@@ -0,0 +1,63 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import java.io.File;
+
+import de.blizzy.backup.Utils;
+
+// hands out paths for new backup files, scanning each backup folder only once and spreading
+// its files over subfolders so that no folder grows past a maximum number of files
+class BackupPathAllocator {
+	private String outputFolder;
+	private int maxFilesPerFolder;
+	private String folderPath;
+	private int nextIndex;
+
+	BackupPathAllocator(String outputFolder, int maxFilesPerFolder) {
+		this.outputFolder = outputFolder;
+		this.maxFilesPerFolder = Math.max(maxFilesPerFolder, 1);
+	}
+
+	synchronized String createBackupFilePath() {
+		String path = Utils.createBackupFolderPath();
+		if (!path.equals(folderPath)) {
+			folderPath = path;
+			nextIndex = getMaxBackupFileIndex(Utils.toBackupFile(path, outputFolder)) + 1;
+		}
+		int index = nextIndex++;
+		return folderPath + "/" + Utils.toBackupFileName(index / maxFilesPerFolder) + //$NON-NLS-1$
+				"/" + Utils.toBackupFileName(index); //$NON-NLS-1$
+	}
+
+	private static int getMaxBackupFileIndex(File folder) {
+		int maxIndex = 0;
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					maxIndex = Math.max(maxIndex, Utils.getMaxBackupFileIndex(file));
+				} else if (file.getName().indexOf('-') < 0) {
+					// files written before backup folders had subfolders
+					maxIndex = Math.max(maxIndex, Utils.toBackupFileIndex(file.getName()));
+				}
+			}
+		}
+		return maxIndex;
+	}
+}
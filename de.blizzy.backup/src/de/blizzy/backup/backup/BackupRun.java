@@ -18,10 +18,12 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 package de.blizzy.backup.backup;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.nio.file.FileStore;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -32,25 +34,43 @@ import java.security.MessageDigest;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.runtime.ISafeRunnable;
 import org.eclipse.core.runtime.SafeRunner;
 import org.eclipse.jface.dialogs.IDialogSettings;
 import org.jooq.Cursor;
+import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.exception.DataAccessException;
+import org.jooq.impl.Factory;
 
 import de.blizzy.backup.BackupApplication;
 import de.blizzy.backup.BackupPlugin;
@@ -61,32 +81,87 @@ import de.blizzy.backup.Utils;
 import de.blizzy.backup.Utils.IFileOrFolderEntry;
 import de.blizzy.backup.backup.BackupErrorEvent.Severity;
 import de.blizzy.backup.database.Database;
+import de.blizzy.backup.database.DatabaseSnapshots;
 import de.blizzy.backup.database.EntryType;
 import de.blizzy.backup.database.schema.Tables;
+import de.blizzy.backup.settings.RateLimits;
 import de.blizzy.backup.settings.Settings;
+import de.blizzy.backup.vfs.IChannelFile;
 import de.blizzy.backup.vfs.IFile;
 import de.blizzy.backup.vfs.IFileSystemEntry;
 import de.blizzy.backup.vfs.IFolder;
+import de.blizzy.backup.vfs.IKeyedFile;
 import de.blizzy.backup.vfs.ILocation;
 import de.blizzy.backup.vfs.IOutputStreamProvider;
 import de.blizzy.backup.vfs.filesystem.FileSystemFileOrFolder;
+import de.blizzy.backup.vfs.filesystem.FileSystemLocation;
 
 public class BackupRun implements Runnable {
+	private static final int QUEUED_ENTRIES_PER_THREAD = 4;
+	private static final long MAX_DISK_SPACE_CHECK_INTERVAL = 60000;
+	// files already backed up by an interrupted backup aren't checked again, so older backups aren't
+	// resumed, but the next run of a daily backup still is
+	private static final long MAX_RESUME_AGE = 2L * 24L * 60L * 60L * 1000L;
+	// contents of these files are compressed already and are stored as they are
+	private static final Set<String> COMPRESSED_FILE_EXTENSIONS = new HashSet<>(Arrays.asList(
+			"7z", "avi", "bz2", "docx", "flac", "gif", "gz", "jar", "jpeg", "jpg", "m4a", "mkv", "mov", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$ //$NON-NLS-13$
+			"mp3", "mp4", "ogg", "png", "pptx", "rar", "xlsx", "xz", "zip")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$
+
 	private Settings settings;
 	private Thread thread;
 	private Thread entriesCounterThread;
+	private Thread committerThread;
+	private ExecutorService workers;
+	private BlockingQueue<PendingEntry> pendingEntries;
+	private volatile RuntimeException commitError;
+	private CatalogWriter catalogWriter;
+	private PreviousBackupIndex previousBackupIndex;
+	// entries of the interrupted backup being resumed
+	private PreviousBackupIndex resumeIndex;
+	private Set<Integer> completedFolderIds;
+	private FolderListingCache listingCache = new FolderListingCache();
 	private Database database;
 	private int backupId;
 	private List<IBackupRunListener> listeners = new ArrayList<>();
-	private boolean running = true;
+	private volatile boolean running = true;
 	private boolean paused;
 	private int numEntries;
 	private int totalEntries;
 	private List<IStorageInterceptor> storageInterceptors = new ArrayList<>();
-	private List<IFileSystemEntry> currentFileOrFolder = new ArrayList<>();
+	private List<IFileSystemEntry> currentFileOrFolder = Collections.synchronizedList(new ArrayList<IFileSystemEntry>());
+	private Object backupPathLock = new Object();
+	private BackupPathAllocator backupPathAllocator;
+	// guards lookups of old files against removal of unused files while the lookups are being committed
+	private ReadWriteLock oldFilesLock = new ReentrantReadWriteLock();
+	private Map<Integer, Integer> pendingOldFileIds = new HashMap<>();
+	private Map<Integer, Integer> pendingOldChunkIds = new HashMap<>();
+	// old files referenced by entries that haven't been committed yet
+	private List<Integer> committedOldFileIds = new ArrayList<>();
+	private FileCollector fileCollector;
+	// highest ID of files backed up before this run
+	private int maxOldFileId;
+	private PackWriter packWriter;
+	private RateLimiter readRateLimiter;
+	private RateLimiter writeRateLimiter;
+	private RateLimiter locationReadRateLimiter;
+	private long lastRateTime;
+	private long lastReadBytes;
+	private long lastWrittenBytes;
+	private long readRate = -1;
+	private long writeRate = -1;
+	// bytes that may be written before checking free disk space again
+	private long diskSpaceCheckAllowance;
+	private long diskSpaceCheckWrittenBytes;
+	private long diskSpaceCheckTime;
+	// pack files that have had files removed from them
+	private Set<String> packsToCompact = Collections.synchronizedSet(new HashSet<String>());
 
 	public BackupRun(Settings settings) {
 		this.settings = settings;
+		backupPathAllocator = new BackupPathAllocator(settings.getOutputFolder(), settings.getMaxBackupFilesPerFolder());
+		RateLimits rateLimits = settings.getRateLimits();
+		readRateLimiter = new RateLimiter(rateLimits.getReadRateLimit(), rateLimits.getStartHour(), rateLimits.getEndHour());
+		writeRateLimiter = new RateLimiter(rateLimits.getWriteRateLimit(), rateLimits.getStartHour(), rateLimits.getEndHour());
 	}
 
 	public void runBackup() {
@@ -145,12 +220,37 @@ public class BackupRun implements Runnable {
 					database.open(storageInterceptors);
 					database.initialize();
 
-					database.factory()
-						.insertInto(Tables.BACKUPS)
-						.set(Tables.BACKUPS.RUN_TIME, new Timestamp(System.currentTimeMillis()))
-						.execute();
-					backupId = database.factory().lastID().intValue();
+					if (!resumeInterruptedBackup()) {
+						database.factory()
+							.insertInto(Tables.BACKUPS)
+							.set(Tables.BACKUPS.RUN_TIME, new Timestamp(System.currentTimeMillis()))
+							.execute();
+						backupId = database.factory().lastID().intValue();
+					}
+
+					previousBackupIndex = PreviousBackupIndex.load(database, backupId);
+					packWriter = new PackWriter(settings.getOutputFolder(), writeRateLimiter) {
+						@Override
+						protected String createPackFile() throws IOException {
+							return createBackupFile();
+						}
+					};
+					Integer maxFileId = (Integer) database.factory().select(Tables.FILES.ID.max()).from(Tables.FILES).fetchOne().getValue(0);
+					maxOldFileId = (maxFileId != null) ? maxFileId.intValue() : 0;
+					fileCollector = new FileCollector(database, oldFilesLock.writeLock(), maxOldFileId) {
+						@Override
+						protected boolean isInUse(int fileId) {
+							return isPendingOldId(pendingOldFileIds, fileId);
+						}
+
+						@Override
+						protected void removeFile(FileEntry file) {
+							BackupRun.this.removeFile(file);
+						}
+					};
+					fileCollector.start();
 
+					boolean allLocationsBackedUp = true;
 					for (ILocation location : settings.getLocations()) {
 						if (!running) {
 							break;
@@ -158,28 +258,49 @@ public class BackupRun implements Runnable {
 						doPause();
 
 						try {
-							backupFolder(location.getRootFolder(), -1, location.getRootFolder().getAbsolutePath());
+							backupLocation(location);
 						} catch (IOException | RuntimeException e) {
+							allLocationsBackedUp = false;
 							BackupPlugin.getDefault().logError("error while running backup", e); //$NON-NLS-1$
 							fireBackupErrorOccurred(e, BackupErrorEvent.Severity.ERROR);
 						} finally {
 							location.close();
 						}
 					}
+					previousBackupIndex = null;
+					resumeIndex = null;
+					completedFolderIds = null;
+					listingCache.close();
+					closePackWriter();
+					stopFileCollector();
+
+					// a stopped backup is left unfinished so that the next run can resume it
+					if (running) {
+						if (allLocationsBackedUp && settings.isUseChecksums()) {
+							removeStaleHashCacheEntries();
+						}
 
-					database.factory()
-						.update(Tables.BACKUPS)
-						.set(Tables.BACKUPS.NUM_ENTRIES, Integer.valueOf(numEntries))
-						.where(Tables.BACKUPS.ID.equal(Integer.valueOf(backupId)))
-						.execute();
-
-					fireBackupStatusChanged(BackupStatus.CLEANUP);
-					removeOldBackups();
-					consolidateDuplicateFiles();
-					removeUnusedFiles();
-					removeOldDatabaseBackups();
-
-					database.factory().query("ANALYZE").execute(); //$NON-NLS-1$
+						database.factory()
+							.update(Tables.BACKUPS)
+							.set(Tables.BACKUPS.NUM_ENTRIES, Integer.valueOf(numEntries))
+							.where(Tables.BACKUPS.ID.equal(Integer.valueOf(backupId)))
+							.execute();
+						database.factory()
+							.delete(Tables.COMPLETED_FOLDERS)
+							.where(Tables.COMPLETED_FOLDERS.BACKUP_ID.equal(Integer.valueOf(backupId)))
+							.execute();
+
+						fireBackupStatusChanged(BackupStatus.CLEANUP);
+						// files no longer referenced are removed by the file collector in the next run
+						removeOldBackups();
+						removeUnusedNames();
+						consolidateDuplicateFiles();
+						removeUnusedChunks();
+						compactPacks();
+						removeOldDatabaseBackups();
+
+						database.factory().query("ANALYZE").execute(); //$NON-NLS-1$
+					}
 				} catch (SQLException | IOException | RuntimeException e) {
 					for (IStorageInterceptor interceptor : storageInterceptors) {
 						interceptor.showErrorMessage(e, BackupApplication.getBackupShellWindow());
@@ -187,6 +308,10 @@ public class BackupRun implements Runnable {
 					BackupPlugin.getDefault().logError("error while running backup", e); //$NON-NLS-1$
 					fireBackupErrorOccurred(e, BackupErrorEvent.Severity.ERROR);
 				} finally {
+					if (fileCollector != null) {
+						fileCollector.stop();
+						fileCollector = null;
+					}
 					fireBackupStatusChanged(BackupStatus.FINALIZE);
 					database.close();
 					backupDatabase();
@@ -206,6 +331,11 @@ public class BackupRun implements Runnable {
 				}
 			}
 		} finally {
+			// the entries counter might be waiting for the walker
+			listingCache.close();
+			if (packWriter != null) {
+				closePackWriter();
+			}
 			System.gc();
 			fireBackupEnded();
 
@@ -213,12 +343,85 @@ public class BackupRun implements Runnable {
 		}
 	}
 
+	private boolean resumeInterruptedBackup() {
+		Record backupRecord = database.factory()
+			.select(Tables.BACKUPS.ID, Tables.BACKUPS.RUN_TIME, Tables.BACKUPS.NUM_ENTRIES)
+			.from(Tables.BACKUPS)
+			.orderBy(Tables.BACKUPS.RUN_TIME.desc(), Tables.BACKUPS.ID.desc())
+			.limit(1)
+			.fetchAny();
+		if ((backupRecord == null) || (backupRecord.getValue(Tables.BACKUPS.NUM_ENTRIES) != null)) {
+			return false;
+		}
+		long runTime = backupRecord.getValue(Tables.BACKUPS.RUN_TIME).getTime();
+		removeUncommittedBackupFiles(runTime);
+		long now = System.currentTimeMillis();
+		if ((now - runTime) > MAX_RESUME_AGE) {
+			// the interrupted backup is removed with other unfinished backups when cleaning up
+			return false;
+		}
+
+		int interruptedBackupId = backupRecord.getValue(Tables.BACKUPS.ID).intValue();
+		resumeIndex = PreviousBackupIndex.loadBackup(database, interruptedBackupId);
+		if (resumeIndex == null) {
+			// the interrupted backup is removed with other unfinished backups when cleaning up
+			return false;
+		}
+
+		backupId = interruptedBackupId;
+		BackupPlugin.getDefault().logMessage("resuming backup: " + backupId); //$NON-NLS-1$
+		// files not in completed folders are backed up as of now
+		database.factory()
+			.update(Tables.BACKUPS)
+			.set(Tables.BACKUPS.RUN_TIME, new Timestamp(now))
+			.where(Tables.BACKUPS.ID.equal(Integer.valueOf(backupId)))
+			.execute();
+		completedFolderIds = new HashSet<>(database.factory()
+				.select(Tables.COMPLETED_FOLDERS.ENTRY_ID)
+				.from(Tables.COMPLETED_FOLDERS)
+				.where(Tables.COMPLETED_FOLDERS.BACKUP_ID.equal(Integer.valueOf(backupId)))
+				.fetch(Tables.COMPLETED_FOLDERS.ENTRY_ID));
+		numEntries = database.factory()
+			.selectCount()
+			.from(Tables.ENTRIES)
+			.where(Tables.ENTRIES.BACKUP_ID.equal(Integer.valueOf(backupId)),
+					Tables.ENTRIES.TYPE.notEqual(Byte.valueOf((byte) EntryType.FOLDER.getValue())))
+			.fetchOne()
+			.getValue(0, Integer.class).intValue();
+		return true;
+	}
+
+	private void closePackWriter() {
+		try {
+			packWriter.close();
+		} catch (IOException e) {
+			BackupPlugin.getDefault().logError("error while closing pack file", e); //$NON-NLS-1$
+			fireBackupErrorOccurred(e, BackupErrorEvent.Severity.WARNING);
+		} finally {
+			packWriter = null;
+		}
+	}
+
+	private void stopFileCollector() {
+		if (running) {
+			fileCollector.finish();
+		} else {
+			fileCollector.stop();
+		}
+		fileCollector = null;
+	}
+
+	private void removeStaleHashCacheEntries() {
+		// files not seen in this run have been deleted or moved
+		database.factory()
+			.delete(Tables.HASH_CACHE)
+			.where(Tables.HASH_CACHE.SEEN_BACKUP_ID.lessThan(Integer.valueOf(backupId)))
+			.execute();
+	}
+
 	private void backupDatabase() {
 		try {
-			File outputFolder = new File(settings.getOutputFolder());
-			File dbBackupRootFolder = new File(outputFolder, "$db-backup"); //$NON-NLS-1$
-			File dbBackupFolder = new File(dbBackupRootFolder, String.valueOf(System.currentTimeMillis()));
-			database.backupDatabase(dbBackupFolder);
+			database.backupDatabase(getDatabaseSnapshots());
 		} catch (IOException e) {
 			BackupPlugin.getDefault().logError("Error while creating database backup", e); //$NON-NLS-1$
 			fireBackupErrorOccurred(e, BackupErrorEvent.Severity.ERROR);
@@ -226,142 +429,636 @@ public class BackupRun implements Runnable {
 	}
 
 	private void removeOldDatabaseBackups() {
+		try {
+			getDatabaseSnapshots().removeOldSnapshots(19);
+		} catch (IOException e) {
+			BackupPlugin.getDefault().logError("error while removing old database backups", e); //$NON-NLS-1$
+			fireBackupErrorOccurred(e, BackupErrorEvent.Severity.WARNING);
+		}
+	}
+
+	private DatabaseSnapshots getDatabaseSnapshots() {
 		File outputFolder = new File(settings.getOutputFolder());
-		File dbBackupRootFolder = new File(outputFolder, "$db-backup"); //$NON-NLS-1$
-		if (dbBackupRootFolder.isDirectory()) {
-			List<Long> timestamps = new ArrayList<>();
-			for (File f : dbBackupRootFolder.listFiles()) {
-				if (f.isDirectory()) {
-					timestamps.add(Long.valueOf(f.getName()));
-				}
-			}
-			if (timestamps.size() > 19) {
-				Collections.sort(timestamps);
-				Collections.reverse(timestamps);
-				for (int i = 19; i < timestamps.size(); i++) {
-					long timestamp = timestamps.get(i).longValue();
-					File folder = new File(dbBackupRootFolder, String.valueOf(timestamp));
-					try {
-						FileUtils.forceDelete(folder);
-					} catch (IOException e) {
-						BackupPlugin.getDefault().logError("error while deleting old database backup folder: " + //$NON-NLS-1$
-								folder.getAbsolutePath(), e);
-						fireBackupErrorOccurred(e, BackupErrorEvent.Severity.WARNING);
-					}
-				}
+		return new DatabaseSnapshots(new File(outputFolder, "$db-backup")); //$NON-NLS-1$
+	}
+
+	private void backupLocation(ILocation location) throws IOException {
+		// remote locations don't support concurrent access to their files
+		int numThreads = (location instanceof FileSystemLocation) ? Math.max(settings.getBackupThreads(), 1) : 1;
+		RateLimits rateLimits = settings.getRateLimits();
+		locationReadRateLimiter = new RateLimiter(rateLimits.getReadRateLimit(location),
+				rateLimits.getStartHour(), rateLimits.getEndHour());
+		startPipeline(numThreads);
+		try {
+			backupFolder(location.getRootFolder(), null, location.getRootFolder().getAbsolutePath());
+		} finally {
+			finishPipeline();
+		}
+	}
+
+	private void startPipeline(int numThreads) {
+		commitError = null;
+		pendingEntries = new ArrayBlockingQueue<>(numThreads * QUEUED_ENTRIES_PER_THREAD);
+		workers = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			private AtomicInteger threadNumber = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, "Backup Worker " + threadNumber.incrementAndGet()); //$NON-NLS-1$
+			}
+		});
+		Runnable runnable = new Runnable() {
+			@Override
+			public void run() {
+				commitEntries();
+			}
+		};
+		committerThread = new Thread(runnable, "Backup Committer"); //$NON-NLS-1$
+		committerThread.start();
+	}
+
+	private void finishPipeline() {
+		putPendingEntry(PendingEntry.END);
+		for (;;) {
+			try {
+				committerThread.join();
+				break;
+			} catch (InterruptedException e) {
+				// ignore
+			}
+		}
+		workers.shutdown();
+		workers = null;
+		pendingEntries = null;
+
+		if (commitError != null) {
+			throw commitError;
+		}
+	}
+
+	private void putPendingEntry(PendingEntry entry) {
+		for (;;) {
+			try {
+				pendingEntries.put(entry);
+				break;
+			} catch (InterruptedException e) {
+				// ignore
 			}
 		}
 	}
 
-	private int backupFolder(IFolder folder, int parentFolderId, String overrideName) throws IOException {
+	private void backupFolder(IFolder folder, PendingEntry parentFolder, String overrideName) throws IOException {
 		currentFileOrFolder.add(folder);
 		try {
-			FileTime creationTime = folder.getCreationTime();
-			FileTime lastModificationTime = folder.getLastModificationTime();
-			database.factory()
-				.insertInto(Tables.ENTRIES)
-				.set(Tables.ENTRIES.PARENT_ID, (parentFolderId > 0) ? Integer.valueOf(parentFolderId) : null)
-				.set(Tables.ENTRIES.BACKUP_ID, Integer.valueOf(backupId))
-				.set(Tables.ENTRIES.TYPE, Byte.valueOf((byte) EntryType.FOLDER.getValue()))
-				.set(Tables.ENTRIES.CREATION_TIME, (creationTime != null) ? new Timestamp(creationTime.toMillis()) : null)
-				.set(Tables.ENTRIES.MODIFICATION_TIME, (lastModificationTime != null) ? new Timestamp(lastModificationTime.toMillis()) : null)
-				.set(Tables.ENTRIES.HIDDEN, Boolean.valueOf(folder.isHidden()))
-				.set(Tables.ENTRIES.NAME, StringUtils.isNotBlank(overrideName) ? overrideName : folder.getName())
-				.set(Tables.ENTRIES.NAME_LOWER, StringUtils.isNotBlank(overrideName) ? overrideName.toLowerCase() : folder.getName().toLowerCase())
-				.execute();
-			int id = database.factory().lastID().intValue();
-			List<IFileSystemEntry> entries = new ArrayList<>(folder.list());
-			Collections.sort(entries, new Comparator<IFileSystemEntry>() {
-				@Override
-				public int compare(IFileSystemEntry e1, IFileSystemEntry e2) {
-					return e1.getName().compareTo(e2.getName());
+			PendingEntry folderEntry = new PendingEntry(parentFolder, folder,
+					StringUtils.isNotBlank(overrideName) ? overrideName : folder.getName());
+			folderEntry.creationTime = folder.getCreationTime();
+			folderEntry.modificationTime = folder.getLastModificationTime();
+			folderEntry.hidden = folder.isHidden();
+			if ((resumeIndex != null) && ((parentFolder == null) || parentFolder.resumed)) {
+				int row = resumeIndex.find(Math.max(folderEntry.getParentId(), 0), folderEntry.name);
+				if ((row >= 0) && (resumeIndex.getType(row) == EntryType.FOLDER)) {
+					folderEntry.id = resumeIndex.getEntryId(row);
+					folderEntry.resumed = true;
+					long modificationTime = (folderEntry.modificationTime != null) ? folderEntry.modificationTime.toMillis() : -1;
+					if (completedFolderIds.contains(Integer.valueOf(folderEntry.id)) &&
+						(resumeIndex.getModificationTime(row) == modificationTime)) {
+
+						// whole subtree has been backed up before the backup was interrupted, and no entries
+						// have been added to or removed from the folder since
+						listingCache.skip(folder);
+						return;
+					}
 				}
-			});
+			}
+			if (previousBackupIndex != null) {
+				int previousParentId = folderEntry.getPreviousParentId();
+				if (previousParentId >= 0) {
+					int row = previousBackupIndex.find(previousParentId, folderEntry.name);
+					if ((row >= 0) && (previousBackupIndex.getType(row) == EntryType.FOLDER)) {
+						folderEntry.previousId = previousBackupIndex.getEntryId(row);
+					}
+				}
+			}
+			if (!folderEntry.resumed) {
+				putPendingEntry(folderEntry);
+			}
+
+			List<IFileSystemEntry> entries = listingCache.listForBackup(folder);
+			// some of the files might have been backed up already
+			int numUnchangedFiles = !folderEntry.resumed ? getNumUnchangedFiles(folderEntry.previousId, entries) : 0;
+			if (numUnchangedFiles > 0) {
+				// the files' entries are copied from the previous backup as a whole
+				PendingEntry unchangedFilesEntry = new PendingEntry(folderEntry, folder, folderEntry.name);
+				unchangedFilesEntry.previousId = folderEntry.previousId;
+				unchangedFilesEntry.numUnchangedFiles = numUnchangedFiles;
+				putPendingEntry(unchangedFilesEntry);
+			}
 			for (IFileSystemEntry entry : entries) {
-				if (!running) {
+				if (!running || (commitError != null)) {
 					break;
 				}
 				doPause();
 
 				if (entry.isFolder()) {
 					try {
-						backupFolder((IFolder) entry, id, null);
+						backupFolder((IFolder) entry, folderEntry, null);
 					} catch (IOException e) {
 						BackupPlugin.getDefault().logError("error while backing up folder: " + //$NON-NLS-1$
 								entry.getAbsolutePath(), e);
 						fireBackupErrorOccurred(e, BackupErrorEvent.Severity.ERROR);
 					}
-				} else {
-					try {
-						backupFile((IFile) entry, id);
-					} catch (IOException e) {
-						BackupPlugin.getDefault().logError("error while backing up file: " + //$NON-NLS-1$
-								entry.getAbsolutePath(), e);
-						fireBackupErrorOccurred(e, BackupErrorEvent.Severity.ERROR);
-					}
+				} else if ((numUnchangedFiles == 0) &&
+						(!folderEntry.resumed || (resumeIndex.find(folderEntry.id, entry.getName()) < 0))) {
+
+					final IFile file = (IFile) entry;
+					final int previousParentId = folderEntry.previousId;
+					PendingEntry fileEntry = new PendingEntry(folderEntry, file, file.getName());
+					fileEntry.result = workers.submit(new Callable<FileBackupResult>() {
+						@Override
+						public FileBackupResult call() {
+							return backupFile(file, previousParentId);
+						}
+					});
+					putPendingEntry(fileEntry);
 				}
 			}
 
-			return id;
+			// a completed folder that has changed since is only walked again for entries added to it
+			if (running && (commitError == null) &&
+				!(folderEntry.resumed && completedFolderIds.contains(Integer.valueOf(folderEntry.id)))) {
+
+				PendingEntry completedEntry = new PendingEntry(folderEntry, folder, folderEntry.name);
+				completedEntry.folderCompleted = true;
+				putPendingEntry(completedEntry);
+			}
 		} finally {
 			currentFileOrFolder.remove(currentFileOrFolder.size() - 1);
 		}
 	}
 
-	private void backupFile(IFile file, int parentFolderId) throws IOException {
-		currentFileOrFolder.add(file);
+	private int getNumUnchangedFiles(int previousFolderId, List<IFileSystemEntry> entries) {
+		// checksums must be verified for each file
+		if (settings.isUseChecksums() || (previousBackupIndex == null) || (previousFolderId <= 0) ||
+			(entries.size() != previousBackupIndex.getNumChildren(previousFolderId))) {
+
+			return 0;
+		}
+
+		int numFiles = 0;
 		try {
-			if ((numEntries % 50) == 0) {
-				checkDiskSpaceAndRemoveOldBackups();
+			for (IFileSystemEntry entry : entries) {
+				int row = previousBackupIndex.find(previousFolderId, entry.getName());
+				if (row < 0) {
+					return 0;
+				}
+				if (entry.isFolder()) {
+					if (previousBackupIndex.getType(row) != EntryType.FOLDER) {
+						return 0;
+					}
+				} else {
+					IFile file = (IFile) entry;
+					FileTime creationTime = file.getCreationTime();
+					if ((previousBackupIndex.getType(row) != EntryType.FILE) || !isUnchanged(file, row) ||
+						(previousBackupIndex.isHidden(row) != file.isHidden()) ||
+						(previousBackupIndex.getCreationTime(row) != ((creationTime != null) ? creationTime.toMillis() : -1))) {
+
+						return 0;
+					}
+					numFiles++;
+				}
 			}
+		} catch (IOException e) {
+			// let the files be backed up one by one to report the error
+			return 0;
+		}
+		return numFiles;
+	}
 
-			fireBackupStatusChanged(new BackupStatus(file.getAbsolutePath(), numEntries, totalEntries));
+	private FileBackupResult backupFile(IFile file, int previousParentId) {
+		if (!running) {
+			return FileBackupResult.SKIPPED;
+		}
+		doPause();
 
-			FileTime creationTime = file.getCreationTime();
-			FileTime lastModificationTime = file.getLastModificationTime();
+		try {
+			FileBackupResult result = new FileBackupResult();
+			result.type = EntryType.FILE;
+			result.creationTime = file.getCreationTime();
+			result.modificationTime = file.getLastModificationTime();
+			result.hidden = file.isHidden();
 
-			int fileId = -1;
 			if (settings.isUseChecksums()) {
-				String checksum = getChecksum(file);
+				backupFileViaChecksum(file, previousParentId, result);
+			} else {
+				result.fileId = findOldFile(file, null, previousParentId);
+				if ((result.fileId <= 0) && backupFileContents(file, result)) {
+					// file might have been moved or copied, so its contents might have been backed up already
+					useOldFileIfDuplicate(file, previousParentId, result);
+				}
+			}
+			return result;
+		} catch (IOException e) {
+			BackupPlugin.getDefault().logError("error while backing up file: " + //$NON-NLS-1$
+					file.getAbsolutePath(), e);
+			return FileBackupResult.failed(e);
+		}
+	}
+
+	private void backupFileViaChecksum(IFile file, int previousParentId, FileBackupResult result) throws IOException {
+		// take the cache key before reading the file so that changes while reading are detected next time
+		HashCacheEntry hashCacheEntry = createHashCacheEntry(file);
+		String checksum = (hashCacheEntry != null) ? getCachedChecksum(hashCacheEntry) : null;
+		if ((checksum == null) && !isUnchangedSincePreviousBackup(file, previousParentId)) {
+			// file is most likely new or changed, so back it up right away while computing
+			// the checksum instead of reading it twice
+			if (backupFileContents(file, result)) {
+				checksum = result.checksum;
+				useOldFileIfDuplicate(file, previousParentId, result);
+			}
+		} else {
+			if (checksum == null) {
+				checksum = getChecksum(file);
+			}
+			result.fileId = findOldFile(file, checksum, previousParentId);
+			if ((result.fileId <= 0) && backupFileContents(file, result)) {
+				// file has been read again, so its checksum is fresh now
+				checksum = result.checksum;
+				if (hashCacheEntry != null) {
+					hashCacheEntry.hashBackupId = -1;
+				}
+			}
+		}
+
+		if ((hashCacheEntry != null) && (checksum != null) && (result.type == EntryType.FILE)) {
+			hashCacheEntry.checksum = checksum;
+			result.hashCacheEntry = hashCacheEntry;
+		}
+	}
+
+	private void useOldFileIfDuplicate(IFile file, int previousParentId, FileBackupResult result) throws IOException {
+		int fileId = findOldFile(file, result.checksum, previousParentId);
+		if (fileId > 0) {
+			if (result.chunks != null) {
+				discardChunks(result.chunks, file);
+			} else if (result.packOffset >= 0) {
+				// data in pack files is left there until the pack file is compacted
+				packsToCompact.add(result.backupPath);
+			} else {
+				deleteBackupFile(Utils.toBackupFile(result.backupPath, settings.getOutputFolder()), file);
+			}
+			result.backupPath = null;
+			result.packOffset = -1;
+			result.packLength = -1;
+			result.chunks = null;
+			result.checksum = null;
+			result.compression = null;
+			result.fileId = fileId;
+		}
+	}
+
+	private HashCacheEntry createHashCacheEntry(IFile file) throws IOException {
+		FileTime modificationTime = file.getLastModificationTime();
+		if (modificationTime == null) {
+			return null;
+		}
+		String fileKey = (file instanceof IKeyedFile) ? ((IKeyedFile) file).getFileKey() : null;
+		return new HashCacheEntry(file.getAbsolutePath(), fileKey, new Timestamp(modificationTime.toMillis()),
+				file.getLength());
+	}
+
+	private String getCachedChecksum(HashCacheEntry hashCacheEntry) {
+		Record record = database.factory()
+			.select(Tables.HASH_CACHE.FILE_KEY, Tables.HASH_CACHE.MODIFICATION_TIME, Tables.HASH_CACHE.LENGTH,
+					Tables.HASH_CACHE.CHECKSUM, Tables.HASH_CACHE.HASH_BACKUP_ID)
+			.from(Tables.HASH_CACHE)
+			.where(Tables.HASH_CACHE.PATH.equal(hashCacheEntry.path))
+			.fetchOne();
+		if ((record == null) ||
+			!StringUtils.equals(record.getValue(Tables.HASH_CACHE.FILE_KEY), hashCacheEntry.fileKey) ||
+			!record.getValue(Tables.HASH_CACHE.MODIFICATION_TIME).equals(hashCacheEntry.modificationTime) ||
+			(record.getValue(Tables.HASH_CACHE.LENGTH).longValue() != hashCacheEntry.length)) {
+
+			return null;
+		}
+
+		int hashBackupId = record.getValue(Tables.HASH_CACHE.HASH_BACKUP_ID).intValue();
+		if ((settings.getRehashInterval() > 0) && ((backupId - hashBackupId) >= settings.getRehashInterval())) {
+			return null;
+		}
+		hashCacheEntry.hashBackupId = hashBackupId;
+		return record.getValue(Tables.HASH_CACHE.CHECKSUM);
+	}
+
+	private int findOldFile(IFile file, String checksum, int previousParentId) throws IOException {
+		oldFilesLock.readLock().lock();
+		try {
+			int fileId;
+			if (checksum != null) {
 				fileId = findOldFileViaChecksum(file, checksum);
 			} else {
-				fileId = findOldFileViaTimestamp(file);
+				fileId = findOldFileViaTimestamp(file, previousParentId);
 			}
-			EntryType type = EntryType.FILE;
-			if (fileId <= 0) {
+			if (fileId > 0) {
+				addPendingOldId(pendingOldFileIds, fileId);
+			}
+			return fileId;
+		} finally {
+			oldFilesLock.readLock().unlock();
+		}
+	}
+
+	private boolean backupFileContents(IFile file, FileBackupResult result) {
+		try {
+			if (file.getLength() >= settings.getMinChunkedFileLength()) {
+				backupFileChunks(file, result);
+			} else if ((settings.getMaxPackedFileLength() > 0) &&
+					(file.getLength() <= settings.getMaxPackedFileLength()) &&
+					(file.getLength() < PackWriter.MAX_PACK_LENGTH)) {
+
+				backupFilePacked(file, result);
+			} else {
+				String backupFilePath = createBackupFile();
+				File backupFile = Utils.toBackupFile(backupFilePath, settings.getOutputFolder());
+				backupFileContents(file, backupFile, backupFilePath, result);
+			}
+			return true;
+		} catch (IOException e) {
+			BackupPlugin.getDefault().logError("error while backing up file: " + //$NON-NLS-1$
+					file.getAbsolutePath(), e);
+			// file might be in use this time so only show a warning instead of an error
+			result.error = e;
+			result.errorSeverity = BackupErrorEvent.Severity.WARNING;
+			result.type = EntryType.FAILED_FILE;
+			return false;
+		}
+	}
+
+	private String createBackupFile() throws IOException {
+		synchronized (backupPathLock) {
+			String backupFilePath = backupPathAllocator.createBackupFilePath();
+			File backupFile = Utils.toBackupFile(backupFilePath, settings.getOutputFolder());
+			FileUtils.forceMkdir(backupFile.getParentFile());
+			Files.createFile(backupFile.toPath());
+			return backupFilePath;
+		}
+	}
+
+	private void addPendingOldId(Map<Integer, Integer> pendingOldIds, int oldId) {
+		synchronized (pendingOldIds) {
+			Integer id = Integer.valueOf(oldId);
+			Integer count = pendingOldIds.get(id);
+			pendingOldIds.put(id, Integer.valueOf((count != null) ? count.intValue() + 1 : 1));
+		}
+	}
+
+	private void removePendingOldId(Map<Integer, Integer> pendingOldIds, int oldId) {
+		synchronized (pendingOldIds) {
+			Integer id = Integer.valueOf(oldId);
+			Integer count = pendingOldIds.get(id);
+			if ((count == null) || (count.intValue() <= 1)) {
+				pendingOldIds.remove(id);
+			} else {
+				pendingOldIds.put(id, Integer.valueOf(count.intValue() - 1));
+			}
+		}
+	}
+
+	private boolean isPendingOldId(Map<Integer, Integer> pendingOldIds, int oldId) {
+		synchronized (pendingOldIds) {
+			return pendingOldIds.containsKey(Integer.valueOf(oldId));
+		}
+	}
+
+	private void commitEntries() {
+		catalogWriter = new CatalogWriter(database, backupId) {
+			@Override
+			protected void committed() {
+				releaseCommittedOldFiles();
+			}
+		};
+		try {
+			catalogWriter.open();
+		} catch (RuntimeException e) {
+			commitError = e;
+		}
+		try {
+			for (;;) {
+				PendingEntry entry;
 				try {
-					String backupFilePath = Utils.createBackupFilePath(settings.getOutputFolder());
-					File backupFile = Utils.toBackupFile(backupFilePath, settings.getOutputFolder());
-					fileId = backupFileContents(file, backupFile, backupFilePath);
-				} catch (IOException e) {
-					BackupPlugin.getDefault().logError("error while backing up file: " + //$NON-NLS-1$
-							file.getAbsolutePath(), e);
-					// file might be in use this time so only show a warning instead of an error
-					fireBackupErrorOccurred(e, Severity.WARNING);
-					type = EntryType.FAILED_FILE;
+					entry = pendingEntries.poll(1, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					continue;
+				}
+				if (entry == PendingEntry.END) {
+					break;
 				}
-			}
 
-			database.factory()
-				.insertInto(Tables.ENTRIES)
-				.set(Tables.ENTRIES.PARENT_ID, Integer.valueOf(parentFolderId))
-				.set(Tables.ENTRIES.BACKUP_ID, Integer.valueOf(backupId))
-				.set(Tables.ENTRIES.TYPE, Byte.valueOf((byte) type.getValue()))
-				.set(Tables.ENTRIES.CREATION_TIME, (creationTime != null) ? new Timestamp(creationTime.toMillis()) : null)
-				.set(Tables.ENTRIES.MODIFICATION_TIME, (lastModificationTime != null) ? new Timestamp(lastModificationTime.toMillis()) : null)
-				.set(Tables.ENTRIES.HIDDEN, Boolean.valueOf(file.isHidden()))
-				.set(Tables.ENTRIES.NAME, file.getName())
-				.set(Tables.ENTRIES.NAME_LOWER, file.getName().toLowerCase())
-				.set(Tables.ENTRIES.FILE_ID, (fileId > 0) ? Integer.valueOf(fileId) : null)
-				.execute();
+				if (commitError != null) {
+					// keep draining the queue so that the walker doesn't block
+					if ((entry != null) && (entry.result != null)) {
+						entry.result.cancel(false);
+					}
+					continue;
+				}
 
-			numEntries++;
+				try {
+					if (entry == null) {
+						catalogWriter.flushIfNecessary();
+					} else if (entry.folderCompleted) {
+						catalogWriter.addCompletedFolder(entry.getParentId());
+					} else if (entry.numUnchangedFiles > 0) {
+						commitUnchangedFiles(entry);
+					} else if (entry.isFolder()) {
+						commitFolder(entry);
+					} else {
+						commitFile(entry);
+					}
+				} catch (RuntimeException e) {
+					commitError = e;
+				}
+			}
 		} finally {
-			currentFileOrFolder.remove(currentFileOrFolder.size() - 1);
+			try {
+				catalogWriter.close();
+			} catch (RuntimeException e) {
+				if (commitError == null) {
+					commitError = e;
+				}
+			} finally {
+				catalogWriter = null;
+			}
+		}
+	}
+
+	private void commitFolder(PendingEntry folder) {
+		folder.id = catalogWriter.addEntry(folder.getParentId(), getParentNamePath(folder), EntryType.FOLDER,
+				folder.creationTime, folder.modificationTime, folder.hidden, folder.name, -1);
+	}
+
+	private String getNamePath(PendingEntry folder) {
+		// computed on first use, which also covers resumed folders that are not committed again
+		if (folder.namePath == null) {
+			folder.namePath = catalogWriter.getNamePath(getParentNamePath(folder), folder.name);
+		}
+		return folder.namePath;
+	}
+
+	private String getParentNamePath(PendingEntry entry) {
+		return (entry.parent != null) ? getNamePath(entry.parent) : null;
+	}
+
+	private void commitUnchangedFiles(PendingEntry entry) {
+		if ((numEntries / 50) != ((numEntries + entry.numUnchangedFiles) / 50)) {
+			checkDiskSpaceAndRemoveOldBackups();
+		}
+
+		updateRates();
+		fireBackupStatusChanged(new BackupStatus(entry.fileOrFolder.getAbsolutePath(), numEntries, totalEntries,
+				readRate, writeRate));
+
+		int count = catalogWriter.copyFileEntries(previousBackupIndex.getBackupId(), entry.previousId,
+				entry.getParentId(), getParentNamePath(entry));
+		if (count != entry.numUnchangedFiles) {
+			throw new IllegalStateException("expected " + entry.numUnchangedFiles + " unchanged files, but copied " + //$NON-NLS-1$ //$NON-NLS-2$
+					count + ": " + entry.fileOrFolder.getAbsolutePath()); //$NON-NLS-1$
+		}
+		numEntries += count;
+	}
+
+	private void commitFile(PendingEntry entry) {
+		IFile file = (IFile) entry.fileOrFolder;
+		FileBackupResult result = getResult(entry);
+		if (result == FileBackupResult.SKIPPED) {
+			return;
+		}
+
+		if (result.error != null) {
+			fireBackupErrorOccurred(file, result.error, result.errorSeverity);
+		}
+		if (result.type == null) {
+			return;
+		}
+
+		if ((numEntries % 50) == 0) {
+			checkDiskSpaceAndRemoveOldBackups();
+		}
+
+		updateRates();
+		fireBackupStatusChanged(new BackupStatus(file.getAbsolutePath(), numEntries, totalEntries, readRate, writeRate));
+
+		if (result.hashCacheEntry != null) {
+			catalogWriter.addHashCacheEntry(result.hashCacheEntry);
+		}
+
+		int fileId = result.fileId;
+		if (result.isNewFile()) {
+			fileId = catalogWriter.addFile(result.backupPath, result.packOffset, result.packLength, result.checksum,
+					result.length, result.compression);
+			if (result.chunks != null) {
+				commitChunks(fileId, result.chunks);
+			}
+		}
+
+		catalogWriter.addEntry(entry.getParentId(), getParentNamePath(entry), result.type,
+				result.creationTime, result.modificationTime, result.hidden, entry.name, fileId);
+
+		if (!result.isNewFile() && (fileId > 0)) {
+			// file must not be removed until the entry's reference has been committed
+			committedOldFileIds.add(Integer.valueOf(fileId));
+		}
+
+		numEntries++;
+	}
+
+	private void releaseCommittedOldFiles() {
+		for (Integer fileId : committedOldFileIds) {
+			removePendingOldId(pendingOldFileIds, fileId.intValue());
+		}
+		committedOldFileIds.clear();
+	}
+
+	private void commitChunks(int fileId, List<Chunk> chunks) {
+		Set<Chunk> oldChunks = Collections.newSetFromMap(new IdentityHashMap<Chunk, Boolean>());
+		for (int i = 0; i < chunks.size(); i++) {
+			Chunk chunk = chunks.get(i);
+			if (chunk.isNew()) {
+				// chunks occurring multiple times in a file are the same object
+				if (chunk.id <= 0) {
+					chunk.id = catalogWriter.addChunk(chunk.backupPath, chunk.checksum, chunk.length, chunk.compression);
+				}
+			} else {
+				oldChunks.add(chunk);
+			}
+			catalogWriter.addFileChunk(fileId, i, chunk.id);
+		}
+		for (Chunk chunk : oldChunks) {
+			removePendingOldId(pendingOldChunkIds, chunk.id);
+		}
+	}
+
+	private FileBackupResult getResult(PendingEntry entry) {
+		for (;;) {
+			try {
+				return entry.result.get();
+			} catch (InterruptedException e) {
+				// ignore
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	private int findOldFileViaTimestamp(IFile file, int previousParentId) throws IOException {
+		if (previousBackupIndex == null) {
+			return findOldFileViaTimestampInAllBackups(file);
+		}
+
+		if (previousParentId <= 0) {
+			// parent folder is new
+			return -1;
+		}
+		int row = previousBackupIndex.find(previousParentId, file.getName());
+		if (row < 0) {
+			return -1;
+		}
+		switch (previousBackupIndex.getType(row)) {
+			case FILE:
+				return isUnchanged(file, row) ? previousBackupIndex.getFileId(row) : -1;
+
+			case FAILED_FILE:
+				// file could not be backed up last time, an older backup might still have it
+				return findOldFileViaTimestampInAllBackups(file);
+
+			default:
+				return -1;
 		}
 	}
 
-	private int findOldFileViaTimestamp(IFile file) throws IOException {
+	private boolean isUnchangedSincePreviousBackup(IFile file, int previousParentId) throws IOException {
+		if ((previousBackupIndex == null) || (previousParentId <= 0)) {
+			return false;
+		}
+		int row = previousBackupIndex.find(previousParentId, file.getName());
+		return (row >= 0) && (previousBackupIndex.getType(row) == EntryType.FILE) && isUnchanged(file, row);
+	}
+
+	private boolean isUnchanged(IFile file, int previousBackupIndexRow) throws IOException {
+		FileTime lastModificationTime = file.getLastModificationTime();
+		long entryModificationTime = previousBackupIndex.getModificationTime(previousBackupIndexRow);
+		return (entryModificationTime > 0) &&
+			(lastModificationTime != null) && (entryModificationTime == lastModificationTime.toMillis()) &&
+			(previousBackupIndex.getLength(previousBackupIndexRow) == file.getLength());
+	}
+
+	private int findOldFileViaTimestampInAllBackups(IFile file) throws IOException {
 		FileTime lastModificationTime = file.getLastModificationTime();
 		long length = file.getLength();
 		Cursor<Record> cursor = null;
@@ -448,23 +1145,23 @@ public class BackupRun implements Runnable {
 				-1;
 	}
 
-	private int backupFileContents(final IFile file, final File backupFile, String backupFilePath)
-		throws IOException {
-
-		FileUtils.forceMkdir(backupFile.getParentFile());
+	private void backupFileContents(final IFile file, final File backupFile, String backupFilePath,
+			FileBackupResult result) throws IOException {
 
+		final Compression compression = getCompression(file);
 		final MessageDigest[] digest = new MessageDigest[1];
 		IOutputStreamProvider outputStreamProvider = new IOutputStreamProvider() {
 			@Override
 			public OutputStream getOutputStream() throws IOException {
 				try {
 					digest[0] = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
-					OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(backupFile));
+					OutputStream fileOut = new BufferedOutputStream(
+							new RateLimitedOutputStream(new FileOutputStream(backupFile), writeRateLimiter));
 					OutputStream interceptOut = fileOut;
 					for (IStorageInterceptor interceptor : storageInterceptors) {
 						interceptOut = interceptor.interceptOutputStream(interceptOut, file.getLength());
 					}
-					OutputStream compressOut = Compression.BZIP2.getOutputStream(interceptOut);
+					OutputStream compressOut = compression.getOutputStream(interceptOut, settings.getCompressionLevel());
 					OutputStream digestOut = new DigestOutputStream(compressOut, digest[0]);
 					return digestOut;
 				} catch (GeneralSecurityException e) {
@@ -474,31 +1171,191 @@ public class BackupRun implements Runnable {
 		};
 		boolean fileCopied = false;
 		try {
-			file.copy(outputStreamProvider);
+			copy(file, outputStreamProvider);
 			fileCopied = true;
 		} finally {
 			if (!fileCopied) {
+				deleteBackupFile(backupFile, file);
+			}
+		}
+
+		result.backupPath = backupFilePath;
+		result.checksum = toHexString(digest[0]);
+		result.length = file.getLength();
+		result.compression = compression;
+	}
+
+	private void backupFilePacked(final IFile file, FileBackupResult result) throws IOException {
+		final Compression compression = getCompression(file);
+		final MessageDigest[] digest = new MessageDigest[1];
+		final ByteArrayOutputStream[] buf = new ByteArrayOutputStream[1];
+		IOutputStreamProvider outputStreamProvider = new IOutputStreamProvider() {
+			@Override
+			public OutputStream getOutputStream() throws IOException {
 				try {
-					Files.delete(backupFile.toPath());
-				} catch (IOException e) {
-					BackupPlugin.getDefault().logError("error while deleting file: " + //$NON-NLS-1$
-							backupFile.getAbsolutePath(), e);
-					fireBackupErrorOccurred(e, BackupErrorEvent.Severity.WARNING);
+					digest[0] = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+					// data is collected in memory and appended to the pack file as a whole
+					buf[0] = new ByteArrayOutputStream();
+					OutputStream interceptOut = buf[0];
+					for (IStorageInterceptor interceptor : storageInterceptors) {
+						interceptOut = interceptor.interceptOutputStream(interceptOut, file.getLength());
+					}
+					OutputStream compressOut = compression.getOutputStream(interceptOut, settings.getCompressionLevel());
+					OutputStream digestOut = new DigestOutputStream(compressOut, digest[0]);
+					return digestOut;
+				} catch (GeneralSecurityException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		copy(file, outputStreamProvider);
+
+		byte[] data = buf[0].toByteArray();
+		PackMember member = packWriter.append(data, data.length);
+		result.backupPath = member.backupPath;
+		result.packOffset = member.offset;
+		result.packLength = member.length;
+		result.checksum = toHexString(digest[0]);
+		result.length = file.getLength();
+		result.compression = compression;
+	}
+
+	private Compression getCompression(IFile file) {
+		String extension = StringUtils.substringAfterLast(file.getName(), ".").toLowerCase(); //$NON-NLS-1$
+		return COMPRESSED_FILE_EXTENSIONS.contains(extension) ? Compression.STORE : settings.getCompression();
+	}
+
+	private void backupFileChunks(final IFile file, FileBackupResult result) throws IOException {
+		final Compression compression = getCompression(file);
+		final List<Chunk> chunks = new ArrayList<>();
+		// chunks of this file by checksum
+		final Map<String, Chunk> fileChunks = new HashMap<>();
+		final MessageDigest[] digest = new MessageDigest[1];
+		final ChunkingOutputStream[] chunkOut = new ChunkingOutputStream[1];
+		IOutputStreamProvider outputStreamProvider = new IOutputStreamProvider() {
+			@Override
+			public OutputStream getOutputStream() throws IOException {
+				// might be called again after an error, so start over
+				discardChunks(fileChunks.values(), file);
+				chunks.clear();
+				fileChunks.clear();
+
+				try {
+					digest[0] = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+				} catch (GeneralSecurityException e) {
+					throw new RuntimeException(e);
+				}
+				chunkOut[0] = new ChunkingOutputStream() {
+					@Override
+					protected void chunk(byte[] buf, int length) throws IOException {
+						chunks.add(backupChunk(buf, length, compression, fileChunks, file));
+					}
+				};
+				return new DigestOutputStream(chunkOut[0], digest[0]);
+			}
+		};
+		boolean fileCopied = false;
+		try {
+			copy(file, outputStreamProvider);
+			// closing the stream writes the last chunk, but file implementations close quietly
+			if (!chunkOut[0].isComplete()) {
+				throw new IOException("error while writing last chunk of file: " + file.getAbsolutePath()); //$NON-NLS-1$
+			}
+			fileCopied = true;
+		} finally {
+			if (!fileCopied) {
+				discardChunks(fileChunks.values(), file);
+			}
+		}
+
+		result.chunks = chunks;
+		result.checksum = toHexString(digest[0]);
+		result.length = file.getLength();
+		result.compression = compression;
+	}
+
+	private Chunk backupChunk(byte[] buf, int length, Compression compression, Map<String, Chunk> fileChunks,
+			IFile file) throws IOException {
+
+		MessageDigest digest = DigestUtils.getSha256Digest();
+		digest.update(buf, 0, length);
+		String checksum = toHexString(digest);
+		Chunk chunk = fileChunks.get(checksum);
+		if (chunk != null) {
+			return chunk;
+		}
+
+		int chunkId = findOldChunk(checksum, length);
+		if (chunkId > 0) {
+			chunk = new Chunk(chunkId);
+		} else {
+			String backupFilePath = createBackupFile();
+			File backupFile = Utils.toBackupFile(backupFilePath, settings.getOutputFolder());
+			OutputStream out = null;
+			boolean chunkWritten = false;
+			try {
+				out = new BufferedOutputStream(new RateLimitedOutputStream(new FileOutputStream(backupFile), writeRateLimiter));
+				for (IStorageInterceptor interceptor : storageInterceptors) {
+					out = interceptor.interceptOutputStream(out, length);
+				}
+				out = compression.getOutputStream(out, settings.getCompressionLevel());
+				out.write(buf, 0, length);
+				out.close();
+				chunkWritten = true;
+			} finally {
+				if (!chunkWritten) {
+					IOUtils.closeQuietly(out);
+					deleteBackupFile(backupFile, file);
 				}
-				removeFoldersIfEmpty(backupFile.getParentFile());
 			}
+			chunk = new Chunk(backupFilePath, checksum, length, compression);
 		}
+		fileChunks.put(checksum, chunk);
+		return chunk;
+	}
 
-		String checksum = toHexString(digest[0]);
+	private int findOldChunk(String checksum, int length) {
+		oldFilesLock.readLock().lock();
+		try {
+			Record record = database.factory()
+				.select(Tables.CHUNKS.ID)
+				.from(Tables.CHUNKS)
+				.where(Tables.CHUNKS.CHECKSUM.equal(checksum),
+						Tables.CHUNKS.LENGTH.equal(Integer.valueOf(length)))
+				.fetchAny();
+			if (record != null) {
+				int chunkId = record.getValue(Tables.CHUNKS.ID).intValue();
+				addPendingOldId(pendingOldChunkIds, chunkId);
+				return chunkId;
+			}
+			return -1;
+		} finally {
+			oldFilesLock.readLock().unlock();
+		}
+	}
 
-		database.factory()
-			.insertInto(Tables.FILES)
-			.set(Tables.FILES.BACKUP_PATH, backupFilePath)
-			.set(Tables.FILES.CHECKSUM, checksum)
-			.set(Tables.FILES.LENGTH, Long.valueOf(file.getLength()))
-			.set(Tables.FILES.COMPRESSION, Byte.valueOf((byte) Compression.BZIP2.getValue()))
-			.execute();
-		return database.factory().lastID().intValue();
+	private void discardChunks(Collection<Chunk> chunks, IFile file) {
+		// chunks occurring multiple times in a file are the same object
+		Set<Chunk> uniqueChunks = Collections.newSetFromMap(new IdentityHashMap<Chunk, Boolean>());
+		uniqueChunks.addAll(chunks);
+		for (Chunk chunk : uniqueChunks) {
+			if (chunk.isNew()) {
+				deleteBackupFile(Utils.toBackupFile(chunk.backupPath, settings.getOutputFolder()), file);
+			} else {
+				removePendingOldId(pendingOldChunkIds, chunk.id);
+			}
+		}
+	}
+
+	private void deleteBackupFile(File backupFile, IFile file) {
+		try {
+			Files.delete(backupFile.toPath());
+		} catch (IOException e) {
+			BackupPlugin.getDefault().logError("error while deleting file: " + //$NON-NLS-1$
+					backupFile.getAbsolutePath(), e);
+			fireBackupErrorOccurred(file, e, BackupErrorEvent.Severity.WARNING);
+		}
+		removeFoldersIfEmpty(backupFile.getParentFile());
 	}
 
 	private String getChecksum(IFile file) throws IOException {
@@ -514,10 +1371,43 @@ public class BackupRun implements Runnable {
 				}
 			}
 		};
-		file.copy(outputStreamProvider);
+		copy(file, outputStreamProvider);
 		return toHexString(digest[0]);
 	}
 
+	private void copy(IFile file, final IOutputStreamProvider outputStreamProvider) throws IOException {
+		// everything read from the file is written to the stream, so reads can be limited there
+		IOutputStreamProvider rateLimitedOutputStreamProvider = new IOutputStreamProvider() {
+			@Override
+			public OutputStream getOutputStream() throws IOException {
+				OutputStream out = outputStreamProvider.getOutputStream();
+				out = new RateLimitedOutputStream(out, readRateLimiter);
+				return new RateLimitedOutputStream(out, locationReadRateLimiter);
+			}
+		};
+		// prefer channels where the file provides them
+		if (file instanceof IChannelFile) {
+			Utils.copy((IChannelFile) file, rateLimitedOutputStreamProvider);
+		} else {
+			file.copy(rateLimitedOutputStreamProvider);
+		}
+	}
+
+	private void updateRates() {
+		long now = System.currentTimeMillis();
+		if ((now - lastRateTime) >= 1000) {
+			long readBytes = readRateLimiter.getTotalBytes();
+			long writtenBytes = writeRateLimiter.getTotalBytes();
+			if (lastRateTime > 0) {
+				readRate = (readBytes - lastReadBytes) * 1000 / (now - lastRateTime);
+				writeRate = (writtenBytes - lastWrittenBytes) * 1000 / (now - lastRateTime);
+			}
+			lastRateTime = now;
+			lastReadBytes = readBytes;
+			lastWrittenBytes = writtenBytes;
+		}
+	}
+
 	private String toHexString(MessageDigest digest) {
 		return Hex.encodeHexString(digest.digest());
 	}
@@ -575,9 +1465,18 @@ public class BackupRun implements Runnable {
 	}
 
 	private void fireBackupErrorOccurred(Throwable error, BackupErrorEvent.Severity severity) {
-		IFileSystemEntry fileOrFolder = !currentFileOrFolder.isEmpty() ?
-				currentFileOrFolder.get(currentFileOrFolder.size() - 1) :
-				null;
+		IFileSystemEntry fileOrFolder;
+		synchronized (currentFileOrFolder) {
+			fileOrFolder = !currentFileOrFolder.isEmpty() ?
+					currentFileOrFolder.get(currentFileOrFolder.size() - 1) :
+					null;
+		}
+		fireBackupErrorOccurred(fileOrFolder, error, severity);
+	}
+
+	private void fireBackupErrorOccurred(IFileSystemEntry fileOrFolder, Throwable error,
+			BackupErrorEvent.Severity severity) {
+
 		final BackupErrorEvent e = new BackupErrorEvent(this, fileOrFolder, new Date(), error, severity);
 		for (final IBackupRunListener listener : getListeners()) {
 			SafeRunner.run(new ISafeRunnable() {
@@ -622,199 +1521,298 @@ public class BackupRun implements Runnable {
 
 
 	private void removeOldBackups() {
-		removeOldBackupsMaxAge();
-		removeOldBackupsDaily();
-		removeOldBackupsWeekly();
-		removeFailedBackups();
+		RetentionPolicy policy = new RetentionPolicy(
+				BackupPlugin.KEEP_HOURLIES_DAYS, BackupPlugin.KEEP_DAILIES_DAYS, settings.getMaxAgeDays());
+		Cursor<Record> cursor = null;
+		try {
+			cursor = database.factory()
+				.select(Tables.BACKUPS.ID, Tables.BACKUPS.RUN_TIME, Tables.BACKUPS.NUM_ENTRIES)
+				.from(Tables.BACKUPS)
+				.fetchLazy();
+			while (cursor.hasNext()) {
+				Record record = cursor.fetchOne();
+				policy.addBackup(record.getValue(Tables.BACKUPS.ID).intValue(),
+						record.getValue(Tables.BACKUPS.RUN_TIME).getTime(),
+						record.getValue(Tables.BACKUPS.NUM_ENTRIES) == null);
+			}
+		} finally {
+			database.closeQuietly(cursor);
+		}
+
+		Map<Integer, RetentionPolicy.Reason> backupsToRemove = policy.getBackupsToRemove(System.currentTimeMillis());
+		logRetentionPlan(backupsToRemove);
+		if (!backupsToRemove.isEmpty()) {
+			removeBackups(backupsToRemove.keySet());
+		}
 	}
 
-	private void removeFailedBackups() {
-		Set<Integer> ids = new HashSet<>(database.factory()
-			.select(Tables.BACKUPS.ID)
-			.from(Tables.BACKUPS)
-			.where(Tables.BACKUPS.NUM_ENTRIES.isNull())
-			.fetch(Tables.BACKUPS.ID));
-		removeBackups(ids);
+	private void logRetentionPlan(Map<Integer, RetentionPolicy.Reason> backupsToRemove) {
+		for (RetentionPolicy.Reason reason : RetentionPolicy.Reason.values()) {
+			List<Integer> ids = new ArrayList<>();
+			for (Map.Entry<Integer, RetentionPolicy.Reason> entry : backupsToRemove.entrySet()) {
+				if (entry.getValue() == reason) {
+					ids.add(entry.getKey());
+				}
+			}
+			BackupPlugin.getDefault().logMessage("removing backups (" + reason.name().toLowerCase() + "): " + ids); //$NON-NLS-1$ //$NON-NLS-2$
+		}
 	}
 
-	private void removeOldBackupsMaxAge() {
-		if (settings.getMaxAgeDays() > 0) {
-			Calendar c = Calendar.getInstance();
-			c.add(Calendar.DAY_OF_MONTH, -settings.getMaxAgeDays());
-			List<Integer> backupIds = getBackupIds(0, c.getTimeInMillis());
+	private void removeBackups(Collection<Integer> backupsToRemove) {
+		Object[] ids = backupsToRemove.toArray();
+		String idsSql = StringUtils.repeat("?", ", ", ids.length); //$NON-NLS-1$ //$NON-NLS-2$
+		database.factory()
+			.query("UPDATE files SET ref_count = ref_count - " + //$NON-NLS-1$
+					"(SELECT COUNT(*) FROM entries WHERE backup_id IN (" + idsSql + ") AND file_id = files.id) " + //$NON-NLS-1$ //$NON-NLS-2$
+					"WHERE id IN (SELECT file_id FROM entries WHERE backup_id IN (" + idsSql + "))", //$NON-NLS-1$ //$NON-NLS-2$
+					ArrayUtils.addAll(ids, ids))
+			.execute();
+		database.factory()
+			.delete(Tables.ENTRIES)
+			.where(Tables.ENTRIES.BACKUP_ID.in(backupsToRemove))
+			.execute();
+		database.factory()
+			.delete(Tables.COMPLETED_FOLDERS)
+			.where(Tables.COMPLETED_FOLDERS.BACKUP_ID.in(backupsToRemove))
+			.execute();
+		database.factory()
+			.delete(Tables.BACKUPS)
+			.where(Tables.BACKUPS.ID.in(backupsToRemove))
+			.execute();
+	}
 
-			BackupPlugin.getDefault().logMessage("removing backups (age): " + backupIds); //$NON-NLS-1$
-			if (!backupIds.isEmpty()) {
-				removeBackups(backupIds);
-			}
+	private void removeFile(FileEntry file) {
+		// backup path is null for files stored as chunks
+		if (file.packed) {
+			packsToCompact.add(file.backupPath);
+		} else if (file.backupPath != null) {
+			removeBackupFile(file.backupPath);
 		}
 	}
 
-	private void removeOldBackupsDaily() {
-		// collect IDs of all but the most recent backup each day
-		Set<Integer> backupsToRemove = new HashSet<>();
-		List<Date> days = getBackupRunsDays(BackupPlugin.KEEP_HOURLIES_DAYS);
-		Calendar c = Calendar.getInstance();
-		for (Date day : days) {
-			long start = day.getTime();
-			c.setTimeInMillis(start);
-			c.add(Calendar.DAY_OF_YEAR, 1);
-			long end = c.getTimeInMillis();
-			List<Integer> ids = getBackupIds(start, end);
-			if (ids.size() >= 2) {
-				ids.remove(0);
-				backupsToRemove.addAll(ids);
+	private void compactPacks() {
+		List<String> backupPaths;
+		synchronized (packsToCompact) {
+			backupPaths = new ArrayList<>(packsToCompact);
+		}
+		for (String backupPath : backupPaths) {
+			// pack files written by this run might contain files that aren't committed yet
+			if ((packWriter == null) || !packWriter.isOwnPack(backupPath)) {
+				compactPack(backupPath);
+				packsToCompact.remove(backupPath);
 			}
 		}
+	}
 
-		BackupPlugin.getDefault().logMessage("removing backups (daily): " + backupsToRemove); //$NON-NLS-1$
-		if (!backupsToRemove.isEmpty()) {
-			removeBackups(backupsToRemove);
+	private void compactPack(String backupPath) {
+		List<Record> members = database.factory()
+			.select(Tables.FILES.ID, Tables.FILES.PACK_OFFSET, Tables.FILES.PACK_LENGTH)
+			.from(Tables.FILES)
+			.where(Tables.FILES.BACKUP_PATH.equal(backupPath))
+			.orderBy(Tables.FILES.PACK_OFFSET)
+			.fetch();
+		if (members.isEmpty()) {
+			removeBackupFile(backupPath);
+			return;
 		}
-	}
 
-	private List<Integer> getBackupIds(long start, long end) {
-		return database.factory()
-			.select(Tables.BACKUPS.ID)
-			.from(Tables.BACKUPS)
-			.where(Tables.BACKUPS.RUN_TIME.greaterOrEqual(new Timestamp(start)),
-					Tables.BACKUPS.RUN_TIME.lessThan(new Timestamp(end)))
-			.orderBy(Tables.BACKUPS.RUN_TIME.desc())
-			.fetch(Tables.BACKUPS.ID);
-	}
+		long usedLength = 0;
+		for (Record member : members) {
+			usedLength += member.getValue(Tables.FILES.PACK_LENGTH).longValue();
+		}
+		File packFile = Utils.toBackupFile(backupPath, settings.getOutputFolder());
+		if (usedLength >= (packFile.length() / 2)) {
+			return;
+		}
 
-	private void removeOldBackupsWeekly() {
-		// collect IDs of all but the most recent backup each week
-		Set<Integer> backupsToRemove = new HashSet<>();
-		List<Date> days = getBackupRunsDays(BackupPlugin.KEEP_DAILIES_DAYS);
-		Calendar c = Calendar.getInstance();
-		for (Date day : days) {
-			long start = getWeekStart(day).getTime();
-			c.setTimeInMillis(start);
-			c.add(Calendar.DAY_OF_YEAR, 7);
-			long end = c.getTimeInMillis();
-			List<Integer> ids = getBackupIds(start, end);
-			if (ids.size() >= 2) {
-				ids.remove(0);
-				backupsToRemove.addAll(ids);
+		BackupPlugin.getDefault().logMessage("compacting pack file: " + backupPath); //$NON-NLS-1$
+		PackWriter writer = new PackWriter(settings.getOutputFolder(), writeRateLimiter) {
+			@Override
+			protected String createPackFile() throws IOException {
+				return createBackupFile();
+			}
+		};
+		RandomAccessFile in = null;
+		boolean compacted = false;
+		try {
+			in = new RandomAccessFile(packFile, "r"); //$NON-NLS-1$
+			for (Record member : members) {
+				byte[] buf = new byte[member.getValue(Tables.FILES.PACK_LENGTH).intValue()];
+				in.seek(member.getValue(Tables.FILES.PACK_OFFSET).longValue());
+				in.readFully(buf);
+				// file is moved only after its data has been written to the new pack file
+				PackMember newMember = writer.append(buf, buf.length);
+				database.factory()
+					.update(Tables.FILES)
+					.set(Tables.FILES.BACKUP_PATH, newMember.backupPath)
+					.set(Tables.FILES.PACK_OFFSET, Long.valueOf(newMember.offset))
+					.where(Tables.FILES.ID.equal(member.getValue(Tables.FILES.ID)))
+					.execute();
+			}
+			writer.close();
+			compacted = true;
+		} catch (IOException e) {
+			BackupPlugin.getDefault().logError("error while compacting pack file: " + backupPath, e); //$NON-NLS-1$
+			fireBackupErrorOccurred(e, BackupErrorEvent.Severity.WARNING);
+		} finally {
+			IOUtils.closeQuietly(in);
+			if (!compacted) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					// ignore
+				}
 			}
 		}
 
-		BackupPlugin.getDefault().logMessage("removing backups (weekly): " + backupsToRemove); //$NON-NLS-1$
-		if (!backupsToRemove.isEmpty()) {
-			removeBackups(backupsToRemove);
+		if (compacted) {
+			removeBackupFile(backupPath);
 		}
 	}
 
-	private Date getWeekStart(Date date) {
-		int firstWeekday = Calendar.getInstance().getFirstDayOfWeek();
-		Calendar c = Calendar.getInstance();
-		c.setTimeInMillis(date.getTime());
-		for (;;) {
-			int weekday = c.get(Calendar.DAY_OF_WEEK);
-			if (weekday == firstWeekday) {
-				break;
-			}
-			c.add(Calendar.DAY_OF_YEAR, -1);
-		}
-		return new Date(c.getTimeInMillis());
+	private void removeUnusedNames() {
+		database.factory()
+			.delete(Tables.NAMES)
+			.where(Factory.notExists(database.factory()
+					.selectOne()
+					.from(Tables.ENTRIES)
+					.where(Tables.ENTRIES.NAME_ID.equal(Tables.NAMES.ID))))
+			.execute();
+		database.factory()
+			.delete(Tables.NAME_TRIGRAMS)
+			.where(Factory.notExists(database.factory()
+					.selectOne()
+					.from(Tables.NAMES)
+					.where(Tables.NAMES.ID.equal(Tables.NAME_TRIGRAMS.NAME_ID))))
+			.execute();
 	}
 
-	private List<Date> getBackupRunsDays(int skipDays) {
+	private void removeUnusedChunks() {
 		Cursor<Record> cursor = null;
+		Set<FileEntry> chunksToRemove = new HashSet<>();
 		try {
-			// get all days where there are backups (and which are older than skipDays days)
-			Calendar c = Calendar.getInstance();
-			c.add(Calendar.DAY_OF_YEAR, -skipDays);
-			c.set(Calendar.HOUR_OF_DAY, 0);
-			c.set(Calendar.MINUTE, 0);
-			c.set(Calendar.SECOND, 0);
-			c.set(Calendar.MILLISECOND, 0);
 			cursor = database.factory()
-				.select(Tables.BACKUPS.RUN_TIME)
-				.from(Tables.BACKUPS)
-				.where(Tables.BACKUPS.RUN_TIME.lessThan(new Timestamp(c.getTimeInMillis())))
-				.orderBy(Tables.BACKUPS.RUN_TIME)
+				.select(Tables.CHUNKS.ID,
+						Tables.CHUNKS.BACKUP_PATH)
+				.from(Tables.CHUNKS)
+				.leftOuterJoin(Tables.FILE_CHUNKS)
+					.on(Tables.FILE_CHUNKS.CHUNK_ID.equal(Tables.CHUNKS.ID))
+				.where(Tables.FILE_CHUNKS.CHUNK_ID.isNull())
 				.fetchLazy();
-			List<Date> days = new ArrayList<>();
 			while (cursor.hasNext()) {
 				Record record = cursor.fetchOne();
-				c.setTimeInMillis(record.getValue(Tables.BACKUPS.RUN_TIME).getTime());
-				c.set(Calendar.HOUR_OF_DAY, 0);
-				c.set(Calendar.MINUTE, 0);
-				c.set(Calendar.SECOND, 0);
-				c.set(Calendar.MILLISECOND, 0);
-				days.add(new Date(c.getTimeInMillis()));
-			}
-			return days;
+				int chunkId = record.getValue(Tables.CHUNKS.ID).intValue();
+				// chunks found by backup workers but not yet committed are still in use
+				if (!isPendingOldId(pendingOldChunkIds, chunkId)) {
+					FileEntry chunk = new FileEntry(chunkId, record.getValue(Tables.CHUNKS.BACKUP_PATH));
+					chunksToRemove.add(chunk);
+				}
+			}
 		} finally {
 			database.closeQuietly(cursor);
 		}
-	}
 
-	private void removeBackups(Collection<Integer> backupsToRemove) {
-		for (Integer backupId : backupsToRemove) {
-			database.factory()
-				.delete(Tables.ENTRIES)
-				.where(Tables.ENTRIES.BACKUP_ID.equal(backupId))
-				.execute();
+		BackupPlugin.getDefault().logMessage("removing unused chunks: " + chunksToRemove); //$NON-NLS-1$
+		for (FileEntry chunk : chunksToRemove) {
+			removeBackupFile(chunk.backupPath);
+
 			database.factory()
-				.delete(Tables.BACKUPS)
-				.where(Tables.BACKUPS.ID.equal(backupId))
+				.delete(Tables.CHUNKS)
+				.where(Tables.CHUNKS.ID.equal(Integer.valueOf(chunk.id)))
 				.execute();
 		}
 	}
 
-	private void removeUnusedFiles() {
-		Cursor<Record> cursor = null;
-		Set<FileEntry> filesToRemove = new HashSet<>();
-		try {
-			cursor = database.factory()
-				.select(Tables.FILES.ID,
-						Tables.FILES.BACKUP_PATH)
-				.from(Tables.FILES)
-				.leftOuterJoin(Tables.ENTRIES)
-					.on(Tables.ENTRIES.FILE_ID.equal(Tables.FILES.ID))
-				.where(Tables.ENTRIES.FILE_ID.isNull())
-				.fetchLazy();
-			while (cursor.hasNext()) {
-				Record record = cursor.fetchOne();
-				FileEntry file = new FileEntry(
-						record.getValue(Tables.FILES.ID).intValue(),
-						record.getValue(Tables.FILES.BACKUP_PATH));
-				filesToRemove.add(file);
+	// removes the backup files an interrupted backup has written since its last commit, which
+	// no file or chunk refers to
+	private void removeUncommittedBackupFiles(long runTime) {
+		List<String> folderPaths = new ArrayList<>();
+		findBackupFolders(new File(settings.getOutputFolder()), null,
+				Utils.toBackupFolderPath(new Date(runTime)).split("/"), folderPaths); //$NON-NLS-1$
+		for (String folderPath : folderPaths) {
+			Set<String> backupPaths = new HashSet<>(database.factory()
+					.selectDistinct(Tables.FILES.BACKUP_PATH)
+					.from(Tables.FILES)
+					.where(Tables.FILES.BACKUP_PATH.like(folderPath + "/%")) //$NON-NLS-1$
+					.fetch(Tables.FILES.BACKUP_PATH));
+			backupPaths.addAll(database.factory()
+					.select(Tables.CHUNKS.BACKUP_PATH)
+					.from(Tables.CHUNKS)
+					.where(Tables.CHUNKS.BACKUP_PATH.like(folderPath + "/%")) //$NON-NLS-1$
+					.fetch(Tables.CHUNKS.BACKUP_PATH));
+			List<String> uncommittedPaths = new ArrayList<>();
+			findUncommittedBackupFiles(Utils.toBackupFile(folderPath, settings.getOutputFolder()), folderPath,
+					backupPaths, uncommittedPaths);
+			for (String backupPath : uncommittedPaths) {
+				BackupPlugin.getDefault().logMessage("removing uncommitted backup file: " + backupPath); //$NON-NLS-1$
+				removeBackupFile(backupPath);
 			}
-		} finally {
-			database.closeQuietly(cursor);
 		}
+	}
 
-		BackupPlugin.getDefault().logMessage("removing unused files: " + filesToRemove); //$NON-NLS-1$
-		if (!filesToRemove.isEmpty()) {
-			removeFiles(filesToRemove);
+	// finds the backup folders at or after the one of the interrupted backup's run time
+	private static void findBackupFolders(File folder, String folderPath, String[] startFolderPathParts,
+			List<String> result) {
+
+		int depth = (folderPath != null) ? folderPath.split("/").length : 0; //$NON-NLS-1$
+		if (depth == startFolderPathParts.length) {
+			result.add(folderPath);
+			return;
 		}
-	}
 
-	private void removeFiles(Set<FileEntry> files) {
-		for (FileEntry file : files) {
-			File f = Utils.toBackupFile(file.backupPath, settings.getOutputFolder());
-			Path path = f.toPath();
-			try {
-				Files.delete(path);
-			} catch (IOException e) {
-				BackupPlugin.getDefault().logError("error deleting file: " + file.backupPath, e); //$NON-NLS-1$
-				fireBackupErrorOccurred(e, BackupErrorEvent.Severity.WARNING);
+		String startPart = startFolderPathParts[depth];
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (file.isDirectory() && (name.length() == startPart.length()) && StringUtils.isNumeric(name)) {
+					// parts have a fixed width, so paths compare like the times they stand for
+					String startFolderPath = StringUtils.join(startFolderPathParts, "/", 0, depth + 1); //$NON-NLS-1$
+					String path = (folderPath != null) ? folderPath + "/" + name : name; //$NON-NLS-1$
+					if (path.compareTo(startFolderPath) >= 0) {
+						findBackupFolders(file, path, startFolderPathParts, result);
+					}
+				}
 			}
+		}
+	}
 
-			removeFoldersIfEmpty(f.getParentFile());
+	private static void findUncommittedBackupFiles(File folder, String folderPath, Set<String> backupPaths,
+			List<String> result) {
+
+		File[] files = folder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String path = folderPath + "/" + file.getName(); //$NON-NLS-1$
+				if (file.isDirectory()) {
+					findUncommittedBackupFiles(file, path, backupPaths, result);
+				} else if (!backupPaths.contains(path)) {
+					result.add(path);
+				}
+			}
+		}
+	}
 
-			database.factory()
-				.delete(Tables.FILES)
-				.where(Tables.FILES.ID.equal(Integer.valueOf(file.id)))
-				.execute();
+	private void removeBackupFile(String backupPath) {
+		File f = Utils.toBackupFile(backupPath, settings.getOutputFolder());
+		Path path = f.toPath();
+		try {
+			Files.delete(path);
+		} catch (IOException e) {
+			BackupPlugin.getDefault().logError("error deleting file: " + backupPath, e); //$NON-NLS-1$
+			fireBackupErrorOccurred(e, BackupErrorEvent.Severity.WARNING);
 		}
+
+		removeFoldersIfEmpty(f.getParentFile());
 	}
 
 	private void removeFoldersIfEmpty(File folder) {
+		synchronized (backupPathLock) {
+			removeFoldersIfEmptyInternal(folder);
+		}
+	}
+
+	private void removeFoldersIfEmptyInternal(File folder) {
 		File outputFolder = new File(settings.getOutputFolder());
 		if (Utils.isParent(new FileSystemFileOrFolder(outputFolder), new FileSystemFileOrFolder(folder)) &&
 			(folder.list().length == 0)) {
@@ -824,7 +1822,7 @@ public class BackupRun implements Runnable {
 				Files.delete(folder.toPath());
 
 				File parentFolder = folder.getParentFile();
-				removeFoldersIfEmpty(parentFolder);
+				removeFoldersIfEmptyInternal(parentFolder);
 			} catch (IOException e) {
 				BackupPlugin.getDefault().logError("error deleting folder: " + folder.getAbsolutePath(), e); //$NON-NLS-1$
 				fireBackupErrorOccurred(e, BackupErrorEvent.Severity.WARNING);
@@ -833,26 +1831,46 @@ public class BackupRun implements Runnable {
 	}
 
 	private void checkDiskSpaceAndRemoveOldBackups() {
+		// almost everything written to the output folder is written by this run, so there is
+		// no need to ask the file system until a good part of the free space has been used up
+		long writtenBytes = writeRateLimiter.getTotalBytes();
+		if (((writtenBytes - diskSpaceCheckWrittenBytes) < diskSpaceCheckAllowance) &&
+			((System.currentTimeMillis() - diskSpaceCheckTime) < MAX_DISK_SPACE_CHECK_INTERVAL)) {
+
+			return;
+		}
+
+		oldFilesLock.writeLock().lock();
 		try {
 			FileStore store = Files.getFileStore(new File(settings.getOutputFolder()).toPath());
 			long total = store.getTotalSpace();
 			if (total > 0) {
+				long minAvailable = (long) (total * (100d - settings.getMaxDiskFillRate()) / 100d);
 				for (;;) {
 					long available = store.getUsableSpace();
 					if (available <= 0) {
 						break;
 					}
 
-					double avail = available * 100d / total;
-					if (avail >= (100d - settings.getMaxDiskFillRate())) {
+					if (available >= minAvailable) {
+						// leave some margin for writes by others
+						diskSpaceCheckAllowance = (available - minAvailable) / 2;
 						break;
 					}
 
-					if (!removeOldestBackup()) {
+					// entries referencing old files must be visible before removing unused files
+					if (catalogWriter != null) {
+						catalogWriter.flush();
+					}
+
+					if (!removeOldestBackups(minAvailable - available)) {
+						diskSpaceCheckAllowance = 0;
 						break;
 					}
 
-					removeUnusedFiles();
+					fileCollector.collect();
+					removeUnusedChunks();
+					compactPacks();
 				}
 			}
 		} catch (IOException e) {
@@ -860,34 +1878,110 @@ public class BackupRun implements Runnable {
 		} catch (DataAccessException e) {
 			BackupPlugin.getDefault().logError("error removing oldest backup", e); //$NON-NLS-1$
 			fireBackupErrorOccurred(e, BackupErrorEvent.Severity.WARNING);
+		} finally {
+			diskSpaceCheckWrittenBytes = writeRateLimiter.getTotalBytes();
+			diskSpaceCheckTime = System.currentTimeMillis();
+			oldFilesLock.writeLock().unlock();
 		}
 	}
 
-	private boolean removeOldestBackup() {
-		Record record = database.factory()
+	private boolean removeOldestBackups(long bytesToFree) {
+		List<Integer> candidateIds = database.factory()
 			.select(Tables.BACKUPS.ID)
 			.from(Tables.BACKUPS)
-			.where(Tables.BACKUPS.NUM_ENTRIES.isNotNull())
+			.where(Tables.BACKUPS.NUM_ENTRIES.isNotNull(),
+					// unchanged files are copied from the previous backup
+					Tables.BACKUPS.ID.notEqual(Integer.valueOf(
+							(previousBackupIndex != null) ? previousBackupIndex.getBackupId() : -1)))
 			.orderBy(Tables.BACKUPS.RUN_TIME)
-			.fetchAny();
-		if (record != null) {
-			Integer id = record.getValue(Tables.BACKUPS.ID);
-			BackupPlugin.getDefault().logMessage("removing backup: " + id); //$NON-NLS-1$
-			removeBackups(Collections.singleton(id));
+			.fetch(Tables.BACKUPS.ID);
+
+		// a file's space is reclaimed once all entries referencing it have been removed
+		List<Integer> backupIds = new ArrayList<>();
+		Map<Integer, Integer> removedRefCounts = new HashMap<>();
+		long estimatedBytes = 0;
+		for (Integer backupId : candidateIds) {
+			backupIds.add(backupId);
+			estimatedBytes += estimateReclaimedBytes(backupId, removedRefCounts);
+			if (estimatedBytes >= bytesToFree) {
+				break;
+			}
+		}
+
+		if (!backupIds.isEmpty()) {
+			BackupPlugin.getDefault().logMessage("removing backups (disk space): " + backupIds + //$NON-NLS-1$
+					", estimated to free " + estimatedBytes + " of " + bytesToFree + " bytes"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			removeBackups(backupIds);
+		}
+		return !backupIds.isEmpty();
+	}
+
+	private long estimateReclaimedBytes(Integer backupId, Map<Integer, Integer> removedRefCounts) {
+		Field<Integer> refCount = Tables.ENTRIES.FILE_ID.count();
+		long bytes = 0;
+		Cursor<Record> cursor = null;
+		try {
+			cursor = database.factory()
+				.select(Tables.ENTRIES.FILE_ID,
+						refCount,
+						Tables.FILES.REF_COUNT,
+						Tables.FILES.LENGTH,
+						Tables.FILES.BACKUP_PATH,
+						Tables.FILES.PACK_LENGTH)
+				.from(Tables.ENTRIES)
+				.join(Tables.FILES)
+					.on(Tables.FILES.ID.equal(Tables.ENTRIES.FILE_ID))
+				.where(Tables.ENTRIES.BACKUP_ID.equal(backupId))
+				.groupBy(Tables.ENTRIES.FILE_ID,
+						Tables.FILES.REF_COUNT,
+						Tables.FILES.LENGTH,
+						Tables.FILES.BACKUP_PATH,
+						Tables.FILES.PACK_LENGTH)
+				.fetchLazy();
+			while (cursor.hasNext()) {
+				Record record = cursor.fetchOne();
+				Integer fileId = record.getValue(Tables.ENTRIES.FILE_ID);
+				Integer removedRefCount = removedRefCounts.get(fileId);
+				int oldRemovedRefCount = (removedRefCount != null) ? removedRefCount.intValue() : 0;
+				int newRemovedRefCount = oldRemovedRefCount + record.getValue(refCount).intValue();
+				removedRefCounts.put(fileId, Integer.valueOf(newRemovedRefCount));
+				int fileRefCount = record.getValue(Tables.FILES.REF_COUNT).intValue();
+				if ((oldRemovedRefCount < fileRefCount) && (newRemovedRefCount >= fileRefCount)) {
+					Long packLength = record.getValue(Tables.FILES.PACK_LENGTH);
+					String backupPath = record.getValue(Tables.FILES.BACKUP_PATH);
+					if (packLength != null) {
+						bytes += packLength.longValue();
+					} else if (backupPath != null) {
+						bytes += Utils.toBackupFile(backupPath, settings.getOutputFolder()).length();
+					} else {
+						// chunks might be shared with other files, so the file's length is the best estimate there is
+						bytes += record.getValue(Tables.FILES.LENGTH).longValue();
+					}
+				}
+			}
+		} finally {
+			database.closeQuietly(cursor);
 		}
-		return record != null;
+		return bytes;
 	}
 
 	private void consolidateDuplicateFiles() {
+		// new files are looked up while being backed up, so duplicates can only be files
+		// backed up in parallel during this run
+		de.blizzy.backup.database.schema.tables.Files otherFiles = Tables.FILES.as("other_files"); //$NON-NLS-1$
 		Cursor<Record> cursor = null;
 		try {
 			cursor = database.factory()
-				.select(Tables.FILES.CHECKSUM,
+				.selectDistinct(Tables.FILES.CHECKSUM,
 						Tables.FILES.LENGTH)
 				.from(Tables.FILES)
-				.groupBy(Tables.FILES.CHECKSUM,
-						Tables.FILES.LENGTH)
-				.having(Tables.FILES.CHECKSUM.count().greaterThan(Integer.valueOf(1)))
+				.where(Tables.FILES.ID.greaterThan(Integer.valueOf(maxOldFileId)),
+						Factory.exists(database.factory()
+								.selectOne()
+								.from(otherFiles)
+								.where(otherFiles.CHECKSUM.equal(Tables.FILES.CHECKSUM),
+										otherFiles.LENGTH.equal(Tables.FILES.LENGTH),
+										otherFiles.ID.notEqual(Tables.FILES.ID))))
 				.fetchLazy();
 			while (cursor.hasNext()) {
 				Record record = cursor.fetchOne();
@@ -908,8 +2002,10 @@ public class BackupRun implements Runnable {
 				.from(Tables.FILES)
 				.where(Tables.FILES.CHECKSUM.equal(checksum),
 						Tables.FILES.LENGTH.equal(Long.valueOf(length)))
+				.orderBy(Tables.FILES.ID)
 				.fetch(Tables.FILES.ID);
 			if (fileIds.size() >= 2) {
+				// keep the oldest file
 				int masterFileId = fileIds.get(0).intValue();
 				fileIds = fileIds.subList(1, fileIds.size());
 				consolidateDuplicateFiles(masterFileId, fileIds);
@@ -926,30 +2022,45 @@ public class BackupRun implements Runnable {
 		while (!fileIds.isEmpty()) {
 			int endIdx = Math.min(fileIds.size(), 10);
 			List<Integer> chunk = fileIds.subList(0, endIdx);
+			Object[] params = ArrayUtils.add(chunk.toArray(), masterId);
+			database.factory()
+				.query("UPDATE files SET ref_count = ref_count + " + //$NON-NLS-1$
+						"(SELECT COUNT(*) FROM entries WHERE file_id IN (" + //$NON-NLS-1$
+						StringUtils.repeat("?", ", ", chunk.size()) + ")) WHERE id = ?", params) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				.execute();
 			database.factory()
 				.update(Tables.ENTRIES)
 				.set(Tables.ENTRIES.FILE_ID, masterId)
 				.where(Tables.ENTRIES.FILE_ID.in(chunk))
 				.execute();
+			database.factory()
+				.update(Tables.FILES)
+				.set(Tables.FILES.REF_COUNT, Integer.valueOf(0))
+				.where(Tables.FILES.ID.in(chunk))
+				.execute();
 			fileIds = fileIds.subList(endIdx, fileIds.size());
 		}
 	}
 
 	private void countEntries() {
 		for (ILocation location : settings.getLocations()) {
-			countEntries(location.getRootFolder());
+			countEntries(location.getRootFolder(), null);
 		}
 	}
 
-	private void countEntries(IFolder folder) {
+	private void countEntries(IFolder folder, IFolder parentFolder) {
 		try {
-			for (IFileSystemEntry entry : folder.list()) {
+			List<IFileSystemEntry> entries = listingCache.listForCounter(folder, parentFolder);
+			if (entries == null) {
+				return;
+			}
+			for (IFileSystemEntry entry : entries) {
 				if (!running) {
 					break;
 				}
 
 				if (entry.isFolder()) {
-					countEntries((IFolder) entry);
+					countEntries((IFolder) entry, folder);
 				} else {
 					totalEntries++;
 				}
@@ -20,26 +20,32 @@ package de.blizzy.backup.backup;
 import de.blizzy.backup.Messages;
 
 public class BackupStatus {
-	public static final BackupStatus INITIALIZE = new BackupStatus(true, null, -1, -1, false, false);
-	public static final BackupStatus FINALIZE = new BackupStatus(false, null, -1, -1, true, false);
-	public static final BackupStatus CLEANUP = new BackupStatus(false, null, -1, -1, false, true);
+	public static final BackupStatus INITIALIZE = new BackupStatus(true, null, -1, -1, -1, -1, false, false);
+	public static final BackupStatus FINALIZE = new BackupStatus(false, null, -1, -1, -1, -1, true, false);
+	public static final BackupStatus CLEANUP = new BackupStatus(false, null, -1, -1, -1, -1, false, true);
 
 	private boolean initialize;
 	private int numEntries;
 	private int totalEntries;
 	private String currentFile;
+	private long readRate;
+	private long writeRate;
 	private boolean finalize;
 	private boolean cleanup;
 
-	public BackupStatus(String currentFile, int numEntries, int totalEntries) {
-		this(false, currentFile, numEntries, totalEntries, false, false);
+	public BackupStatus(String currentFile, int numEntries, int totalEntries, long readRate, long writeRate) {
+		this(false, currentFile, numEntries, totalEntries, readRate, writeRate, false, false);
 	}
 	
-	private BackupStatus(boolean initialize, String currentFile, int numEntries, int totalEntries, boolean finalize, boolean cleanup) {
+	private BackupStatus(boolean initialize, String currentFile, int numEntries, int totalEntries,
+			long readRate, long writeRate, boolean finalize, boolean cleanup) {
+
 		this.initialize = initialize;
 		this.currentFile = currentFile;
 		this.numEntries = numEntries;
 		this.totalEntries = totalEntries;
+		this.readRate = readRate;
+		this.writeRate = writeRate;
 		this.finalize = finalize;
 		this.cleanup = cleanup;
 	}
@@ -52,6 +58,16 @@ public class BackupStatus {
 		return totalEntries;
 	}
 	
+	// bytes per second read from locations, or -1 if unknown
+	public long getReadRate() {
+		return readRate;
+	}
+	
+	// bytes per second written to the output folder, or -1 if unknown
+	public long getWriteRate() {
+		return writeRate;
+	}
+	
 	public boolean isInitialize() {
 		return initialize;
 	}
@@ -0,0 +1,442 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import java.nio.file.attribute.FileTime;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jooq.BatchBindStep;
+import org.jooq.Record;
+
+import de.blizzy.backup.Compression;
+import de.blizzy.backup.Utils;
+import de.blizzy.backup.database.Database;
+import de.blizzy.backup.database.EntryType;
+import de.blizzy.backup.database.schema.Tables;
+
+class CatalogWriter {
+	private static final int MAX_BATCH_SIZE = 1000;
+	private static final long MAX_FLUSH_INTERVAL = 5000;
+	private static final int MAX_CACHED_NAMES = 100000;
+
+	private Database database;
+	private int backupId;
+	private int nextEntryId;
+	private int nextFileId;
+	private int nextChunkId;
+	private int nextNameId;
+	// recently used names, to save lookups for names that occur in many folders
+	@SuppressWarnings("serial")
+	private Map<String, Integer> nameIds = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+			return size() > MAX_CACHED_NAMES;
+		}
+	};
+	// names that have not been flushed yet
+	private Map<String, Integer> newNameIds = new HashMap<>();
+	private List<Object[]> names = new ArrayList<>();
+	private List<Object[]> nameTrigrams = new ArrayList<>();
+	private List<Object[]> entries = new ArrayList<>();
+	private List<Object[]> files = new ArrayList<>();
+	private List<Object[]> chunks = new ArrayList<>();
+	private List<Object[]> fileChunks = new ArrayList<>();
+	private List<Object[]> hashCacheEntries = new ArrayList<>();
+	private Map<Integer, Integer> fileRefCounts = new HashMap<>();
+	private List<Object[]> completedFolders = new ArrayList<>();
+	// entries of unchanged folders that are copied from the previous backup when flushing
+	private List<Object[]> copiedFileEntries = new ArrayList<>();
+	private int numCopiedFileEntries;
+	private long lastFlushTime;
+
+	CatalogWriter(Database database, int backupId) {
+		this.database = database;
+		this.backupId = backupId;
+	}
+
+	void open() {
+		// IDs are assigned here instead of by the database so that rows can be
+		// batched without a lastID() round trip per row
+		nextEntryId = getMaxId(database.factory().select(Tables.ENTRIES.ID.max()).from(Tables.ENTRIES).fetchOne()) + 1;
+		nextFileId = getMaxId(database.factory().select(Tables.FILES.ID.max()).from(Tables.FILES).fetchOne()) + 1;
+		nextChunkId = getMaxId(database.factory().select(Tables.CHUNKS.ID.max()).from(Tables.CHUNKS).fetchOne()) + 1;
+		nextNameId = getMaxId(database.factory().select(Tables.NAMES.ID.max()).from(Tables.NAMES).fetchOne()) + 1;
+		lastFlushTime = System.currentTimeMillis();
+	}
+
+	private int getMaxId(Record record) {
+		Integer id = (Integer) record.getValue(0);
+		return (id != null) ? id.intValue() : 0;
+	}
+
+	int addEntry(int parentId, String parentNamePath, EntryType type, FileTime creationTime, FileTime modificationTime,
+			boolean hidden, String name, int fileId) {
+
+		int id = nextEntryId++;
+		int nameId = getNameId(name);
+		entries.add(new Object[] {
+				Integer.valueOf(id),
+				(parentId > 0) ? Integer.valueOf(parentId) : null,
+				Integer.valueOf(backupId),
+				Byte.valueOf((byte) type.getValue()),
+				(creationTime != null) ? new Timestamp(creationTime.toMillis()) : null,
+				(modificationTime != null) ? new Timestamp(modificationTime.toMillis()) : null,
+				Boolean.valueOf(hidden),
+				Integer.valueOf(nameId),
+				Utils.toNamePath(parentNamePath, nameId),
+				(fileId > 0) ? Integer.valueOf(fileId) : null
+		});
+		if (fileId > 0) {
+			Integer fileIdInt = Integer.valueOf(fileId);
+			Integer refCount = fileRefCounts.get(fileIdInt);
+			fileRefCounts.put(fileIdInt, Integer.valueOf((refCount != null) ? refCount.intValue() + 1 : 1));
+		}
+		flushIfNecessary();
+		return id;
+	}
+
+	String getNamePath(String parentNamePath, String name) {
+		return Utils.toNamePath(parentNamePath, getNameId(name));
+	}
+
+	private int getNameId(String name) {
+		Integer id = nameIds.get(name);
+		if (id == null) {
+			id = newNameIds.get(name);
+		}
+		if (id == null) {
+			id = database.factory()
+				.select(Tables.NAMES.ID)
+				.from(Tables.NAMES)
+				.where(Tables.NAMES.NAME.equal(name))
+				.fetchOne(Tables.NAMES.ID);
+		}
+		if (id == null) {
+			id = Integer.valueOf(nextNameId++);
+			String nameLower = name.toLowerCase();
+			names.add(new Object[] {
+					id,
+					name,
+					nameLower
+			});
+			for (String trigram : Utils.getTrigrams(nameLower)) {
+				nameTrigrams.add(new Object[] {
+						trigram,
+						id
+				});
+			}
+			newNameIds.put(name, id);
+		} else {
+			nameIds.put(name, id);
+		}
+		return id.intValue();
+	}
+
+	int addFile(String backupPath, long packOffset, long packLength, String checksum, long length,
+			Compression compression) {
+
+		int id = nextFileId++;
+		files.add(new Object[] {
+				Integer.valueOf(id),
+				backupPath,
+				checksum,
+				Long.valueOf(length),
+				Byte.valueOf((byte) compression.getValue()),
+				(packOffset >= 0) ? Long.valueOf(packOffset) : null,
+				(packOffset >= 0) ? Long.valueOf(packLength) : null
+		});
+		flushIfNecessary();
+		return id;
+	}
+
+	int addChunk(String backupPath, String checksum, int length, Compression compression) {
+		int id = nextChunkId++;
+		chunks.add(new Object[] {
+				Integer.valueOf(id),
+				backupPath,
+				checksum,
+				Integer.valueOf(length),
+				Byte.valueOf((byte) compression.getValue())
+		});
+		flushIfNecessary();
+		return id;
+	}
+
+	void addFileChunk(int fileId, int index, int chunkId) {
+		fileChunks.add(new Object[] {
+				Integer.valueOf(fileId),
+				Integer.valueOf(index),
+				Integer.valueOf(chunkId)
+		});
+		flushIfNecessary();
+	}
+
+	void addHashCacheEntry(HashCacheEntry entry) {
+		hashCacheEntries.add(new Object[] {
+				entry.path,
+				entry.fileKey,
+				entry.modificationTime,
+				Long.valueOf(entry.length),
+				entry.checksum,
+				Integer.valueOf((entry.hashBackupId > 0) ? entry.hashBackupId : backupId),
+				Integer.valueOf(backupId)
+		});
+		flushIfNecessary();
+	}
+
+	void addCompletedFolder(int entryId) {
+		completedFolders.add(new Object[] {
+				Integer.valueOf(entryId),
+				Integer.valueOf(backupId)
+		});
+		flushIfNecessary();
+	}
+
+	int copyFileEntries(int previousBackupId, int previousParentId, int parentId, String parentNamePath) {
+		// the previous backup doesn't change, so the IDs of the copied rows can be assigned now
+		int count = database.factory()
+			.selectCount()
+			.from(Tables.ENTRIES)
+			.where(Tables.ENTRIES.BACKUP_ID.equal(Integer.valueOf(previousBackupId)),
+					Tables.ENTRIES.PARENT_ID.equal(Integer.valueOf(previousParentId)),
+					Tables.ENTRIES.TYPE.equal(Byte.valueOf((byte) EntryType.FILE.getValue())))
+			.fetchOne()
+			.getValue(0, Integer.class).intValue();
+		if (count > 0) {
+			copiedFileEntries.add(new Object[] {
+					Integer.valueOf(nextEntryId - 1),
+					Integer.valueOf(parentId),
+					parentNamePath + Utils.NAME_PATH_SEPARATOR,
+					Integer.valueOf(previousBackupId),
+					Integer.valueOf(previousParentId)
+			});
+			nextEntryId += count;
+			numCopiedFileEntries += count;
+		}
+		flushIfNecessary();
+		return count;
+	}
+
+	void flushIfNecessary() {
+		if (((entries.size() + files.size() + chunks.size() + fileChunks.size() + hashCacheEntries.size() +
+				completedFolders.size() + names.size() + nameTrigrams.size() + numCopiedFileEntries) >= MAX_BATCH_SIZE) ||
+			((System.currentTimeMillis() - lastFlushTime) >= MAX_FLUSH_INTERVAL)) {
+
+			flush();
+		}
+	}
+
+	void flush() {
+		database.beginTransaction();
+		try {
+			if (!chunks.isEmpty()) {
+				BatchBindStep batch = database.factory().batch(
+						database.factory()
+							.insertInto(Tables.CHUNKS,
+									Tables.CHUNKS.ID,
+									Tables.CHUNKS.BACKUP_PATH,
+									Tables.CHUNKS.CHECKSUM,
+									Tables.CHUNKS.LENGTH,
+									Tables.CHUNKS.COMPRESSION)
+							.values(new Object[5]));
+				for (Object[] values : chunks) {
+					batch.bind(values);
+				}
+				batch.execute();
+			}
+
+			if (!files.isEmpty()) {
+				BatchBindStep batch = database.factory().batch(
+						database.factory()
+							.insertInto(Tables.FILES,
+									Tables.FILES.ID,
+									Tables.FILES.BACKUP_PATH,
+									Tables.FILES.CHECKSUM,
+									Tables.FILES.LENGTH,
+									Tables.FILES.COMPRESSION,
+									Tables.FILES.PACK_OFFSET,
+									Tables.FILES.PACK_LENGTH)
+							.values(new Object[7]));
+				for (Object[] values : files) {
+					batch.bind(values);
+				}
+				batch.execute();
+			}
+
+			if (!fileChunks.isEmpty()) {
+				BatchBindStep batch = database.factory().batch(
+						database.factory()
+							.insertInto(Tables.FILE_CHUNKS,
+									Tables.FILE_CHUNKS.FILE_ID,
+									Tables.FILE_CHUNKS.IDX,
+									Tables.FILE_CHUNKS.CHUNK_ID)
+							.values(new Object[3]));
+				for (Object[] values : fileChunks) {
+					batch.bind(values);
+				}
+				batch.execute();
+			}
+
+			if (!names.isEmpty()) {
+				BatchBindStep batch = database.factory().batch(
+						database.factory()
+							.insertInto(Tables.NAMES,
+									Tables.NAMES.ID,
+									Tables.NAMES.NAME,
+									Tables.NAMES.NAME_LOWER)
+							.values(new Object[3]));
+				for (Object[] values : names) {
+					batch.bind(values);
+				}
+				batch.execute();
+			}
+
+			if (!nameTrigrams.isEmpty()) {
+				BatchBindStep batch = database.factory().batch(
+						database.factory()
+							.insertInto(Tables.NAME_TRIGRAMS,
+									Tables.NAME_TRIGRAMS.TRIGRAM,
+									Tables.NAME_TRIGRAMS.NAME_ID)
+							.values(new Object[2]));
+				for (Object[] values : nameTrigrams) {
+					batch.bind(values);
+				}
+				batch.execute();
+			}
+
+			if (!entries.isEmpty()) {
+				BatchBindStep batch = database.factory().batch(
+						database.factory()
+							.insertInto(Tables.ENTRIES,
+									Tables.ENTRIES.ID,
+									Tables.ENTRIES.PARENT_ID,
+									Tables.ENTRIES.BACKUP_ID,
+									Tables.ENTRIES.TYPE,
+									Tables.ENTRIES.CREATION_TIME,
+									Tables.ENTRIES.MODIFICATION_TIME,
+									Tables.ENTRIES.HIDDEN,
+									Tables.ENTRIES.NAME_ID,
+									Tables.ENTRIES.NAME_PATH,
+									Tables.ENTRIES.FILE_ID)
+							.values(new Object[10]));
+				for (Object[] values : entries) {
+					batch.bind(values);
+				}
+				batch.execute();
+			}
+
+			if (!copiedFileEntries.isEmpty()) {
+				// copies all rows of a folder in one statement, assigning consecutive IDs
+				BatchBindStep batch = database.factory().batch(
+						database.factory()
+							.query("INSERT INTO entries (id, parent_id, backup_id, type, creation_time, modification_time, " + //$NON-NLS-1$
+									"hidden, name_id, name_path, file_id) " + //$NON-NLS-1$
+									"SELECT ? + ROWNUM(), ?, ?, type, creation_time, modification_time, hidden, name_id, " + //$NON-NLS-1$
+									"CONCAT(?, name_id), file_id " + //$NON-NLS-1$
+									"FROM entries WHERE backup_id = ? AND parent_id = ? AND type = ?", //$NON-NLS-1$
+									new Object[7]));
+				// copied rows reference the same files as the original rows
+				BatchBindStep refCountsBatch = database.factory().batch(
+						database.factory()
+							.query("UPDATE files SET ref_count = ref_count + " + //$NON-NLS-1$
+									"(SELECT COUNT(*) FROM entries WHERE backup_id = ? AND parent_id = ? AND file_id = files.id) " + //$NON-NLS-1$
+									"WHERE id IN (SELECT file_id FROM entries WHERE backup_id = ? AND parent_id = ?)", //$NON-NLS-1$
+									new Object[4]));
+				for (Object[] values : copiedFileEntries) {
+					batch.bind(values[0], values[1], Integer.valueOf(backupId), values[2], values[3], values[4],
+							Byte.valueOf((byte) EntryType.FILE.getValue()));
+					refCountsBatch.bind(values[3], values[4], values[3], values[4]);
+				}
+				batch.execute();
+				refCountsBatch.execute();
+			}
+
+			if (!fileRefCounts.isEmpty()) {
+				BatchBindStep batch = database.factory().batch(
+						database.factory()
+							.query("UPDATE files SET ref_count = ref_count + ? WHERE id = ?", //$NON-NLS-1$
+									new Object[2]));
+				for (Map.Entry<Integer, Integer> entry : fileRefCounts.entrySet()) {
+					batch.bind(entry.getValue(), entry.getKey());
+				}
+				batch.execute();
+			}
+
+			if (!completedFolders.isEmpty()) {
+				BatchBindStep batch = database.factory().batch(
+						database.factory()
+							.insertInto(Tables.COMPLETED_FOLDERS,
+									Tables.COMPLETED_FOLDERS.ENTRY_ID,
+									Tables.COMPLETED_FOLDERS.BACKUP_ID)
+							.values(new Object[2]));
+				for (Object[] values : completedFolders) {
+					batch.bind(values);
+				}
+				batch.execute();
+			}
+
+			if (!hashCacheEntries.isEmpty()) {
+				// jOOQ only renders H2's MERGE in the H2 dialect
+				BatchBindStep batch = database.factory().batch(
+						database.factory()
+							.query("MERGE INTO hash_cache (path, file_key, modification_time, length, checksum, " + //$NON-NLS-1$
+									"hash_backup_id, seen_backup_id) KEY (path) VALUES (?, ?, ?, ?, ?, ?, ?)", //$NON-NLS-1$
+									new Object[7]));
+				for (Object[] values : hashCacheEntries) {
+					batch.bind(values);
+				}
+				batch.execute();
+			}
+
+			database.commit();
+			nameIds.putAll(newNameIds);
+		} catch (RuntimeException e) {
+			database.rollback();
+			throw e;
+		} finally {
+			chunks.clear();
+			files.clear();
+			fileChunks.clear();
+			entries.clear();
+			hashCacheEntries.clear();
+			fileRefCounts.clear();
+			completedFolders.clear();
+			copiedFileEntries.clear();
+			numCopiedFileEntries = 0;
+			names.clear();
+			nameTrigrams.clear();
+			newNameIds.clear();
+			lastFlushTime = System.currentTimeMillis();
+		}
+
+		committed();
+	}
+
+	// called after all rows added so far have been committed
+	protected void committed() {
+	}
+
+	void close() {
+		flush();
+	}
+}
@@ -0,0 +1,96 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+// splits data into content-defined chunks using a gear rolling hash, so that chunk
+// boundaries move along with inserted or removed data
+abstract class ChunkingOutputStream extends OutputStream {
+	static final int MIN_CHUNK_LENGTH = 256 * 1024;
+	static final int MAX_CHUNK_LENGTH = 4 * 1024 * 1024;
+	// average chunk length is about MIN_CHUNK_LENGTH + 1 MB
+	private static final long BOUNDARY_MASK = (1L << 20) - 1;
+	private static final long[] GEAR = new long[256];
+
+	static {
+		// must never change, or chunks of existing backups will not be matched anymore
+		Random random = new Random(0x6a09e667f3bcc908L);
+		for (int i = 0; i < GEAR.length; i++) {
+			GEAR[i] = random.nextLong();
+		}
+	}
+
+	private byte[] buf = new byte[MAX_CHUNK_LENGTH];
+	private int count;
+	private long hash;
+	private boolean closed;
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		byte[] buf = this.buf;
+		int count = this.count;
+		long hash = this.hash;
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			byte value = b[i];
+			buf[count++] = value;
+			if (count >= MIN_CHUNK_LENGTH) {
+				hash = (hash << 1) + GEAR[value & 0xff];
+				if (((hash & BOUNDARY_MASK) == 0) || (count == MAX_CHUNK_LENGTH)) {
+					this.count = count;
+					emitChunk();
+					count = 0;
+					hash = 0;
+				}
+			}
+		}
+		this.count = count;
+		this.hash = hash;
+	}
+
+	private void emitChunk() throws IOException {
+		chunk(buf, count);
+		count = 0;
+		hash = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			if (count > 0) {
+				emitChunk();
+			}
+			closed = true;
+		}
+	}
+
+	// returns true if the stream has been closed and all data has been passed on as chunks
+	boolean isComplete() {
+		return closed;
+	}
+
+	protected abstract void chunk(byte[] buf, int length) throws IOException;
+}
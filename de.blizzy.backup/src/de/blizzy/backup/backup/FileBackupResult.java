@@ -0,0 +1,59 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import de.blizzy.backup.Compression;
+import de.blizzy.backup.backup.BackupErrorEvent.Severity;
+import de.blizzy.backup.database.EntryType;
+
+class FileBackupResult {
+	static final FileBackupResult SKIPPED = new FileBackupResult();
+
+	EntryType type;
+	FileTime creationTime;
+	FileTime modificationTime;
+	boolean hidden;
+	int fileId = -1;
+	String backupPath;
+	// set along with backupPath if the file is stored in a pack file
+	long packOffset = -1;
+	long packLength = -1;
+	String checksum;
+	long length;
+	Compression compression;
+	// set instead of backupPath if the file is stored as chunks
+	List<Chunk> chunks;
+	// checksum of the file to remember for the next run
+	HashCacheEntry hashCacheEntry;
+	Throwable error;
+	Severity errorSeverity;
+
+	boolean isNewFile() {
+		return (backupPath != null) || (chunks != null);
+	}
+
+	static FileBackupResult failed(Throwable error) {
+		FileBackupResult result = new FileBackupResult();
+		result.error = error;
+		result.errorSeverity = Severity.ERROR;
+		return result;
+	}
+}
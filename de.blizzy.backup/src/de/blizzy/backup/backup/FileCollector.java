@@ -0,0 +1,147 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import org.jooq.Record;
+import org.jooq.impl.Factory;
+
+import de.blizzy.backup.BackupPlugin;
+import de.blizzy.backup.database.Database;
+import de.blizzy.backup.database.schema.Tables;
+
+// deletes files that are no longer referenced by any backup, in batches on its own thread
+abstract class FileCollector implements Runnable {
+	private static final int BATCH_SIZE = 100;
+
+	private Database database;
+	private Lock oldFilesLock;
+	private int maxFileId;
+	private Thread thread;
+	private volatile boolean stopped;
+
+	// files added after maxFileId might not be referenced yet
+	FileCollector(Database database, Lock oldFilesLock, int maxFileId) {
+		this.database = database;
+		this.oldFilesLock = oldFilesLock;
+		this.maxFileId = maxFileId;
+	}
+
+	void start() {
+		thread = new Thread(this, "File Collector"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		try {
+			collect();
+		} catch (RuntimeException e) {
+			BackupPlugin.getDefault().logError("error while removing unused files", e); //$NON-NLS-1$
+		}
+	}
+
+	void stop() {
+		stopped = true;
+		finish();
+	}
+
+	void finish() {
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				// ignore
+			}
+			thread = null;
+		}
+	}
+
+	void collect() {
+		int lastFileId = 0;
+		while (!stopped) {
+			List<FileEntry> files = new ArrayList<>();
+			oldFilesLock.lock();
+			try {
+				List<Record> records = database.factory()
+					.select(Tables.FILES.ID, Tables.FILES.BACKUP_PATH, Tables.FILES.PACK_OFFSET)
+					.from(Tables.FILES)
+					.where(Tables.FILES.REF_COUNT.lessOrEqual(Integer.valueOf(0)),
+							Tables.FILES.ID.greaterThan(Integer.valueOf(lastFileId)),
+							Tables.FILES.ID.lessOrEqual(Integer.valueOf(maxFileId)),
+							// don't trust the reference count alone
+							Factory.notExists(database.factory()
+									.selectOne()
+									.from(Tables.ENTRIES)
+									.where(Tables.ENTRIES.FILE_ID.equal(Tables.FILES.ID))))
+					.orderBy(Tables.FILES.ID)
+					.limit(BATCH_SIZE)
+					.fetch();
+				if (records.isEmpty()) {
+					break;
+				}
+
+				List<Integer> fileIds = new ArrayList<>();
+				for (Record record : records) {
+					int fileId = record.getValue(Tables.FILES.ID).intValue();
+					lastFileId = fileId;
+					// files found by backup workers but not yet committed are still in use
+					if (!isInUse(fileId)) {
+						FileEntry file = new FileEntry(fileId, record.getValue(Tables.FILES.BACKUP_PATH));
+						file.packed = record.getValue(Tables.FILES.PACK_OFFSET) != null;
+						files.add(file);
+						fileIds.add(Integer.valueOf(fileId));
+					}
+				}
+				if (!fileIds.isEmpty()) {
+					// rows must be gone for good before their backup files are removed
+					database.beginTransaction();
+					try {
+						database.factory()
+							.delete(Tables.FILE_CHUNKS)
+							.where(Tables.FILE_CHUNKS.FILE_ID.in(fileIds))
+							.execute();
+						database.factory()
+							.delete(Tables.FILES)
+							.where(Tables.FILES.ID.in(fileIds))
+							.execute();
+						database.commit();
+					} catch (RuntimeException e) {
+						database.rollback();
+						throw e;
+					}
+				}
+			} finally {
+				oldFilesLock.unlock();
+			}
+
+			// files can't be found anymore, so their backup files can be removed without holding the lock
+			for (FileEntry file : files) {
+				removeFile(file);
+			}
+		}
+	}
+
+	protected abstract boolean isInUse(int fileId);
+
+	protected abstract void removeFile(FileEntry file);
+}
@@ -20,6 +20,8 @@ package de.blizzy.backup.backup;
 class FileEntry {
 	int id;
 	String backupPath;
+	// whether backupPath is a pack file that may contain other files
+	boolean packed;
 
 	FileEntry(int id, String backupPath) {
 		this.id = id;
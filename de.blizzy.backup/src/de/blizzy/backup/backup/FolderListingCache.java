@@ -0,0 +1,193 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import de.blizzy.backup.vfs.IFileSystemEntry;
+import de.blizzy.backup.vfs.IFolder;
+
+// lists each folder only once for both the entries counter and the backup walker
+class FolderListingCache {
+	// limits how far the entries counter may list ahead of the backup walker, and how many
+	// listings of the backup walker are kept for the entries counter
+	private static final int MAX_CACHED_ENTRIES = 100000;
+
+	private static class Listing extends FutureTask<List<IFileSystemEntry>> {
+		int size;
+
+		Listing(Callable<List<IFileSystemEntry>> callable) {
+			super(callable);
+		}
+	}
+
+	private Map<IFolder, Listing> listings = new HashMap<>();
+	// folders the backup walker skips, and their subfolders, whose listings would never be taken out
+	private Set<IFolder> skippedFolders = new HashSet<>();
+	private int cachedEntries;
+	private boolean closed;
+
+	List<IFileSystemEntry> listForBackup(IFolder folder) throws IOException {
+		return list(folder, null, false);
+	}
+
+	// returns null if the cache has been closed
+	List<IFileSystemEntry> listForCounter(IFolder folder, IFolder parentFolder) throws IOException {
+		synchronized (this) {
+			while ((cachedEntries > MAX_CACHED_ENTRIES) && !closed) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					return null;
+				}
+			}
+			if (closed) {
+				return null;
+			}
+		}
+		return list(folder, parentFolder, true);
+	}
+
+	private List<IFileSystemEntry> list(final IFolder folder, IFolder parentFolder, boolean forCounter) throws IOException {
+		Listing listing;
+		boolean listFolder = false;
+		synchronized (this) {
+			// whoever comes second takes the listing out of the cache
+			listing = listings.remove(folder);
+			if (listing == null) {
+				listing = new Listing(new Callable<List<IFileSystemEntry>>() {
+					@Override
+					public List<IFileSystemEntry> call() throws IOException {
+						List<IFileSystemEntry> entries = new ArrayList<>(folder.list());
+						Collections.sort(entries, new Comparator<IFileSystemEntry>() {
+							@Override
+							public int compare(IFileSystemEntry e1, IFileSystemEntry e2) {
+								return e1.getName().compareTo(e2.getName());
+							}
+						});
+						return entries;
+					}
+				});
+				if (!closed) {
+					listings.put(folder, listing);
+				}
+				listFolder = true;
+			} else if (listing.size > 0) {
+				cachedEntries -= listing.size;
+				notifyAll();
+			}
+		}
+
+		if (listFolder) {
+			listing.run();
+		}
+		List<IFileSystemEntry> entries = getEntries(listing);
+
+		if (listFolder) {
+			synchronized (this) {
+				if (forCounter && (skippedFolders.contains(folder) ||
+						((parentFolder != null) && skippedFolders.contains(parentFolder)))) {
+					skippedFolders.add(folder);
+					if (listings.get(folder) == listing) {
+						listings.remove(folder);
+					}
+				} else if (listings.get(folder) == listing) {
+					// empty listings take up room as well
+					int size = Math.max(entries.size(), 1);
+					// the backup walker doesn't wait for the entries counter, so its listings are
+					// only kept if they fit, and the counter lists those folders again otherwise
+					if (forCounter || ((cachedEntries + size) <= MAX_CACHED_ENTRIES)) {
+						listing.size = size;
+						cachedEntries += size;
+					} else {
+						listings.remove(folder);
+					}
+				}
+			}
+		}
+		return entries;
+	}
+
+	private static List<IFileSystemEntry> getEntries(Listing listing) throws IOException {
+		try {
+			return listing.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	// called by the backup walker for a folder it doesn't list, so that the listings of its
+	// subtree are neither kept nor waited for
+	synchronized void skip(IFolder folder) {
+		Deque<IFolder> folders = new ArrayDeque<>();
+		folders.add(folder);
+		while (!folders.isEmpty()) {
+			IFolder f = folders.remove();
+			skippedFolders.add(f);
+			Listing listing = listings.remove(f);
+			if (listing != null) {
+				if (listing.size > 0) {
+					cachedEntries -= listing.size;
+				}
+				// listings of subfolders are only made once their parent folder has been listed
+				if (listing.isDone()) {
+					try {
+						for (IFileSystemEntry entry : listing.get()) {
+							if (listings.containsKey(entry)) {
+								folders.add((IFolder) entry);
+							}
+						}
+					} catch (InterruptedException | ExecutionException e) {
+						// ignore
+					}
+				}
+			}
+		}
+		notifyAll();
+	}
+
+	synchronized void close() {
+		closed = true;
+		listings.clear();
+		skippedFolders.clear();
+		cachedEntries = 0;
+		notifyAll();
+	}
+}
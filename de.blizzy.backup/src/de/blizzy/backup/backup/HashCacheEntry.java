@@ -0,0 +1,37 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import java.sql.Timestamp;
+
+class HashCacheEntry {
+	String path;
+	String fileKey;
+	Timestamp modificationTime;
+	long length;
+	String checksum;
+	// backup run in which the checksum was computed
+	int hashBackupId = -1;
+
+	HashCacheEntry(String path, String fileKey, Timestamp modificationTime, long length) {
+		this.path = path;
+		this.fileKey = fileKey;
+		this.modificationTime = modificationTime;
+		this.length = length;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+
+import de.blizzy.backup.Utils;
+
+// appends the stored data of small files to rolling pack files, so that they don't
+// need a backup file of their own each
+abstract class PackWriter {
+	static final long MAX_PACK_LENGTH = 64L * 1024 * 1024;
+
+	private String outputFolder;
+	private RateLimiter rateLimiter;
+	private String backupPath;
+	private OutputStream out;
+	private long packLength;
+	private Set<String> backupPaths = new HashSet<>();
+
+	PackWriter(String outputFolder, RateLimiter rateLimiter) {
+		this.outputFolder = outputFolder;
+		this.rateLimiter = rateLimiter;
+	}
+
+	synchronized PackMember append(byte[] buf, int length) throws IOException {
+		if ((out != null) && ((packLength + length) > MAX_PACK_LENGTH)) {
+			closePack();
+		}
+		if (out == null) {
+			backupPath = createPackFile();
+			backupPaths.add(backupPath);
+			out = new RateLimitedOutputStream(new FileOutputStream(Utils.toBackupFile(backupPath, outputFolder)), rateLimiter);
+			packLength = 0;
+		}
+
+		boolean written = false;
+		try {
+			// the whole member is written at once, so no buffering is needed
+			out.write(buf, 0, length);
+			written = true;
+		} finally {
+			if (!written) {
+				// the pack file might contain a partial member now, so start a new one
+				IOUtils.closeQuietly(out);
+				out = null;
+			}
+		}
+		PackMember member = new PackMember(backupPath, packLength, length);
+		packLength += length;
+		return member;
+	}
+
+	// returns whether the pack file has been written by this writer
+	synchronized boolean isOwnPack(String backupPath) {
+		return backupPaths.contains(backupPath);
+	}
+
+	private void closePack() throws IOException {
+		try {
+			out.close();
+		} finally {
+			out = null;
+		}
+	}
+
+	synchronized void close() throws IOException {
+		if (out != null) {
+			closePack();
+		}
+	}
+
+	protected abstract String createPackFile() throws IOException;
+}
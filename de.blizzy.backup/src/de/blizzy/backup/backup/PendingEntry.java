@@ -0,0 +1,64 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Future;
+
+import de.blizzy.backup.vfs.IFileSystemEntry;
+
+class PendingEntry {
+	static final PendingEntry END = new PendingEntry(null, null, null);
+
+	PendingEntry parent;
+	IFileSystemEntry fileOrFolder;
+	String name;
+	FileTime creationTime;
+	FileTime modificationTime;
+	boolean hidden;
+	Future<FileBackupResult> result;
+	int id = -1;
+	// ID of this folder's entry in the previous backup
+	int previousId = -1;
+	// number of files of the parent folder that are unchanged since the previous backup
+	int numUnchangedFiles;
+	// folder already exists in the interrupted backup being resumed
+	boolean resumed;
+	// marks the end of the parent folder's subtree
+	boolean folderCompleted;
+	// name IDs of this folder and its parent folders, only known to the committer
+	String namePath;
+
+	PendingEntry(PendingEntry parent, IFileSystemEntry fileOrFolder, String name) {
+		this.parent = parent;
+		this.fileOrFolder = fileOrFolder;
+		this.name = name;
+	}
+
+	boolean isFolder() {
+		return (result == null) && (numUnchangedFiles == 0) && !folderCompleted;
+	}
+
+	int getParentId() {
+		return (parent != null) ? parent.id : -1;
+	}
+
+	int getPreviousParentId() {
+		return (parent != null) ? parent.previousId : 0;
+	}
+}
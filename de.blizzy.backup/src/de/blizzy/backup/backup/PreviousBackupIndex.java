@@ -0,0 +1,285 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+
+import org.jooq.Cursor;
+import org.jooq.Record;
+import org.jooq.impl.Factory;
+
+import de.blizzy.backup.BackupPlugin;
+import de.blizzy.backup.database.Database;
+import de.blizzy.backup.database.EntryType;
+import de.blizzy.backup.database.schema.Tables;
+
+// maps (parent entry ID, name) of all entries of a backup to the entries' data. The data is kept
+// in fixed-size rows in a direct buffer outside of the heap, and only a hash table of row numbers
+// is kept on the heap.
+class PreviousBackupIndex {
+	private static final int EMPTY = 0;
+	private static final int NO_FOLDER = 0;
+	// each index may take up this share of the maximum memory, so that the index of the previous
+	// backup and that of an interrupted backup fit together
+	private static final int MAX_MEMORY_DIVISOR = 3;
+
+	// row layout
+	private static final int KEY = 0;
+	// keys are hashes, so the parent entry ID and a second hash of the name are checked as well
+	private static final int PARENT_ID = 8;
+	private static final int NAME_HASH = 12;
+	private static final int ENTRY_ID = 16;
+	private static final int FILE_ID = 20;
+	private static final int CREATION_TIME = 24;
+	private static final int MODIFICATION_TIME = 32;
+	private static final int LENGTH = 40;
+	private static final int TYPE = 48;
+	private static final int ROW_SIZE = 49;
+	// stored in the type byte
+	private static final int HIDDEN_FLAG = 0x80;
+
+	private int backupId;
+	private ByteBuffer rows;
+	private int numRows;
+	// row number + 1 by key
+	private int[] slots;
+	// number of child entries by folder entry ID, in a hash table of its own
+	private int[] folderIds;
+	private int[] numChildren;
+
+	private PreviousBackupIndex(int backupId, int numEntries, int numParents) {
+		this.backupId = backupId;
+		rows = ByteBuffer.allocateDirect(numEntries * ROW_SIZE);
+		// load factor of 0.75 without rounding up to a power of two, which might double the arrays
+		slots = new int[getCapacity(numEntries)];
+		int foldersCapacity = getCapacity(numParents);
+		folderIds = new int[foldersCapacity];
+		numChildren = new int[foldersCapacity];
+	}
+
+	private static int getCapacity(int numEntries) {
+		return (int) Math.min((long) numEntries * 4 / 3 + 1, Integer.MAX_VALUE);
+	}
+
+	private static long getSize(int numEntries, int numParents) {
+		return (long) numEntries * ROW_SIZE + (long) getCapacity(numEntries) * 4 + (long) getCapacity(numParents) * 8;
+	}
+
+	static PreviousBackupIndex load(Database database, int currentBackupId) {
+		Record backupRecord = database.factory()
+			.select(Tables.BACKUPS.ID, Tables.BACKUPS.NUM_ENTRIES)
+			.from(Tables.BACKUPS)
+			.where(Tables.BACKUPS.ID.notEqual(Integer.valueOf(currentBackupId)),
+					Tables.BACKUPS.NUM_ENTRIES.isNotNull())
+			.orderBy(Tables.BACKUPS.RUN_TIME.desc())
+			.limit(1)
+			.fetchAny();
+		if (backupRecord == null) {
+			return null;
+		}
+
+		return loadBackup(database, backupRecord.getValue(Tables.BACKUPS.ID).intValue());
+	}
+
+	// returns null if the index would take up too much memory
+	static PreviousBackupIndex loadBackup(Database database, int backupId) {
+		Record countRecord = database.factory()
+			.select(Factory.count(), Factory.countDistinct(Tables.ENTRIES.PARENT_ID))
+			.from(Tables.ENTRIES)
+			.where(Tables.ENTRIES.BACKUP_ID.equal(Integer.valueOf(backupId)))
+			.fetchOne();
+		int numEntries = countRecord.getValue(0, Integer.class).intValue();
+		int numParents = countRecord.getValue(1, Integer.class).intValue();
+		long size = getSize(numEntries, numParents);
+		if ((size > (Runtime.getRuntime().maxMemory() / MAX_MEMORY_DIVISOR)) ||
+			((long) numEntries * ROW_SIZE > Integer.MAX_VALUE)) {
+
+			BackupPlugin.getDefault().logMessage("not loading index of backup " + backupId + //$NON-NLS-1$
+					" (" + numEntries + " entries, " + size + " bytes)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			return null;
+		}
+		PreviousBackupIndex index;
+		try {
+			index = new PreviousBackupIndex(backupId, numEntries, numParents);
+		} catch (OutOfMemoryError e) {
+			// direct buffers may be limited to less than the maximum heap size
+			BackupPlugin.getDefault().logError("not enough memory for index of backup " + backupId, e); //$NON-NLS-1$
+			return null;
+		}
+
+		Cursor<Record> cursor = null;
+		try {
+			cursor = database.factory()
+				.select(Tables.ENTRIES.ID,
+						Tables.ENTRIES.PARENT_ID,
+						Tables.NAMES.NAME,
+						Tables.ENTRIES.TYPE,
+						Tables.ENTRIES.CREATION_TIME,
+						Tables.ENTRIES.MODIFICATION_TIME,
+						Tables.ENTRIES.HIDDEN,
+						Tables.ENTRIES.FILE_ID,
+						Tables.FILES.LENGTH)
+				.from(Tables.ENTRIES)
+				.join(Tables.NAMES)
+					.on(Tables.NAMES.ID.equal(Tables.ENTRIES.NAME_ID))
+				.leftOuterJoin(Tables.FILES)
+					.on(Tables.FILES.ID.equal(Tables.ENTRIES.FILE_ID))
+				.where(Tables.ENTRIES.BACKUP_ID.equal(Integer.valueOf(backupId)))
+				.fetchLazy();
+			while (cursor.hasNext()) {
+				Record record = cursor.fetchOne();
+				Integer parentId = record.getValue(Tables.ENTRIES.PARENT_ID);
+				Timestamp creationTime = record.getValue(Tables.ENTRIES.CREATION_TIME);
+				Timestamp modificationTime = record.getValue(Tables.ENTRIES.MODIFICATION_TIME);
+				Integer fileId = record.getValue(Tables.ENTRIES.FILE_ID);
+				Long length = record.getValue(Tables.FILES.LENGTH);
+				index.put((parentId != null) ? parentId.intValue() : 0, record.getValue(Tables.NAMES.NAME),
+						record.getValue(Tables.ENTRIES.ID).intValue(),
+						record.getValue(Tables.ENTRIES.TYPE).byteValue(),
+						(creationTime != null) ? creationTime.getTime() : -1,
+						(modificationTime != null) ? modificationTime.getTime() : -1,
+						record.getValue(Tables.ENTRIES.HIDDEN).booleanValue(),
+						(length != null) ? length.longValue() : -1,
+						(fileId != null) ? fileId.intValue() : -1);
+			}
+		} finally {
+			database.closeQuietly(cursor);
+		}
+		return index;
+	}
+
+	private void put(int parentId, String name, int entryId, byte type, long creationTime, long modificationTime,
+			boolean hidden, long length, int fileId) {
+
+		long key = toKey(parentId, name);
+		int nameHash = name.hashCode();
+		int slot = getSlot(key, slots.length);
+		while ((slots[slot] != EMPTY) && !isRow(slots[slot] - 1, key, parentId, nameHash)) {
+			slot = getNextSlot(slot, slots.length);
+		}
+		if (slots[slot] == EMPTY) {
+			slots[slot] = ++numRows;
+		}
+		int offset = (slots[slot] - 1) * ROW_SIZE;
+		rows.putLong(offset + KEY, key);
+		rows.putInt(offset + PARENT_ID, parentId);
+		rows.putInt(offset + NAME_HASH, nameHash);
+		rows.putInt(offset + ENTRY_ID, entryId);
+		rows.putInt(offset + FILE_ID, fileId);
+		rows.putLong(offset + CREATION_TIME, creationTime);
+		rows.putLong(offset + MODIFICATION_TIME, modificationTime);
+		rows.putLong(offset + LENGTH, length);
+		rows.put(offset + TYPE, (byte) (hidden ? (type | HIDDEN_FLAG) : type));
+
+		// root entries have no parent folder entry
+		if (parentId != NO_FOLDER) {
+			int folderSlot = findFolder(parentId);
+			folderIds[folderSlot] = parentId;
+			numChildren[folderSlot]++;
+		}
+	}
+
+	private boolean isRow(int row, long key, int parentId, int nameHash) {
+		int offset = row * ROW_SIZE;
+		return (rows.getLong(offset + KEY) == key) && (rows.getInt(offset + PARENT_ID) == parentId) &&
+			(rows.getInt(offset + NAME_HASH) == nameHash);
+	}
+
+	int getBackupId() {
+		return backupId;
+	}
+
+	int getNumChildren(int folderEntryId) {
+		if (folderEntryId == NO_FOLDER) {
+			return 0;
+		}
+		int folderSlot = findFolder(folderEntryId);
+		return (folderIds[folderSlot] != NO_FOLDER) ? numChildren[folderSlot] : 0;
+	}
+
+	// returns the slot of the folder, or the empty slot it would go into
+	private int findFolder(int folderEntryId) {
+		int slot = getSlot(folderEntryId, folderIds.length);
+		while ((folderIds[slot] != NO_FOLDER) && (folderIds[slot] != folderEntryId)) {
+			slot = getNextSlot(slot, folderIds.length);
+		}
+		return slot;
+	}
+
+	// returns the row of the entry, or -1 if there is no such entry
+	int find(int parentId, String name) {
+		long key = toKey(parentId, name);
+		int nameHash = name.hashCode();
+		int slot = getSlot(key, slots.length);
+		while (slots[slot] != EMPTY) {
+			int row = slots[slot] - 1;
+			if (isRow(row, key, parentId, nameHash)) {
+				return row;
+			}
+			slot = getNextSlot(slot, slots.length);
+		}
+		return -1;
+	}
+
+	private static int getSlot(long hash, int capacity) {
+		return (int) ((hash & Long.MAX_VALUE) % capacity);
+	}
+
+	private static int getNextSlot(int slot, int capacity) {
+		return (slot < (capacity - 1)) ? slot + 1 : 0;
+	}
+
+	int getEntryId(int row) {
+		return rows.getInt(row * ROW_SIZE + ENTRY_ID);
+	}
+
+	EntryType getType(int row) {
+		return EntryType.fromValue(rows.get(row * ROW_SIZE + TYPE) & ~HIDDEN_FLAG);
+	}
+
+	long getCreationTime(int row) {
+		return rows.getLong(row * ROW_SIZE + CREATION_TIME);
+	}
+
+	long getModificationTime(int row) {
+		return rows.getLong(row * ROW_SIZE + MODIFICATION_TIME);
+	}
+
+	boolean isHidden(int row) {
+		return (rows.get(row * ROW_SIZE + TYPE) & HIDDEN_FLAG) != 0;
+	}
+
+	long getLength(int row) {
+		return rows.getLong(row * ROW_SIZE + LENGTH);
+	}
+
+	int getFileId(int row) {
+		return rows.getInt(row * ROW_SIZE + FILE_ID);
+	}
+
+	private static long toKey(int parentId, String name) {
+		// 64-bit FNV-1a
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ parentId) * 0x100000001b3L;
+		for (int i = 0; i < name.length(); i++) {
+			hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+}
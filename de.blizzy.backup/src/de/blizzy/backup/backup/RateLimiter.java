@@ -0,0 +1,93 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicLong;
+
+// token bucket limiting the number of bytes per second across all threads, optionally
+// only during certain hours of the day
+class RateLimiter {
+	private static final long SCHEDULE_CHECK_INTERVAL = 10000;
+
+	private long bytesPerSecond;
+	private int startHour;
+	private int endHour;
+	private double tokens;
+	private long lastRefillTime = System.nanoTime();
+	private long lastScheduleCheckTime;
+	private boolean scheduled;
+	// total number of bytes passed, for measuring the effective rate
+	private AtomicLong totalBytes = new AtomicLong();
+
+	RateLimiter(long bytesPerSecond, int startHour, int endHour) {
+		this.bytesPerSecond = bytesPerSecond;
+		this.startHour = startHour;
+		this.endHour = endHour;
+		tokens = bytesPerSecond;
+	}
+
+	void acquire(int numBytes) {
+		totalBytes.addAndGet(numBytes);
+		if (bytesPerSecond <= 0) {
+			return;
+		}
+
+		synchronized (this) {
+			if (!isScheduled()) {
+				return;
+			}
+
+			long now = System.nanoTime();
+			// bucket holds at most one second worth of bytes
+			tokens = Math.min(tokens + (now - lastRefillTime) * bytesPerSecond / 1000000000d, bytesPerSecond);
+			lastRefillTime = now;
+			tokens -= numBytes;
+			if (tokens < 0) {
+				// other threads wait for the lock meanwhile, so they're throttled as well
+				long sleepTime = (long) Math.ceil(-tokens * 1000d / bytesPerSecond);
+				try {
+					Thread.sleep(sleepTime);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	private boolean isScheduled() {
+		long now = System.currentTimeMillis();
+		if ((now - lastScheduleCheckTime) >= SCHEDULE_CHECK_INTERVAL) {
+			lastScheduleCheckTime = now;
+			if ((startHour < 0) || (endHour < 0) || (startHour == endHour)) {
+				scheduled = true;
+			} else {
+				int hour = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+				// schedule might span midnight
+				scheduled = (startHour < endHour) ?
+						((hour >= startHour) && (hour < endHour)) :
+						((hour >= startHour) || (hour < endHour));
+			}
+		}
+		return scheduled;
+	}
+
+	long getTotalBytes() {
+		return totalBytes.get();
+	}
+}
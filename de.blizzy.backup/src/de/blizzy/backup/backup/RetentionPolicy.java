@@ -0,0 +1,129 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.backup;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// grandfather-father-son retention: keeps all backups of the most recent days, the most
+// recent backup of each day after that, and the most recent backup of each week beyond
+public class RetentionPolicy {
+	public static enum Reason {
+		FAILED, AGE, DAILY, WEEKLY;
+	}
+
+	private static final class Backup {
+		int id;
+		long runTime;
+		boolean failed;
+
+		Backup(int id, long runTime, boolean failed) {
+			this.id = id;
+			this.runTime = runTime;
+			this.failed = failed;
+		}
+	}
+
+	private int keepHourliesDays;
+	private int keepDailiesDays;
+	private int maxAgeDays;
+	private List<Backup> backups = new ArrayList<>();
+
+	public RetentionPolicy(int keepHourliesDays, int keepDailiesDays, int maxAgeDays) {
+		this.keepHourliesDays = keepHourliesDays;
+		this.keepDailiesDays = keepDailiesDays;
+		this.maxAgeDays = maxAgeDays;
+	}
+
+	public void addBackup(int backupId, long runTime, boolean failed) {
+		backups.add(new Backup(backupId, runTime, failed));
+	}
+
+	public Map<Integer, Reason> getBackupsToRemove(long now) {
+		long maxAgeTime = Long.MIN_VALUE;
+		if (maxAgeDays > 0) {
+			Calendar c = Calendar.getInstance();
+			c.setTimeInMillis(now);
+			c.add(Calendar.DAY_OF_MONTH, -maxAgeDays);
+			maxAgeTime = c.getTimeInMillis();
+		}
+		long hourliesStart = getDayStart(now, keepHourliesDays);
+		long dailiesStart = getDayStart(now, keepDailiesDays);
+
+		// most recent backups first, so that the first one in each day or week is kept
+		List<Backup> sortedBackups = new ArrayList<>(backups);
+		Collections.sort(sortedBackups, new Comparator<Backup>() {
+			@Override
+			public int compare(Backup b1, Backup b2) {
+				if (b1.runTime != b2.runTime) {
+					return (b1.runTime > b2.runTime) ? -1 : 1;
+				}
+				return Integer.compare(b2.id, b1.id);
+			}
+		});
+
+		Map<Integer, Reason> result = new TreeMap<>();
+		Set<Long> keptDays = new HashSet<>();
+		Set<Long> keptWeeks = new HashSet<>();
+		for (Backup backup : sortedBackups) {
+			Integer id = Integer.valueOf(backup.id);
+			if (backup.failed) {
+				result.put(id, Reason.FAILED);
+			} else if (backup.runTime < maxAgeTime) {
+				result.put(id, Reason.AGE);
+			} else if (backup.runTime < dailiesStart) {
+				if (!keptWeeks.add(Long.valueOf(getWeekStart(backup.runTime)))) {
+					result.put(id, Reason.WEEKLY);
+				}
+			} else if (backup.runTime < hourliesStart) {
+				if (!keptDays.add(Long.valueOf(getDayStart(backup.runTime, 0)))) {
+					result.put(id, Reason.DAILY);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static long getDayStart(long time, int daysBack) {
+		Calendar c = Calendar.getInstance();
+		c.setTimeInMillis(time);
+		c.add(Calendar.DAY_OF_YEAR, -daysBack);
+		c.set(Calendar.HOUR_OF_DAY, 0);
+		c.set(Calendar.MINUTE, 0);
+		c.set(Calendar.SECOND, 0);
+		c.set(Calendar.MILLISECOND, 0);
+		return c.getTimeInMillis();
+	}
+
+	private static long getWeekStart(long time) {
+		Calendar c = Calendar.getInstance();
+		c.setTimeInMillis(getDayStart(time, 0));
+		int firstWeekday = c.getFirstDayOfWeek();
+		while (c.get(Calendar.DAY_OF_WEEK) != firstWeekday) {
+			c.add(Calendar.DAY_OF_YEAR, -1);
+		}
+		return c.getTimeInMillis();
+	}
+}
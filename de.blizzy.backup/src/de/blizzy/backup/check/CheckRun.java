@@ -17,9 +17,7 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package de.blizzy.backup.check;
 
-import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -48,6 +46,7 @@ import org.jooq.Cursor;
 import org.jooq.Record;
 import org.jooq.impl.Factory;
 
+import de.blizzy.backup.BackupFileReader;
 import de.blizzy.backup.BackupPlugin;
 import de.blizzy.backup.Compression;
 import de.blizzy.backup.IStorageInterceptor;
@@ -165,7 +164,8 @@ public class CheckRun implements IRunnableWithProgress {
 			Cursor<Record> cursor = null;
 			try {
 				cursor = database.factory()
-					.select(Tables.FILES.ID, Tables.FILES.BACKUP_PATH, Tables.FILES.CHECKSUM, Tables.FILES.LENGTH, Tables.FILES.COMPRESSION)
+					.select(Tables.FILES.ID, Tables.FILES.BACKUP_PATH, Tables.FILES.PACK_OFFSET, Tables.FILES.PACK_LENGTH,
+							Tables.FILES.CHECKSUM, Tables.FILES.LENGTH, Tables.FILES.COMPRESSION)
 					.from(Tables.FILES)
 					.fetchLazy();
 				while (cursor.hasNext()) {
@@ -174,21 +174,26 @@ public class CheckRun implements IRunnableWithProgress {
 					}
 
 					Record record = cursor.fetchOne();
+					int fileId = record.getValue(Tables.FILES.ID).intValue();
 					String backupPath = record.getValue(Tables.FILES.BACKUP_PATH);
+					Long packOffset = record.getValue(Tables.FILES.PACK_OFFSET);
+					Long packLength = record.getValue(Tables.FILES.PACK_LENGTH);
 					String checksum = record.getValue(Tables.FILES.CHECKSUM);
 					long length = record.getValue(Tables.FILES.LENGTH).longValue();
 					Compression compression = Compression.fromValue(record.getValue(Tables.FILES.COMPRESSION).intValue());
-					FileCheckResult checkResult = checkFile(backupPath, checksum, length, compression);
+					FileCheckResult checkResult = checkFile(fileId, backupPath,
+							(packOffset != null) ? packOffset.longValue() : -1,
+							(packLength != null) ? packLength.longValue() : -1,
+							checksum, length, compression);
 					if (!checkResult.ok) {
 						backupOk = false;
 						break;
 					}
 					if (checksum.length() != SHA256_LENGTH) {
-						Integer id = record.getValue(Tables.FILES.ID);
 						database.factory()
 							.update(Tables.FILES)
 							.set(Tables.FILES.CHECKSUM, checkResult.checksumSHA256)
-							.where(Tables.FILES.ID.equal(id))
+							.where(Tables.FILES.ID.equal(Integer.valueOf(fileId)))
 							.execute();
 					}
 					monitor.worked(1);
@@ -227,20 +232,16 @@ public class CheckRun implements IRunnableWithProgress {
 		}
 	}
 
-	private FileCheckResult checkFile(String backupPath, String checksum,
-			long length, Compression compression) throws IOException {
+	private FileCheckResult checkFile(int fileId, String backupPath, long packOffset, long packLength,
+			String checksum, long length, Compression compression) throws IOException {
 
-		File backupFile = Utils.toBackupFile(backupPath, outputFolder);
-		if (backupFile.isFile()) {
+		// backup path is null for files stored as chunks
+		if ((backupPath == null) || Utils.toBackupFile(backupPath, outputFolder).isFile()) {
 			InputStream in = null;
 			OutputStream out = null;
 			try {
-				InputStream fileIn = new BufferedInputStream(new FileInputStream(backupFile));
-				InputStream interceptIn = fileIn;
-				for (IStorageInterceptor interceptor : storageInterceptors) {
-					interceptIn = interceptor.interceptInputStream(interceptIn, length);
-				}
-				InputStream compressIn = compression.getInputStream(interceptIn);
+				BackupFileReader reader = new BackupFileReader(database, outputFolder, storageInterceptors);
+				InputStream compressIn = reader.open(fileId, backupPath, packOffset, packLength, length, compression);
 				LengthOutputStream lengthOut = new LengthOutputStream(new NullOutputStream());
 				MessageDigest digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
 				out = new DigestOutputStream(lengthOut, digest);
@@ -259,6 +260,9 @@ public class CheckRun implements IRunnableWithProgress {
 				boolean ok = (fileLength == length) &&
 						checksum.equals((checksum.length() == SHA256_LENGTH) ? fileChecksum : fileChecksumMD5);
 				return new FileCheckResult(ok, fileChecksum);
+			} catch (FileNotFoundException e) {
+				// chunk file is missing
+				return FileCheckResult.BROKEN;
 			} catch (GeneralSecurityException e) {
 				throw new RuntimeException(e);
 			} finally {
@@ -19,16 +19,20 @@ package de.blizzy.backup.database;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.jooq.BatchBindStep;
 import org.jooq.Cursor;
 import org.jooq.Record;
 import org.jooq.SQLDialect;
@@ -49,9 +53,13 @@ public class Database {
 	private String outputFolder;
 	private File realFolder;
 	private boolean heavyDuty;
+	private WorkingCopy workingCopy;
 	private File folder;
 	private Connection conn;
 	private Factory factory;
+	// the connection is shared by all threads, so statements of other threads would become part
+	// of an open transaction if they didn't wait for it to end
+	private ReentrantLock transactionLock = new ReentrantLock();
 
 	public Database(Settings settings, boolean heavyDuty) {
 		this.outputFolder = settings.getOutputFolder();
@@ -61,13 +69,22 @@ public class Database {
 	}
 	
 	public void open(Collection<IStorageInterceptor> storageInterceptors) throws SQLException, IOException {
+		// a previous write-back of a working copy might have been interrupted
+		WorkingCopy.recover(realFolder);
 		if (heavyDuty) {
-			folder = Files.createTempDirectory("blizzysbackup-").toFile(); //$NON-NLS-1$
-			if (realFolder.isDirectory()) {
-				copyFolder(realFolder, folder, false);
+			workingCopy = new WorkingCopy(realFolder);
+			workingCopy.update(false);
+			folder = workingCopy.getFolder();
+			try {
+				open(folder, storageInterceptors);
+			} catch (SQLException e) {
+				BackupPlugin.getDefault().logError("error while opening working copy of database, copying it again", e); //$NON-NLS-1$
+				workingCopy.update(true);
+				open(folder, storageInterceptors);
 			}
+		} else {
+			open(folder, storageInterceptors);
 		}
-		open(folder, storageInterceptors);
 	}
 	
 	private void open(File folder, Collection<IStorageInterceptor> storageInterceptors) throws SQLException {
@@ -116,14 +133,17 @@ public class Database {
 				factory = null;
 			}
 			
-			if (heavyDuty) {
+			if (workingCopy != null) {
+				folder = realFolder;
 				try {
-					copyFolder(folder, realFolder, false);
-					FileUtils.forceDelete(folder);
+					// working copy is kept so that only changes need to be written back next time
+					workingCopy.writeBack();
+					// working copy is faster to read from for database backups
+					folder = workingCopy.getFolder();
 				} catch (IOException e) {
 					BackupPlugin.getDefault().logError("error while closing database", e); //$NON-NLS-1$
 				} finally {
-					folder = realFolder;
+					workingCopy = null;
 				}
 			}
 		}
@@ -133,31 +153,56 @@ public class Database {
 		return factory;
 	}
 
-	public static boolean containsDatabaseFolder(File folder) {
-		return new File(folder, DB_FOLDER_NAME).isDirectory();
+	// must be followed by commit() or rollback() in the same thread, and by rollback() if commit() fails
+	public void beginTransaction() {
+		transactionLock.lock();
+		try {
+			conn.setAutoCommit(false);
+		} catch (SQLException e) {
+			transactionLock.unlock();
+			throw new RuntimeException(e);
+		}
 	}
 
-	public void backupDatabase(File targetFolder) throws IOException {
-		copyFolder(folder, targetFolder, true);
+	public void commit() {
+		try {
+			conn.commit();
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+		endTransaction();
 	}
 
-	private void copyFolder(File folder, File targetFolder, boolean zipFiles) throws IOException {
-		FileUtils.forceMkdir(targetFolder);
-		FileUtils.cleanDirectory(targetFolder);
-		
-		for (File file : folder.listFiles()) {
-			if (file.isDirectory()) {
-				copyFolder(file, new File(targetFolder, file.getName()), zipFiles);
-			} else {
-				if (zipFiles) {
-					Utils.zipFile(file, new File(targetFolder, file.getName() + ".zip")); //$NON-NLS-1$
-				} else {
-					FileUtils.copyFile(file, new File(targetFolder, file.getName()));
-				}
+	public void rollback() {
+		try {
+			conn.rollback();
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		} finally {
+			endTransaction();
+		}
+	}
+
+	private void endTransaction() {
+		if (transactionLock.isHeldByCurrentThread()) {
+			try {
+				conn.setAutoCommit(true);
+			} catch (SQLException e) {
+				throw new RuntimeException(e);
+			} finally {
+				transactionLock.unlock();
 			}
 		}
 	}
 
+	public static boolean containsDatabaseFolder(File folder) {
+		return new File(folder, DB_FOLDER_NAME).isDirectory();
+	}
+
+	public void backupDatabase(DatabaseSnapshots snapshots) throws IOException {
+		snapshots.createSnapshot(folder, System.currentTimeMillis());
+	}
+
 	public void initialize() {
 		try {
 			int sha256Length = DigestUtils.sha256Hex(StringUtils.EMPTY).length();
@@ -172,16 +217,85 @@ public class Database {
 			int sampleBackupPathLength = Utils.createSampleBackupFilePath().length();
 			factory.query("CREATE TABLE IF NOT EXISTS files (" + //$NON-NLS-1$
 					"id INT NOT NULL AUTO_INCREMENT PRIMARY KEY, " + //$NON-NLS-1$
-					"backup_path VARCHAR(" + sampleBackupPathLength + ") NOT NULL, " + //$NON-NLS-1$ //$NON-NLS-2$
+					// backup_path is null for files that are stored as chunks
+					"backup_path VARCHAR(" + sampleBackupPathLength + ") NULL, " + //$NON-NLS-1$ //$NON-NLS-2$
 					"checksum VARCHAR(" + sha256Length + ") NOT NULL, " + //$NON-NLS-1$ //$NON-NLS-2$
 					"length BIGINT NOT NULL, " + //$NON-NLS-1$
-					"compression TINYINT NOT NULL" + //$NON-NLS-1$
+					"compression TINYINT NOT NULL, " + //$NON-NLS-1$
+					// position of the file's data in the pack file at backup_path, if stored in a pack file
+					"pack_offset BIGINT NULL, " + //$NON-NLS-1$
+					"pack_length BIGINT NULL, " + //$NON-NLS-1$
+					// number of entries referencing the file
+					"ref_count INT DEFAULT 0 NOT NULL" + //$NON-NLS-1$
 					")") //$NON-NLS-1$
 					.execute();
 			factory.query("CREATE INDEX IF NOT EXISTS idx_old_files ON files " + //$NON-NLS-1$
 					"(checksum, length)") //$NON-NLS-1$
 					.execute();
 			
+			if (!isTableColumnExistent("FILES", "PACK_OFFSET")) { //$NON-NLS-1$ //$NON-NLS-2$
+				factory.query("ALTER TABLE files ADD pack_offset BIGINT NULL") //$NON-NLS-1$
+					.execute();
+				factory.query("ALTER TABLE files ADD pack_length BIGINT NULL") //$NON-NLS-1$
+					.execute();
+			}
+			factory.query("CREATE INDEX IF NOT EXISTS idx_files_backup_paths ON files " + //$NON-NLS-1$
+					"(backup_path)") //$NON-NLS-1$
+					.execute();
+			
+			factory.query("CREATE TABLE IF NOT EXISTS chunks (" + //$NON-NLS-1$
+					"id INT NOT NULL AUTO_INCREMENT PRIMARY KEY, " + //$NON-NLS-1$
+					"backup_path VARCHAR(" + sampleBackupPathLength + ") NOT NULL, " + //$NON-NLS-1$ //$NON-NLS-2$
+					"checksum VARCHAR(" + sha256Length + ") NOT NULL, " + //$NON-NLS-1$ //$NON-NLS-2$
+					"length INT NOT NULL, " + //$NON-NLS-1$
+					"compression TINYINT NOT NULL" + //$NON-NLS-1$
+					")") //$NON-NLS-1$
+					.execute();
+			factory.query("CREATE INDEX IF NOT EXISTS idx_old_chunks ON chunks " + //$NON-NLS-1$
+					"(checksum, length)") //$NON-NLS-1$
+					.execute();
+			factory.query("CREATE INDEX IF NOT EXISTS idx_chunks_backup_paths ON chunks " + //$NON-NLS-1$
+					"(backup_path)") //$NON-NLS-1$
+					.execute();
+			
+			factory.query("CREATE TABLE IF NOT EXISTS file_chunks (" + //$NON-NLS-1$
+					"file_id INT NOT NULL, " + //$NON-NLS-1$
+					"idx INT NOT NULL, " + //$NON-NLS-1$
+					"chunk_id INT NOT NULL, " + //$NON-NLS-1$
+					"PRIMARY KEY (file_id, idx)" + //$NON-NLS-1$
+					")") //$NON-NLS-1$
+					.execute();
+			factory.query("CREATE INDEX IF NOT EXISTS idx_file_chunks_chunks ON file_chunks " + //$NON-NLS-1$
+					"(chunk_id)") //$NON-NLS-1$
+					.execute();
+			
+			factory.query("CREATE TABLE IF NOT EXISTS hash_cache (" + //$NON-NLS-1$
+					"path VARCHAR(4096) NOT NULL PRIMARY KEY, " + //$NON-NLS-1$
+					"file_key VARCHAR(1024) NULL, " + //$NON-NLS-1$
+					"modification_time DATETIME NOT NULL, " + //$NON-NLS-1$
+					"length BIGINT NOT NULL, " + //$NON-NLS-1$
+					"checksum VARCHAR(" + sha256Length + ") NOT NULL, " + //$NON-NLS-1$ //$NON-NLS-2$
+					// backup run in which the checksum was computed
+					"hash_backup_id INT NOT NULL, " + //$NON-NLS-1$
+					// last backup run in which the file was seen
+					"seen_backup_id INT NOT NULL" + //$NON-NLS-1$
+					")") //$NON-NLS-1$
+					.execute();
+			
+			// names of files and folders, each stored once for all entries
+			factory.query("CREATE TABLE IF NOT EXISTS names (" + //$NON-NLS-1$
+					"id INT NOT NULL PRIMARY KEY, " + //$NON-NLS-1$
+					"name VARCHAR(1024) NOT NULL, " + //$NON-NLS-1$
+					"name_lower VARCHAR(1024) NOT NULL" + //$NON-NLS-1$
+					")") //$NON-NLS-1$
+					.execute();
+			factory.query("CREATE UNIQUE INDEX IF NOT EXISTS idx_names_names ON names " + //$NON-NLS-1$
+					"(name)") //$NON-NLS-1$
+					.execute();
+			factory.query("CREATE INDEX IF NOT EXISTS idx_names_search ON names " + //$NON-NLS-1$
+					"(name_lower)") //$NON-NLS-1$
+					.execute();
+			
 			factory.query("CREATE TABLE IF NOT EXISTS entries (" + //$NON-NLS-1$
 					"id INT NOT NULL AUTO_INCREMENT PRIMARY KEY, " + //$NON-NLS-1$
 					"parent_id INT NULL, " + //$NON-NLS-1$
@@ -190,8 +304,9 @@ public class Database {
 					"creation_time DATETIME NULL, " + //$NON-NLS-1$
 					"modification_time DATETIME NULL, " + //$NON-NLS-1$
 					"hidden BOOLEAN NOT NULL, " + //$NON-NLS-1$
-					"name VARCHAR(1024) NOT NULL, " + //$NON-NLS-1$
-					"name_lower VARCHAR(1024) NOT NULL, " + //$NON-NLS-1$
+					"name_id INT NOT NULL, " + //$NON-NLS-1$
+					// name IDs of the entry and its ancestors, root first
+					"name_path VARCHAR NULL, " + //$NON-NLS-1$
 					"file_id INT NULL" + //$NON-NLS-1$
 					")") //$NON-NLS-1$
 					.execute();
@@ -203,10 +318,83 @@ public class Database {
 					.execute();
 			factory.query("DROP INDEX IF EXISTS idx_entries_names") //$NON-NLS-1$
 					.execute();
-			factory.query("CREATE INDEX IF NOT EXISTS idx_entries_names2 ON entries " + //$NON-NLS-1$
-					"(name, backup_id, parent_id)") //$NON-NLS-1$
+			
+			if (isTableColumnExistent("ENTRIES", "NAME")) { //$NON-NLS-1$ //$NON-NLS-2$
+				// DDL statements commit, so every step must be repeatable in case the migration is interrupted
+				factory.query("INSERT INTO names (id, name, name_lower) " + //$NON-NLS-1$
+						"SELECT (SELECT COALESCE(MAX(id), 0) FROM names) + ROWNUM(), name, LOWER(name) " + //$NON-NLS-1$
+						"FROM (SELECT DISTINCT name FROM entries " + //$NON-NLS-1$
+							"WHERE NOT EXISTS (SELECT 1 FROM names WHERE names.name = entries.name))") //$NON-NLS-1$
+					.execute();
+				if (!isTableColumnExistent("ENTRIES", "NAME_ID")) { //$NON-NLS-1$ //$NON-NLS-2$
+					factory.query("ALTER TABLE entries ADD name_id INT NULL") //$NON-NLS-1$
+						.execute();
+				}
+				factory.query("UPDATE entries SET name_id = (SELECT id FROM names WHERE names.name = entries.name) " + //$NON-NLS-1$
+						"WHERE name_id IS NULL") //$NON-NLS-1$
+					.execute();
+				factory.query("ALTER TABLE entries ALTER COLUMN name_id INT NOT NULL") //$NON-NLS-1$
+					.execute();
+				factory.query("DROP INDEX IF EXISTS idx_entries_names2") //$NON-NLS-1$
+					.execute();
+				factory.query("DROP INDEX IF EXISTS idx_entries_search") //$NON-NLS-1$
+					.execute();
+				// name is dropped last because its existence starts the migration
+				if (isTableColumnExistent("ENTRIES", "NAME_LOWER")) { //$NON-NLS-1$ //$NON-NLS-2$
+					factory.query("ALTER TABLE entries DROP COLUMN name_lower") //$NON-NLS-1$
+						.execute();
+				}
+				factory.query("ALTER TABLE entries DROP COLUMN name") //$NON-NLS-1$
+					.execute();
+			}
+			factory.query("CREATE INDEX IF NOT EXISTS idx_entries_names3 ON entries " + //$NON-NLS-1$
+					"(name_id, backup_id, parent_id)") //$NON-NLS-1$
+					.execute();
+			
+			// three-character substrings of lower-case names, to search for names without a full scan
+			if (!isTableColumnExistent("NAME_TRIGRAMS", "TRIGRAM")) { //$NON-NLS-1$ //$NON-NLS-2$
+				// the table only gets its name once all names have been indexed, so that
+				// an interrupted indexing starts over instead of leaving names unindexed
+				factory.query("DROP TABLE IF EXISTS name_trigrams_new") //$NON-NLS-1$
+					.execute();
+				factory.query("CREATE TABLE name_trigrams_new (" + //$NON-NLS-1$
+						"trigram VARCHAR(" + Utils.TRIGRAM_LENGTH + ") NOT NULL, " + //$NON-NLS-1$ //$NON-NLS-2$
+						"name_id INT NOT NULL, " + //$NON-NLS-1$
+						"PRIMARY KEY (trigram, name_id)" + //$NON-NLS-1$
+						")") //$NON-NLS-1$
+						.execute();
+				addNameTrigrams("name_trigrams_new"); //$NON-NLS-1$
+				factory.query("ALTER TABLE name_trigrams_new RENAME TO name_trigrams") //$NON-NLS-1$
+					.execute();
+			}
+			factory.query("CREATE INDEX IF NOT EXISTS idx_name_trigrams_names ON name_trigrams " + //$NON-NLS-1$
+					"(name_id)") //$NON-NLS-1$
 					.execute();
 			
+			if (!isTableColumnExistent("ENTRIES", "NAME_PATH")) { //$NON-NLS-1$ //$NON-NLS-2$
+				factory.query("ALTER TABLE entries ADD name_path VARCHAR NULL") //$NON-NLS-1$
+					.execute();
+			}
+			factory.query("CREATE INDEX IF NOT EXISTS idx_entries_name_paths ON entries " + //$NON-NLS-1$
+					"(name_path, backup_id)") //$NON-NLS-1$
+					.execute();
+			// also continues a backfill that has been interrupted
+			if (factory.selectOne().from(Tables.ENTRIES).where(Tables.ENTRIES.NAME_PATH.isNull()).limit(1).fetchAny() != null) {
+				factory.query("UPDATE entries SET name_path = CAST(name_id AS VARCHAR) " + //$NON-NLS-1$
+						"WHERE parent_id IS NULL AND name_path IS NULL") //$NON-NLS-1$
+					.execute();
+				// one level of folders at a time
+				int count;
+				do {
+					count = factory.query("UPDATE entries SET name_path = " + //$NON-NLS-1$
+							"(SELECT CONCAT(parents.name_path, '" + Utils.NAME_PATH_SEPARATOR + "', entries.name_id) " + //$NON-NLS-1$ //$NON-NLS-2$
+								"FROM entries parents WHERE parents.id = entries.parent_id) " + //$NON-NLS-1$
+							"WHERE name_path IS NULL AND EXISTS " + //$NON-NLS-1$
+							"(SELECT 1 FROM entries parents WHERE parents.id = entries.parent_id AND parents.name_path IS NOT NULL)") //$NON-NLS-1$
+						.execute();
+				} while (count > 0);
+			}
+			
 			if (!isTableColumnExistent("FILES", "COMPRESSION")) { //$NON-NLS-1$ //$NON-NLS-2$
 				factory.query("ALTER TABLE files ADD compression TINYINT NULL DEFAULT " + Compression.GZIP.getValue()) //$NON-NLS-1$
 					.execute();
@@ -223,17 +411,25 @@ public class Database {
 					.execute();
 			}
 			
-			if (!isTableColumnExistent("ENTRIES", "NAME_LOWER")) { //$NON-NLS-1$ //$NON-NLS-2$
-				factory.query("ALTER TABLE entries ADD name_lower VARCHAR(1024) NULL") //$NON-NLS-1$
-					.execute();
-				factory.update(Tables.ENTRIES)
-					.set(Tables.ENTRIES.NAME_LOWER, Tables.ENTRIES.NAME.lower())
+			if (!isTableColumnExistent("FILES", "REF_COUNT")) { //$NON-NLS-1$ //$NON-NLS-2$
+				factory.query("ALTER TABLE files ADD ref_count INT DEFAULT 0 NOT NULL") //$NON-NLS-1$
 					.execute();
-				factory.query("ALTER TABLE entries ALTER COLUMN name_lower VARCHAR(1024) NOT NULL") //$NON-NLS-1$
+				factory.query("UPDATE files SET ref_count = " + //$NON-NLS-1$
+						"(SELECT COUNT(*) FROM entries WHERE entries.file_id = files.id)") //$NON-NLS-1$
 					.execute();
 			}
-			factory.query("CREATE INDEX IF NOT EXISTS idx_entries_search ON entries " + //$NON-NLS-1$
-					"(backup_id, name_lower)") //$NON-NLS-1$
+			factory.query("CREATE INDEX IF NOT EXISTS idx_files_ref_counts ON files " + //$NON-NLS-1$
+					"(ref_count, id)") //$NON-NLS-1$
+					.execute();
+			
+			// folders of unfinished backups whose entries have all been committed
+			factory.query("CREATE TABLE IF NOT EXISTS completed_folders (" + //$NON-NLS-1$
+					"entry_id INT NOT NULL PRIMARY KEY, " + //$NON-NLS-1$
+					"backup_id INT NOT NULL" + //$NON-NLS-1$
+					")") //$NON-NLS-1$
+					.execute();
+			factory.query("CREATE INDEX IF NOT EXISTS idx_completed_folders_backups ON completed_folders " + //$NON-NLS-1$
+					"(backup_id)") //$NON-NLS-1$
 					.execute();
 			
 			if (getTableColumnSize("FILES", "BACKUP_PATH") != sampleBackupPathLength) { //$NON-NLS-1$ //$NON-NLS-2$
@@ -241,6 +437,7 @@ public class Database {
 				try {
 					cursor = factory.select(Tables.FILES.ID, Tables.FILES.BACKUP_PATH)
 						.from(Tables.FILES)
+						.where(Tables.FILES.BACKUP_PATH.isNotNull())
 						.fetchLazy();
 					while (cursor.hasNext()) {
 						Record record = cursor.fetchOne();
@@ -263,13 +460,24 @@ public class Database {
 						}
 					}
 
-					factory.query("ALTER TABLE files ALTER COLUMN backup_path VARCHAR(" + sampleBackupPathLength + ") NOT NULL") //$NON-NLS-1$ //$NON-NLS-2$
+					// backup_path is null for files that are stored as chunks
+					factory.query("ALTER TABLE files ALTER COLUMN backup_path VARCHAR(" + sampleBackupPathLength + ") NULL") //$NON-NLS-1$ //$NON-NLS-2$
 						.execute();
 				} finally {
 					closeQuietly(cursor);
 				}
 			}
 			
+			if (getTableColumnSize("CHUNKS", "BACKUP_PATH") != sampleBackupPathLength) { //$NON-NLS-1$ //$NON-NLS-2$
+				factory.query("ALTER TABLE chunks ALTER COLUMN backup_path VARCHAR(" + sampleBackupPathLength + ") NOT NULL") //$NON-NLS-1$ //$NON-NLS-2$
+					.execute();
+			}
+			
+			if (!isTableColumnNullable("FILES", "BACKUP_PATH")) { //$NON-NLS-1$ //$NON-NLS-2$
+				factory.query("ALTER TABLE files ALTER COLUMN backup_path SET NULL") //$NON-NLS-1$
+					.execute();
+			}
+			
 			factory.query("ANALYZE") //$NON-NLS-1$
 					.execute();
 		} catch (SQLException e) {
@@ -279,6 +487,42 @@ public class Database {
 		}
 	}
 
+	private void addNameTrigrams(String tableName) {
+		Cursor<Record> cursor = null;
+		try {
+			cursor = factory.select(Tables.NAMES.ID, Tables.NAMES.NAME_LOWER)
+				.from(Tables.NAMES)
+				.fetchLazy();
+			List<Object[]> trigrams = new ArrayList<>();
+			while (cursor.hasNext()) {
+				Record record = cursor.fetchOne();
+				Integer nameId = record.getValue(Tables.NAMES.ID);
+				for (String trigram : Utils.getTrigrams(record.getValue(Tables.NAMES.NAME_LOWER))) {
+					trigrams.add(new Object[] { trigram, nameId });
+				}
+				if (trigrams.size() >= 1000) {
+					insertNameTrigrams(tableName, trigrams);
+					trigrams.clear();
+				}
+			}
+			insertNameTrigrams(tableName, trigrams);
+		} finally {
+			closeQuietly(cursor);
+		}
+	}
+
+	private void insertNameTrigrams(String tableName, List<Object[]> trigrams) {
+		if (!trigrams.isEmpty()) {
+			BatchBindStep batch = factory.batch(
+					factory.query("INSERT INTO " + tableName + " (trigram, name_id) VALUES (?, ?)", //$NON-NLS-1$ //$NON-NLS-2$
+							new Object[2]));
+			for (Object[] values : trigrams) {
+				batch.bind(values);
+			}
+			batch.execute();
+		}
+	}
+
 	private boolean isTableColumnExistent(String tableName, String columnName) throws SQLException {
 		ResultSet rs = null;
 		try {
@@ -289,6 +533,17 @@ public class Database {
 		}
 	}
 	
+	private boolean isTableColumnNullable(String tableName, String columnName) throws SQLException {
+		ResultSet rs = null;
+		try {
+			rs = conn.getMetaData().getColumns(null, null, tableName, columnName);
+			rs.next();
+			return rs.getInt(11) != DatabaseMetaData.columnNoNulls;
+		} finally {
+			closeQuietly(rs);
+		}
+	}
+	
 	private int getTableColumnSize(String tableName, String columnName) throws SQLException {
 		ResultSet rs = null;
 		try {
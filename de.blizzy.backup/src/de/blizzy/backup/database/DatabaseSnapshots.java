@@ -0,0 +1,374 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.filefilter.FileFilterUtils;
+
+import de.blizzy.backup.Compression;
+
+// snapshots of a database folder. files are split into blocks that are stored once,
+// under their SHA-256, so that each snapshot only adds the blocks that have changed.
+public class DatabaseSnapshots {
+	private static final int BLOCK_SIZE = 64 * 1024;
+	private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final String SNAPSHOT_FILE_SUFFIX = ".snapshot"; //$NON-NLS-1$
+	private static final String BLOCKS_FOLDER_NAME = "blocks"; //$NON-NLS-1$
+
+	private File folder;
+	private File blocksFolder;
+
+	public DatabaseSnapshots(File folder) {
+		this.folder = folder;
+		blocksFolder = new File(folder, BLOCKS_FOLDER_NAME);
+	}
+
+	void createSnapshot(File databaseFolder, long timestamp) throws IOException {
+		// blocks of complete snapshots are known to exist
+		final Set<String> storedBlocks = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		storedBlocks.addAll(getReferencedBlocks());
+
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS, new ThreadFactory() {
+			private AtomicInteger threadNumber = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Database Snapshot " + threadNumber.incrementAndGet()); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		File tempFile = new File(folder, timestamp + SNAPSHOT_FILE_SUFFIX + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = null;
+		try {
+			FileUtils.forceMkdir(folder);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeInt(SNAPSHOT_VERSION);
+			List<String> names = WorkingCopy.listFiles(databaseFolder);
+			out.writeInt(names.size());
+			for (String name : names) {
+				File file = new File(databaseFolder, name);
+				out.writeUTF(name);
+				out.writeLong(file.length());
+				writeBlocks(file, storedBlocks, executor, out);
+			}
+		} catch (IOException | RuntimeException e) {
+			IOUtils.closeQuietly(out);
+			FileUtils.deleteQuietly(tempFile);
+			throw e;
+		} finally {
+			IOUtils.closeQuietly(out);
+			executor.shutdownNow();
+		}
+		// snapshot becomes visible only after all of its blocks have been stored
+		Files.move(tempFile.toPath(), getSnapshotFile(timestamp).toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private void writeBlocks(File file, final Set<String> storedBlocks, ExecutorService executor, DataOutputStream out)
+			throws IOException {
+
+		LinkedList<Future<byte[]>> pendingBlocks = new LinkedList<>();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			List<byte[]> hashes = new ArrayList<>();
+			for (;;) {
+				final byte[] buf = new byte[BLOCK_SIZE];
+				final int length = IOUtils.read(in, buf);
+				if (length == 0) {
+					break;
+				}
+				pendingBlocks.add(executor.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() throws IOException {
+						return storeBlock(buf, length, storedBlocks);
+					}
+				}));
+				// limit the amount of memory held by blocks not stored yet
+				while (pendingBlocks.size() > (NUM_THREADS * 2)) {
+					hashes.add(getResult(pendingBlocks.removeFirst()));
+				}
+			}
+			while (!pendingBlocks.isEmpty()) {
+				hashes.add(getResult(pendingBlocks.removeFirst()));
+			}
+
+			out.writeInt(hashes.size());
+			for (byte[] hash : hashes) {
+				out.write(hash);
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+			for (Future<byte[]> future : pendingBlocks) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private byte[] storeBlock(byte[] buf, int length, Set<String> storedBlocks) throws IOException {
+		MessageDigest digest = DigestUtils.getSha256Digest();
+		digest.update(buf, 0, length);
+		byte[] hash = digest.digest();
+		String hashHex = Hex.encodeHexString(hash);
+		if (storedBlocks.add(hashHex)) {
+			File blockFile = getBlockFile(hashHex);
+			FileUtils.forceMkdir(blockFile.getParentFile());
+			File tempFile = new File(blockFile.getParentFile(), blockFile.getName() + ".tmp"); //$NON-NLS-1$
+			OutputStream out = null;
+			try {
+				// blocks are written once but are rarely ever read, so compress them fast
+				out = Compression.GZIP.getOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)), 1);
+				out.write(buf, 0, length);
+			} finally {
+				IOUtils.closeQuietly(out);
+			}
+			Files.move(tempFile.toPath(), blockFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return hash;
+	}
+
+	private static byte[] getResult(Future<byte[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	// returns timestamps of all snapshots, most recent first
+	public List<Long> getSnapshots() {
+		List<Long> timestamps = new ArrayList<>();
+		if (folder.isDirectory()) {
+			for (File file : folder.listFiles()) {
+				long timestamp = getTimestamp(file);
+				if (timestamp > 0) {
+					timestamps.add(Long.valueOf(timestamp));
+				}
+			}
+		}
+		Collections.sort(timestamps, Collections.reverseOrder());
+		return timestamps;
+	}
+
+	private static long getTimestamp(File file) {
+		String name = file.getName();
+		if (file.isFile() && name.endsWith(SNAPSHOT_FILE_SUFFIX)) {
+			name = name.substring(0, name.length() - SNAPSHOT_FILE_SUFFIX.length());
+		} else if (!file.isDirectory()) {
+			// folders contain zipped full copies made by previous versions
+			return -1;
+		}
+		try {
+			return Long.parseLong(name);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	public void removeOldSnapshots(int numSnapshotsToKeep) throws IOException {
+		List<Long> timestamps = getSnapshots();
+		for (int i = numSnapshotsToKeep; i < timestamps.size(); i++) {
+			long timestamp = timestamps.get(i).longValue();
+			File snapshotFile = getSnapshotFile(timestamp);
+			FileUtils.forceDelete(snapshotFile.isFile() ? snapshotFile : new File(folder, String.valueOf(timestamp)));
+		}
+
+		// also removes blocks left behind by incomplete snapshots
+		if (blocksFolder.isDirectory()) {
+			Set<String> referencedBlocks = getReferencedBlocks();
+			for (File blockFolder : blocksFolder.listFiles((FileFilter) FileFilterUtils.directoryFileFilter())) {
+				for (File blockFile : blockFolder.listFiles()) {
+					if (!referencedBlocks.contains(blockFile.getName())) {
+						FileUtils.forceDelete(blockFile);
+					}
+				}
+			}
+		}
+	}
+
+	private Set<String> getReferencedBlocks() throws IOException {
+		final Set<String> blocks = new HashSet<>();
+		for (Long timestamp : getSnapshots()) {
+			File snapshotFile = getSnapshotFile(timestamp.longValue());
+			if (snapshotFile.isFile()) {
+				readSnapshot(snapshotFile, new ISnapshotVisitor() {
+					@Override
+					public void visitFile(String name) {
+					}
+
+					@Override
+					public void visitBlock(String hashHex) {
+						blocks.add(hashHex);
+					}
+				});
+			}
+		}
+		return blocks;
+	}
+
+	public void restoreSnapshot(long timestamp, final File databaseFolder) throws IOException {
+		FileUtils.forceMkdir(databaseFolder);
+		FileUtils.cleanDirectory(databaseFolder);
+
+		File snapshotFolder = new File(folder, String.valueOf(timestamp));
+		if (snapshotFolder.isDirectory()) {
+			restoreZippedCopy(snapshotFolder, databaseFolder);
+			return;
+		}
+
+		final OutputStream[] out = new OutputStream[1];
+		try {
+			readSnapshot(getSnapshotFile(timestamp), new ISnapshotVisitor() {
+				@Override
+				public void visitFile(String name) throws IOException {
+					IOUtils.closeQuietly(out[0]);
+					File file = new File(databaseFolder, name);
+					FileUtils.forceMkdir(file.getParentFile());
+					out[0] = new BufferedOutputStream(new FileOutputStream(file));
+				}
+
+				@Override
+				public void visitBlock(String hashHex) throws IOException {
+					restoreBlock(hashHex, out[0]);
+				}
+			});
+		} finally {
+			IOUtils.closeQuietly(out[0]);
+		}
+	}
+
+	private void restoreBlock(String hashHex, OutputStream out) throws IOException {
+		InputStream in = null;
+		try {
+			in = Compression.GZIP.getInputStream(new BufferedInputStream(new FileInputStream(getBlockFile(hashHex))));
+			byte[] buf = new byte[BLOCK_SIZE];
+			int length = IOUtils.read(in, buf);
+			MessageDigest digest = DigestUtils.getSha256Digest();
+			digest.update(buf, 0, length);
+			if (!Hex.encodeHexString(digest.digest()).equals(hashHex)) {
+				throw new IOException("block is corrupt: " + hashHex); //$NON-NLS-1$
+			}
+			out.write(buf, 0, length);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private static void restoreZippedCopy(File snapshotFolder, File databaseFolder) throws IOException {
+		for (File file : snapshotFolder.listFiles()) {
+			if (file.isDirectory()) {
+				restoreZippedCopy(file, new File(databaseFolder, file.getName()));
+			} else {
+				ZipInputStream in = null;
+				try {
+					in = new ZipInputStream(new BufferedInputStream(new FileInputStream(file)));
+					ZipEntry entry = in.getNextEntry();
+					if (entry != null) {
+						FileUtils.copyInputStreamToFile(in, new File(databaseFolder, entry.getName()));
+					}
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
+			}
+		}
+	}
+
+	private static interface ISnapshotVisitor {
+		void visitFile(String name) throws IOException;
+
+		void visitBlock(String hashHex) throws IOException;
+	}
+
+	private static void readSnapshot(File snapshotFile, ISnapshotVisitor visitor) throws IOException {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+			if (in.readInt() != SNAPSHOT_VERSION) {
+				throw new IOException("unknown snapshot version: " + snapshotFile.getAbsolutePath()); //$NON-NLS-1$
+			}
+			int numFiles = in.readInt();
+			byte[] hash = new byte[DigestUtils.getSha256Digest().getDigestLength()];
+			for (int i = 0; i < numFiles; i++) {
+				String name = in.readUTF();
+				// length is implied by the blocks
+				in.readLong();
+				visitor.visitFile(name);
+				int numBlocks = in.readInt();
+				for (int j = 0; j < numBlocks; j++) {
+					in.readFully(hash);
+					visitor.visitBlock(Hex.encodeHexString(hash));
+				}
+			}
+		} catch (EOFException e) {
+			throw new IOException("snapshot is incomplete: " + snapshotFile.getAbsolutePath(), e); //$NON-NLS-1$
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private File getSnapshotFile(long timestamp) {
+		return new File(folder, timestamp + SNAPSHOT_FILE_SUFFIX);
+	}
+
+	private File getBlockFile(String hashHex) {
+		return new File(new File(blocksFolder, hashHex.substring(0, 2)), hashHex);
+	}
+
+}
@@ -0,0 +1,417 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+// local copy of a database folder that is kept between runs. changes are written back by
+// journaling the blocks that have changed since the last write-back, so that the database
+// folder can be recovered to a consistent state whenever writing back is interrupted.
+class WorkingCopy {
+	private static final int BLOCK_SIZE = 64 * 1024;
+	private static final int HASH_LENGTH = 16;
+	private static final long JOURNAL_MAGIC = 0x626c697a7a79L;
+	private static final int STATE_VERSION = 1;
+
+	private static final class FileState {
+		long length;
+		long lastModified;
+		// MD5 of each block
+		byte[] hashes;
+
+		FileState(long length, long lastModified, byte[] hashes) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.hashes = hashes;
+		}
+	}
+
+	private File realFolder;
+	private File folder;
+	private File stateFile;
+
+	WorkingCopy(File realFolder) {
+		this.realFolder = realFolder;
+		File tempFolder = new File(System.getProperty("java.io.tmpdir")); //$NON-NLS-1$
+		String name = "blizzysbackup-" + DigestUtils.md5Hex(realFolder.getAbsolutePath()); //$NON-NLS-1$
+		folder = new File(tempFolder, name);
+		stateFile = new File(tempFolder, name + ".state"); //$NON-NLS-1$
+	}
+
+	File getFolder() {
+		return folder;
+	}
+
+	// makes sure the working copy is based on the current contents of the database folder
+	void update(boolean force) throws IOException {
+		Map<String, FileState> state = !force ? loadState() : null;
+		if ((state != null) && folder.isDirectory() && isUnchanged(state) && isComplete(state)) {
+			// working copy might contain changes of a previous run that has not been written back,
+			// which the database will recover from its transaction log
+			return;
+		}
+
+		FileUtils.deleteQuietly(stateFile);
+		FileUtils.deleteQuietly(folder);
+		FileUtils.forceMkdir(folder);
+		state = new HashMap<>();
+		for (String name : listFiles(realFolder)) {
+			File realFile = new File(realFolder, name);
+			byte[] hashes = copyFile(realFile, new File(folder, name));
+			state.put(name, new FileState(realFile.length(), realFile.lastModified(), hashes));
+		}
+		saveState(state);
+	}
+
+	private boolean isUnchanged(Map<String, FileState> state) {
+		List<String> names = listFiles(realFolder);
+		if (names.size() != state.size()) {
+			return false;
+		}
+		for (String name : names) {
+			FileState fileState = state.get(name);
+			File realFile = new File(realFolder, name);
+			if ((fileState == null) || (fileState.length != realFile.length()) ||
+				(fileState.lastModified != realFile.lastModified())) {
+
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// files in the temporary folder might have been cleaned up, and writing back an incomplete
+	// working copy would delete or overwrite the files in the database folder
+	private boolean isComplete(Map<String, FileState> state) {
+		for (Map.Entry<String, FileState> entry : state.entrySet()) {
+			File file = new File(folder, entry.getKey());
+			if (!file.isFile() || (file.length() != entry.getValue().length)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private byte[] copyFile(File file, File targetFile) throws IOException {
+		FileUtils.forceMkdir(targetFile.getParentFile());
+		InputStream in = null;
+		FileOutputStream out = null;
+		try {
+			in = new FileInputStream(file);
+			out = new FileOutputStream(targetFile);
+			byte[] buf = new byte[BLOCK_SIZE];
+			MessageDigest digest = DigestUtils.getMd5Digest();
+			byte[] hashes = new byte[getNumBlocks(file.length()) * HASH_LENGTH];
+			for (int block = 0;; block++) {
+				int length = IOUtils.read(in, buf);
+				if (length == 0) {
+					break;
+				}
+				out.write(buf, 0, length);
+				digest.update(buf, 0, length);
+				System.arraycopy(digest.digest(), 0, hashes, block * HASH_LENGTH, HASH_LENGTH);
+			}
+			return hashes;
+		} finally {
+			IOUtils.closeQuietly(in);
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	// writes all changes back to the database folder
+	void writeBack() throws IOException {
+		Map<String, FileState> state = loadState();
+		if (state == null) {
+			// nothing is known about the database folder, so everything must be written
+			state = new HashMap<>();
+		}
+		FileUtils.forceMkdir(realFolder);
+		File journalFile = getJournalFile(realFolder);
+		Map<String, byte[]> newHashes = new HashMap<>();
+		boolean changed = false;
+		FileOutputStream fileOut = null;
+		try {
+			fileOut = new FileOutputStream(journalFile);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+			out.writeLong(JOURNAL_MAGIC);
+			List<String> names = listFiles(folder);
+			for (String name : names) {
+				File file = new File(folder, name);
+				FileState fileState = state.get(name);
+				byte[] hashes = new byte[getNumBlocks(file.length()) * HASH_LENGTH];
+				if (writeChangedBlocks(name, file, (fileState != null) ? fileState.hashes : null,
+						file.length() != ((fileState != null) ? fileState.length : -1), hashes, out)) {
+					changed = true;
+				}
+				newHashes.put(name, hashes);
+			}
+			for (String name : state.keySet()) {
+				if (!names.contains(name)) {
+					out.writeBoolean(true);
+					out.writeUTF(name);
+					out.writeLong(-1);
+					out.writeInt(-1);
+					changed = true;
+				}
+			}
+			out.writeBoolean(false);
+			out.writeLong(JOURNAL_MAGIC);
+			out.flush();
+			// journal must be complete on disk before any database file is touched
+			fileOut.getFD().sync();
+		} finally {
+			IOUtils.closeQuietly(fileOut);
+		}
+
+		if (changed) {
+			// state doesn't match the database folder while it is being modified
+			FileUtils.deleteQuietly(stateFile);
+			readJournal(journalFile, realFolder, true);
+		}
+		Files.delete(journalFile.toPath());
+
+		Map<String, FileState> newState = new HashMap<>();
+		for (Map.Entry<String, byte[]> entry : newHashes.entrySet()) {
+			File realFile = new File(realFolder, entry.getKey());
+			newState.put(entry.getKey(), new FileState(realFile.length(), realFile.lastModified(), entry.getValue()));
+		}
+		saveState(newState);
+	}
+
+	private boolean writeChangedBlocks(String name, File file, byte[] oldHashes, boolean lengthChanged, byte[] hashes,
+			DataOutputStream out) throws IOException {
+
+		boolean headerWritten = false;
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			byte[] buf = new byte[BLOCK_SIZE];
+			MessageDigest digest = DigestUtils.getMd5Digest();
+			for (int block = 0;; block++) {
+				int length = IOUtils.read(in, buf);
+				if (length == 0) {
+					break;
+				}
+				digest.update(buf, 0, length);
+				int hashOffset = block * HASH_LENGTH;
+				System.arraycopy(digest.digest(), 0, hashes, hashOffset, HASH_LENGTH);
+				if (!isSameHash(hashes, oldHashes, hashOffset)) {
+					if (!headerWritten) {
+						writeFileHeader(name, file.length(), out);
+						headerWritten = true;
+					}
+					out.writeInt(block);
+					out.writeInt(length);
+					out.write(buf, 0, length);
+				}
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+
+		// file might only have been truncated
+		if (lengthChanged && !headerWritten) {
+			writeFileHeader(name, file.length(), out);
+			headerWritten = true;
+		}
+		if (headerWritten) {
+			out.writeInt(-1);
+		}
+		return headerWritten;
+	}
+
+	private static boolean isSameHash(byte[] hashes, byte[] oldHashes, int offset) {
+		if ((oldHashes == null) || ((offset + HASH_LENGTH) > oldHashes.length)) {
+			return false;
+		}
+		for (int i = offset; i < (offset + HASH_LENGTH); i++) {
+			if (hashes[i] != oldHashes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeFileHeader(String name, long length, DataOutputStream out) throws IOException {
+		out.writeBoolean(true);
+		out.writeUTF(name);
+		out.writeLong(length);
+	}
+
+	// completes an interrupted write-back, or discards it if the journal itself is incomplete
+	static void recover(File realFolder) throws IOException {
+		File journalFile = getJournalFile(realFolder);
+		if (journalFile.isFile()) {
+			if (readJournal(journalFile, realFolder, false)) {
+				readJournal(journalFile, realFolder, true);
+			}
+			Files.delete(journalFile.toPath());
+		}
+	}
+
+	private static boolean readJournal(File journalFile, File targetFolder, boolean apply) throws IOException {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+			if (in.readLong() != JOURNAL_MAGIC) {
+				return false;
+			}
+			byte[] buf = new byte[BLOCK_SIZE];
+			while (in.readBoolean()) {
+				String name = in.readUTF();
+				long length = in.readLong();
+				File file = new File(targetFolder, name);
+				RandomAccessFile raf = null;
+				try {
+					if (apply) {
+						if (length < 0) {
+							Files.deleteIfExists(file.toPath());
+						} else {
+							FileUtils.forceMkdir(file.getParentFile());
+							raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+						}
+					}
+					for (;;) {
+						int block = in.readInt();
+						if (block < 0) {
+							break;
+						}
+						int blockLength = in.readInt();
+						if ((blockLength < 0) || (blockLength > BLOCK_SIZE)) {
+							return false;
+						}
+						in.readFully(buf, 0, blockLength);
+						if (raf != null) {
+							raf.seek((long) block * BLOCK_SIZE);
+							raf.write(buf, 0, blockLength);
+						}
+					}
+					if (raf != null) {
+						raf.setLength(length);
+						raf.getFD().sync();
+					}
+				} finally {
+					IOUtils.closeQuietly(raf);
+				}
+			}
+			return in.readLong() == JOURNAL_MAGIC;
+		} catch (EOFException e) {
+			return false;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private static File getJournalFile(File realFolder) {
+		return new File(realFolder.getParentFile(), realFolder.getName() + ".journal"); //$NON-NLS-1$
+	}
+
+	private Map<String, FileState> loadState() throws IOException {
+		if (!stateFile.isFile()) {
+			return null;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)));
+			if (in.readInt() != STATE_VERSION) {
+				return null;
+			}
+			Map<String, FileState> state = new HashMap<>();
+			int numFiles = in.readInt();
+			for (int i = 0; i < numFiles; i++) {
+				String name = in.readUTF();
+				long length = in.readLong();
+				long lastModified = in.readLong();
+				byte[] hashes = new byte[in.readInt()];
+				in.readFully(hashes);
+				state.put(name, new FileState(length, lastModified, hashes));
+			}
+			return state;
+		} catch (EOFException e) {
+			return null;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private void saveState(Map<String, FileState> state) throws IOException {
+		File tempFile = new File(stateFile.getParentFile(), stateFile.getName() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeInt(STATE_VERSION);
+			out.writeInt(state.size());
+			for (Map.Entry<String, FileState> entry : state.entrySet()) {
+				FileState fileState = entry.getValue();
+				out.writeUTF(entry.getKey());
+				out.writeLong(fileState.length);
+				out.writeLong(fileState.lastModified);
+				out.writeInt(fileState.hashes.length);
+				out.write(fileState.hashes);
+			}
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+		Files.move(tempFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	static List<String> listFiles(File folder) {
+		List<String> names = new ArrayList<>();
+		if (folder.isDirectory()) {
+			listFiles(folder, null, names);
+		}
+		return names;
+	}
+
+	private static void listFiles(File folder, String path, List<String> names) {
+		for (File file : folder.listFiles()) {
+			String name = (path != null) ? path + "/" + file.getName() : file.getName(); //$NON-NLS-1$
+			if (file.isDirectory()) {
+				listFiles(file, name, names);
+			} else if (!file.getName().endsWith(".lock.db")) { //$NON-NLS-1$
+				names.add(name);
+			}
+		}
+	}
+
+	private static int getNumBlocks(long length) {
+		return (int) ((length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+	}
+}
@@ -16,11 +16,18 @@ public class Keys {
 	public static final org.jooq.Identity<de.blizzy.backup.database.schema.tables.records.BackupsRecord, java.lang.Integer> IDENTITY_BACKUPS = Identities0.IDENTITY_BACKUPS;
 	public static final org.jooq.Identity<de.blizzy.backup.database.schema.tables.records.EntriesRecord, java.lang.Integer> IDENTITY_ENTRIES = Identities0.IDENTITY_ENTRIES;
 	public static final org.jooq.Identity<de.blizzy.backup.database.schema.tables.records.FilesRecord, java.lang.Integer> IDENTITY_FILES = Identities0.IDENTITY_FILES;
+	public static final org.jooq.Identity<de.blizzy.backup.database.schema.tables.records.ChunksRecord, java.lang.Integer> IDENTITY_CHUNKS = Identities0.IDENTITY_CHUNKS;
 
 	// UNIQUE and PRIMARY KEY definitions
 	public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.BackupsRecord> CONSTRAINT_1 = UniqueKeys0.CONSTRAINT_1;
 	public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.EntriesRecord> CONSTRAINT_C = UniqueKeys0.CONSTRAINT_C;
 	public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.FilesRecord> CONSTRAINT_3 = UniqueKeys0.CONSTRAINT_3;
+	public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.ChunksRecord> CONSTRAINT_7 = UniqueKeys0.CONSTRAINT_7;
+	public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.FileChunksRecord> CONSTRAINT_7B = UniqueKeys0.CONSTRAINT_7B;
+	public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.HashCacheRecord> CONSTRAINT_8 = UniqueKeys0.CONSTRAINT_8;
+	public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.CompletedFoldersRecord> CONSTRAINT_D = UniqueKeys0.CONSTRAINT_D;
+	public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.NamesRecord> CONSTRAINT_4 = UniqueKeys0.CONSTRAINT_4;
+	public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.NameTrigramsRecord> CONSTRAINT_CE = UniqueKeys0.CONSTRAINT_CE;
 
 	// FOREIGN KEY definitions
 
@@ -34,6 +41,7 @@ public class Keys {
 		public static org.jooq.Identity<de.blizzy.backup.database.schema.tables.records.BackupsRecord, java.lang.Integer> IDENTITY_BACKUPS = createIdentity(de.blizzy.backup.database.schema.tables.Backups.BACKUPS, de.blizzy.backup.database.schema.tables.Backups.BACKUPS.ID);
 		public static org.jooq.Identity<de.blizzy.backup.database.schema.tables.records.EntriesRecord, java.lang.Integer> IDENTITY_ENTRIES = createIdentity(de.blizzy.backup.database.schema.tables.Entries.ENTRIES, de.blizzy.backup.database.schema.tables.Entries.ENTRIES.ID);
 		public static org.jooq.Identity<de.blizzy.backup.database.schema.tables.records.FilesRecord, java.lang.Integer> IDENTITY_FILES = createIdentity(de.blizzy.backup.database.schema.tables.Files.FILES, de.blizzy.backup.database.schema.tables.Files.FILES.ID);
+		public static org.jooq.Identity<de.blizzy.backup.database.schema.tables.records.ChunksRecord, java.lang.Integer> IDENTITY_CHUNKS = createIdentity(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS, de.blizzy.backup.database.schema.tables.Chunks.CHUNKS.ID);
 	}
 
 	@SuppressWarnings({"hiding", "unchecked"})
@@ -41,5 +49,11 @@ public class Keys {
 		public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.BackupsRecord> CONSTRAINT_1 = createUniqueKey(de.blizzy.backup.database.schema.tables.Backups.BACKUPS, de.blizzy.backup.database.schema.tables.Backups.BACKUPS.ID);
 		public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.EntriesRecord> CONSTRAINT_C = createUniqueKey(de.blizzy.backup.database.schema.tables.Entries.ENTRIES, de.blizzy.backup.database.schema.tables.Entries.ENTRIES.ID);
 		public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.FilesRecord> CONSTRAINT_3 = createUniqueKey(de.blizzy.backup.database.schema.tables.Files.FILES, de.blizzy.backup.database.schema.tables.Files.FILES.ID);
+		public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.ChunksRecord> CONSTRAINT_7 = createUniqueKey(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS, de.blizzy.backup.database.schema.tables.Chunks.CHUNKS.ID);
+		public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.FileChunksRecord> CONSTRAINT_7B = createUniqueKey(de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS, de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS.FILE_ID, de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS.IDX);
+		public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.HashCacheRecord> CONSTRAINT_8 = createUniqueKey(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE, de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.PATH);
+		public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.CompletedFoldersRecord> CONSTRAINT_D = createUniqueKey(de.blizzy.backup.database.schema.tables.CompletedFolders.COMPLETED_FOLDERS, de.blizzy.backup.database.schema.tables.CompletedFolders.COMPLETED_FOLDERS.ENTRY_ID);
+		public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.NamesRecord> CONSTRAINT_4 = createUniqueKey(de.blizzy.backup.database.schema.tables.Names.NAMES, de.blizzy.backup.database.schema.tables.Names.NAMES.ID);
+		public static final org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.NameTrigramsRecord> CONSTRAINT_CE = createUniqueKey(de.blizzy.backup.database.schema.tables.NameTrigrams.NAME_TRIGRAMS, de.blizzy.backup.database.schema.tables.NameTrigrams.NAME_TRIGRAMS.TRIGRAM, de.blizzy.backup.database.schema.tables.NameTrigrams.NAME_TRIGRAMS.NAME_ID);
 	}
 }
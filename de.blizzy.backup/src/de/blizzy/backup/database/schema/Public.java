@@ -36,6 +36,12 @@ public class Public extends org.jooq.impl.SchemaImpl {
 		return java.util.Arrays.<org.jooq.Table<?>>asList(
 			de.blizzy.backup.database.schema.tables.Backups.BACKUPS,
 			de.blizzy.backup.database.schema.tables.Entries.ENTRIES,
-			de.blizzy.backup.database.schema.tables.Files.FILES);
+			de.blizzy.backup.database.schema.tables.Files.FILES,
+			de.blizzy.backup.database.schema.tables.Chunks.CHUNKS,
+			de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS,
+			de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE,
+			de.blizzy.backup.database.schema.tables.CompletedFolders.COMPLETED_FOLDERS,
+			de.blizzy.backup.database.schema.tables.Names.NAMES,
+			de.blizzy.backup.database.schema.tables.NameTrigrams.NAME_TRIGRAMS);
 	}
 }
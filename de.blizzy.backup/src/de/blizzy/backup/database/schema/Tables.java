@@ -26,6 +26,36 @@ public final class Tables {
 	 */
 	public static final de.blizzy.backup.database.schema.tables.Files FILES = de.blizzy.backup.database.schema.tables.Files.FILES;
 
+	/**
+	 * The table PUBLIC.CHUNKS
+	 */
+	public static final de.blizzy.backup.database.schema.tables.Chunks CHUNKS = de.blizzy.backup.database.schema.tables.Chunks.CHUNKS;
+
+	/**
+	 * The table PUBLIC.FILE_CHUNKS
+	 */
+	public static final de.blizzy.backup.database.schema.tables.FileChunks FILE_CHUNKS = de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS;
+
+	/**
+	 * The table PUBLIC.HASH_CACHE
+	 */
+	public static final de.blizzy.backup.database.schema.tables.HashCache HASH_CACHE = de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE;
+
+	/**
+	 * The table PUBLIC.COMPLETED_FOLDERS
+	 */
+	public static final de.blizzy.backup.database.schema.tables.CompletedFolders COMPLETED_FOLDERS = de.blizzy.backup.database.schema.tables.CompletedFolders.COMPLETED_FOLDERS;
+
+	/**
+	 * The table PUBLIC.NAMES
+	 */
+	public static final de.blizzy.backup.database.schema.tables.Names NAMES = de.blizzy.backup.database.schema.tables.Names.NAMES;
+
+	/**
+	 * The table PUBLIC.NAME_TRIGRAMS
+	 */
+	public static final de.blizzy.backup.database.schema.tables.NameTrigrams NAME_TRIGRAMS = de.blizzy.backup.database.schema.tables.NameTrigrams.NAME_TRIGRAMS;
+
 	/**
 	 * No instances
 	 */
@@ -0,0 +1,82 @@
+/**
+ * This class is generated by jOOQ
+ */
+package de.blizzy.backup.database.schema.tables;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@java.lang.SuppressWarnings("all")
+public class Chunks extends org.jooq.impl.UpdatableTableImpl<de.blizzy.backup.database.schema.tables.records.ChunksRecord> {
+
+	private static final long serialVersionUID = -1097199070;
+
+	/**
+	 * The singleton instance of PUBLIC.CHUNKS
+	 */
+	public static final de.blizzy.backup.database.schema.tables.Chunks CHUNKS = new de.blizzy.backup.database.schema.tables.Chunks();
+
+	/**
+	 * The class holding records for this type
+	 */
+	@Override
+	public java.lang.Class<de.blizzy.backup.database.schema.tables.records.ChunksRecord> getRecordType() {
+		return de.blizzy.backup.database.schema.tables.records.ChunksRecord.class;
+	}
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.ChunksRecord, java.lang.Integer> ID = createField("ID", org.jooq.impl.SQLDataType.INTEGER, this);
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.BACKUP_PATH</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.ChunksRecord, java.lang.String> BACKUP_PATH = createField("BACKUP_PATH", org.jooq.impl.SQLDataType.VARCHAR, this);
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.CHECKSUM</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.ChunksRecord, java.lang.String> CHECKSUM = createField("CHECKSUM", org.jooq.impl.SQLDataType.VARCHAR, this);
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.LENGTH</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.ChunksRecord, java.lang.Integer> LENGTH = createField("LENGTH", org.jooq.impl.SQLDataType.INTEGER, this);
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.COMPRESSION</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.ChunksRecord, java.lang.Byte> COMPRESSION = createField("COMPRESSION", org.jooq.impl.SQLDataType.TINYINT, this);
+
+	public Chunks() {
+		super("CHUNKS", de.blizzy.backup.database.schema.Public.PUBLIC);
+	}
+
+	public Chunks(java.lang.String alias) {
+		super(alias, de.blizzy.backup.database.schema.Public.PUBLIC, de.blizzy.backup.database.schema.tables.Chunks.CHUNKS);
+	}
+
+	@Override
+	public org.jooq.Identity<de.blizzy.backup.database.schema.tables.records.ChunksRecord, java.lang.Integer> getIdentity() {
+		return de.blizzy.backup.database.schema.Keys.IDENTITY_CHUNKS;
+	}
+
+	@Override
+	public org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.ChunksRecord> getMainKey() {
+		return de.blizzy.backup.database.schema.Keys.CONSTRAINT_7;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public java.util.List<org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.ChunksRecord>> getKeys() {
+		return java.util.Arrays.<org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.ChunksRecord>>asList(de.blizzy.backup.database.schema.Keys.CONSTRAINT_7);
+	}
+
+	@Override
+	public de.blizzy.backup.database.schema.tables.Chunks as(java.lang.String alias) {
+		return new de.blizzy.backup.database.schema.tables.Chunks(alias);
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * This class is generated by jOOQ
+ */
+package de.blizzy.backup.database.schema.tables;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@java.lang.SuppressWarnings("all")
+public class CompletedFolders extends org.jooq.impl.UpdatableTableImpl<de.blizzy.backup.database.schema.tables.records.CompletedFoldersRecord> {
+
+	private static final long serialVersionUID = -2038376361;
+
+	/**
+	 * The singleton instance of PUBLIC.COMPLETED_FOLDERS
+	 */
+	public static final de.blizzy.backup.database.schema.tables.CompletedFolders COMPLETED_FOLDERS = new de.blizzy.backup.database.schema.tables.CompletedFolders();
+
+	/**
+	 * The class holding records for this type
+	 */
+	@Override
+	public java.lang.Class<de.blizzy.backup.database.schema.tables.records.CompletedFoldersRecord> getRecordType() {
+		return de.blizzy.backup.database.schema.tables.records.CompletedFoldersRecord.class;
+	}
+
+	/**
+	 * The table column <code>PUBLIC.COMPLETED_FOLDERS.ENTRY_ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.CompletedFoldersRecord, java.lang.Integer> ENTRY_ID = createField("ENTRY_ID", org.jooq.impl.SQLDataType.INTEGER, this);
+
+	/**
+	 * The table column <code>PUBLIC.COMPLETED_FOLDERS.BACKUP_ID</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.CompletedFoldersRecord, java.lang.Integer> BACKUP_ID = createField("BACKUP_ID", org.jooq.impl.SQLDataType.INTEGER, this);
+
+	public CompletedFolders() {
+		super("COMPLETED_FOLDERS", de.blizzy.backup.database.schema.Public.PUBLIC);
+	}
+
+	public CompletedFolders(java.lang.String alias) {
+		super(alias, de.blizzy.backup.database.schema.Public.PUBLIC, de.blizzy.backup.database.schema.tables.CompletedFolders.COMPLETED_FOLDERS);
+	}
+
+	@Override
+	public org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.CompletedFoldersRecord> getMainKey() {
+		return de.blizzy.backup.database.schema.Keys.CONSTRAINT_D;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public java.util.List<org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.CompletedFoldersRecord>> getKeys() {
+		return java.util.Arrays.<org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.CompletedFoldersRecord>>asList(de.blizzy.backup.database.schema.Keys.CONSTRAINT_D);
+	}
+
+	@Override
+	public de.blizzy.backup.database.schema.tables.CompletedFolders as(java.lang.String alias) {
+		return new de.blizzy.backup.database.schema.tables.CompletedFolders(alias);
+	}
+}
@@ -9,7 +9,7 @@ package de.blizzy.backup.database.schema.tables;
 @java.lang.SuppressWarnings("all")
 public class Entries extends org.jooq.impl.UpdatableTableImpl<de.blizzy.backup.database.schema.tables.records.EntriesRecord> {
 
-	private static final long serialVersionUID = 45621598;
+	private static final long serialVersionUID = -1252213140;
 
 	/**
 	 * The singleton instance of PUBLIC.ENTRIES
@@ -62,19 +62,19 @@ public class Entries extends org.jooq.impl.UpdatableTableImpl<de.blizzy.backup.d
 	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.EntriesRecord, java.lang.Boolean> HIDDEN = createField("HIDDEN", org.jooq.impl.SQLDataType.BOOLEAN, this);
 
 	/**
-	 * The table column <code>PUBLIC.ENTRIES.NAME</code>
+	 * The table column <code>PUBLIC.ENTRIES.NAME_ID</code>
 	 */
-	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.EntriesRecord, java.lang.String> NAME = createField("NAME", org.jooq.impl.SQLDataType.VARCHAR, this);
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.EntriesRecord, java.lang.Integer> NAME_ID = createField("NAME_ID", org.jooq.impl.SQLDataType.INTEGER, this);
 
 	/**
-	 * The table column <code>PUBLIC.ENTRIES.FILE_ID</code>
+	 * The table column <code>PUBLIC.ENTRIES.NAME_PATH</code>
 	 */
-	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.EntriesRecord, java.lang.Integer> FILE_ID = createField("FILE_ID", org.jooq.impl.SQLDataType.INTEGER, this);
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.EntriesRecord, java.lang.String> NAME_PATH = createField("NAME_PATH", org.jooq.impl.SQLDataType.VARCHAR, this);
 
 	/**
-	 * The table column <code>PUBLIC.ENTRIES.NAME_LOWER</code>
+	 * The table column <code>PUBLIC.ENTRIES.FILE_ID</code>
 	 */
-	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.EntriesRecord, java.lang.String> NAME_LOWER = createField("NAME_LOWER", org.jooq.impl.SQLDataType.VARCHAR, this);
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.EntriesRecord, java.lang.Integer> FILE_ID = createField("FILE_ID", org.jooq.impl.SQLDataType.INTEGER, this);
 
 	public Entries() {
 		super("ENTRIES", de.blizzy.backup.database.schema.Public.PUBLIC);
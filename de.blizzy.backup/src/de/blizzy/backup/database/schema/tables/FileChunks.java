@@ -0,0 +1,69 @@
+/**
+ * This class is generated by jOOQ
+ */
+package de.blizzy.backup.database.schema.tables;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@java.lang.SuppressWarnings("all")
+public class FileChunks extends org.jooq.impl.UpdatableTableImpl<de.blizzy.backup.database.schema.tables.records.FileChunksRecord> {
+
+	private static final long serialVersionUID = 1808984766;
+
+	/**
+	 * The singleton instance of PUBLIC.FILE_CHUNKS
+	 */
+	public static final de.blizzy.backup.database.schema.tables.FileChunks FILE_CHUNKS = new de.blizzy.backup.database.schema.tables.FileChunks();
+
+	/**
+	 * The class holding records for this type
+	 */
+	@Override
+	public java.lang.Class<de.blizzy.backup.database.schema.tables.records.FileChunksRecord> getRecordType() {
+		return de.blizzy.backup.database.schema.tables.records.FileChunksRecord.class;
+	}
+
+	/**
+	 * The table column <code>PUBLIC.FILE_CHUNKS.FILE_ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.FileChunksRecord, java.lang.Integer> FILE_ID = createField("FILE_ID", org.jooq.impl.SQLDataType.INTEGER, this);
+
+	/**
+	 * The table column <code>PUBLIC.FILE_CHUNKS.IDX</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.FileChunksRecord, java.lang.Integer> IDX = createField("IDX", org.jooq.impl.SQLDataType.INTEGER, this);
+
+	/**
+	 * The table column <code>PUBLIC.FILE_CHUNKS.CHUNK_ID</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.FileChunksRecord, java.lang.Integer> CHUNK_ID = createField("CHUNK_ID", org.jooq.impl.SQLDataType.INTEGER, this);
+
+	public FileChunks() {
+		super("FILE_CHUNKS", de.blizzy.backup.database.schema.Public.PUBLIC);
+	}
+
+	public FileChunks(java.lang.String alias) {
+		super(alias, de.blizzy.backup.database.schema.Public.PUBLIC, de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS);
+	}
+
+	@Override
+	public org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.FileChunksRecord> getMainKey() {
+		return de.blizzy.backup.database.schema.Keys.CONSTRAINT_7B;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public java.util.List<org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.FileChunksRecord>> getKeys() {
+		return java.util.Arrays.<org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.FileChunksRecord>>asList(de.blizzy.backup.database.schema.Keys.CONSTRAINT_7B);
+	}
+
+	@Override
+	public de.blizzy.backup.database.schema.tables.FileChunks as(java.lang.String alias) {
+		return new de.blizzy.backup.database.schema.tables.FileChunks(alias);
+	}
+}
@@ -9,7 +9,7 @@ package de.blizzy.backup.database.schema.tables;
 @java.lang.SuppressWarnings("all")
 public class Files extends org.jooq.impl.UpdatableTableImpl<de.blizzy.backup.database.schema.tables.records.FilesRecord> {
 
-	private static final long serialVersionUID = 1504018593;
+	private static final long serialVersionUID = 324206529;
 
 	/**
 	 * The singleton instance of PUBLIC.FILES
@@ -51,6 +51,21 @@ public class Files extends org.jooq.impl.UpdatableTableImpl<de.blizzy.backup.dat
 	 */
 	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.FilesRecord, java.lang.Byte> COMPRESSION = createField("COMPRESSION", org.jooq.impl.SQLDataType.TINYINT, this);
 
+	/**
+	 * The table column <code>PUBLIC.FILES.PACK_OFFSET</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.FilesRecord, java.lang.Long> PACK_OFFSET = createField("PACK_OFFSET", org.jooq.impl.SQLDataType.BIGINT, this);
+
+	/**
+	 * The table column <code>PUBLIC.FILES.PACK_LENGTH</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.FilesRecord, java.lang.Long> PACK_LENGTH = createField("PACK_LENGTH", org.jooq.impl.SQLDataType.BIGINT, this);
+
+	/**
+	 * The table column <code>PUBLIC.FILES.REF_COUNT</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.FilesRecord, java.lang.Integer> REF_COUNT = createField("REF_COUNT", org.jooq.impl.SQLDataType.INTEGER, this);
+
 	public Files() {
 		super("FILES", de.blizzy.backup.database.schema.Public.PUBLIC);
 	}
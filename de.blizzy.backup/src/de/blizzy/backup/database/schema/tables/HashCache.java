@@ -0,0 +1,87 @@
+/**
+ * This class is generated by jOOQ
+ */
+package de.blizzy.backup.database.schema.tables;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@java.lang.SuppressWarnings("all")
+public class HashCache extends org.jooq.impl.UpdatableTableImpl<de.blizzy.backup.database.schema.tables.records.HashCacheRecord> {
+
+	private static final long serialVersionUID = -2017412696;
+
+	/**
+	 * The singleton instance of PUBLIC.HASH_CACHE
+	 */
+	public static final de.blizzy.backup.database.schema.tables.HashCache HASH_CACHE = new de.blizzy.backup.database.schema.tables.HashCache();
+
+	/**
+	 * The class holding records for this type
+	 */
+	@Override
+	public java.lang.Class<de.blizzy.backup.database.schema.tables.records.HashCacheRecord> getRecordType() {
+		return de.blizzy.backup.database.schema.tables.records.HashCacheRecord.class;
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.PATH</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.HashCacheRecord, java.lang.String> PATH = createField("PATH", org.jooq.impl.SQLDataType.VARCHAR, this);
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.FILE_KEY</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.HashCacheRecord, java.lang.String> FILE_KEY = createField("FILE_KEY", org.jooq.impl.SQLDataType.VARCHAR, this);
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.MODIFICATION_TIME</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.HashCacheRecord, java.sql.Timestamp> MODIFICATION_TIME = createField("MODIFICATION_TIME", org.jooq.impl.SQLDataType.TIMESTAMP, this);
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.LENGTH</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.HashCacheRecord, java.lang.Long> LENGTH = createField("LENGTH", org.jooq.impl.SQLDataType.BIGINT, this);
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.CHECKSUM</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.HashCacheRecord, java.lang.String> CHECKSUM = createField("CHECKSUM", org.jooq.impl.SQLDataType.VARCHAR, this);
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.HASH_BACKUP_ID</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.HashCacheRecord, java.lang.Integer> HASH_BACKUP_ID = createField("HASH_BACKUP_ID", org.jooq.impl.SQLDataType.INTEGER, this);
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.SEEN_BACKUP_ID</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.HashCacheRecord, java.lang.Integer> SEEN_BACKUP_ID = createField("SEEN_BACKUP_ID", org.jooq.impl.SQLDataType.INTEGER, this);
+
+	public HashCache() {
+		super("HASH_CACHE", de.blizzy.backup.database.schema.Public.PUBLIC);
+	}
+
+	public HashCache(java.lang.String alias) {
+		super(alias, de.blizzy.backup.database.schema.Public.PUBLIC, de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE);
+	}
+
+	@Override
+	public org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.HashCacheRecord> getMainKey() {
+		return de.blizzy.backup.database.schema.Keys.CONSTRAINT_8;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public java.util.List<org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.HashCacheRecord>> getKeys() {
+		return java.util.Arrays.<org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.HashCacheRecord>>asList(de.blizzy.backup.database.schema.Keys.CONSTRAINT_8);
+	}
+
+	@Override
+	public de.blizzy.backup.database.schema.tables.HashCache as(java.lang.String alias) {
+		return new de.blizzy.backup.database.schema.tables.HashCache(alias);
+	}
+}
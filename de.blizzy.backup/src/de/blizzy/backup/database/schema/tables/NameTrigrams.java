@@ -0,0 +1,64 @@
+/**
+ * This class is generated by jOOQ
+ */
+package de.blizzy.backup.database.schema.tables;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@java.lang.SuppressWarnings("all")
+public class NameTrigrams extends org.jooq.impl.UpdatableTableImpl<de.blizzy.backup.database.schema.tables.records.NameTrigramsRecord> {
+
+	private static final long serialVersionUID = 719498822;
+
+	/**
+	 * The singleton instance of PUBLIC.NAME_TRIGRAMS
+	 */
+	public static final de.blizzy.backup.database.schema.tables.NameTrigrams NAME_TRIGRAMS = new de.blizzy.backup.database.schema.tables.NameTrigrams();
+
+	/**
+	 * The class holding records for this type
+	 */
+	@Override
+	public java.lang.Class<de.blizzy.backup.database.schema.tables.records.NameTrigramsRecord> getRecordType() {
+		return de.blizzy.backup.database.schema.tables.records.NameTrigramsRecord.class;
+	}
+
+	/**
+	 * The table column <code>PUBLIC.NAME_TRIGRAMS.TRIGRAM</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.NameTrigramsRecord, java.lang.String> TRIGRAM = createField("TRIGRAM", org.jooq.impl.SQLDataType.VARCHAR, this);
+
+	/**
+	 * The table column <code>PUBLIC.NAME_TRIGRAMS.NAME_ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.NameTrigramsRecord, java.lang.Integer> NAME_ID = createField("NAME_ID", org.jooq.impl.SQLDataType.INTEGER, this);
+
+	public NameTrigrams() {
+		super("NAME_TRIGRAMS", de.blizzy.backup.database.schema.Public.PUBLIC);
+	}
+
+	public NameTrigrams(java.lang.String alias) {
+		super(alias, de.blizzy.backup.database.schema.Public.PUBLIC, de.blizzy.backup.database.schema.tables.NameTrigrams.NAME_TRIGRAMS);
+	}
+
+	@Override
+	public org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.NameTrigramsRecord> getMainKey() {
+		return de.blizzy.backup.database.schema.Keys.CONSTRAINT_CE;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public java.util.List<org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.NameTrigramsRecord>> getKeys() {
+		return java.util.Arrays.<org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.NameTrigramsRecord>>asList(de.blizzy.backup.database.schema.Keys.CONSTRAINT_CE);
+	}
+
+	@Override
+	public de.blizzy.backup.database.schema.tables.NameTrigrams as(java.lang.String alias) {
+		return new de.blizzy.backup.database.schema.tables.NameTrigrams(alias);
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * This class is generated by jOOQ
+ */
+package de.blizzy.backup.database.schema.tables;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@java.lang.SuppressWarnings("all")
+public class Names extends org.jooq.impl.UpdatableTableImpl<de.blizzy.backup.database.schema.tables.records.NamesRecord> {
+
+	private static final long serialVersionUID = 929689932;
+
+	/**
+	 * The singleton instance of PUBLIC.NAMES
+	 */
+	public static final de.blizzy.backup.database.schema.tables.Names NAMES = new de.blizzy.backup.database.schema.tables.Names();
+
+	/**
+	 * The class holding records for this type
+	 */
+	@Override
+	public java.lang.Class<de.blizzy.backup.database.schema.tables.records.NamesRecord> getRecordType() {
+		return de.blizzy.backup.database.schema.tables.records.NamesRecord.class;
+	}
+
+	/**
+	 * The table column <code>PUBLIC.NAMES.ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.NamesRecord, java.lang.Integer> ID = createField("ID", org.jooq.impl.SQLDataType.INTEGER, this);
+
+	/**
+	 * The table column <code>PUBLIC.NAMES.NAME</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.NamesRecord, java.lang.String> NAME = createField("NAME", org.jooq.impl.SQLDataType.VARCHAR, this);
+
+	/**
+	 * The table column <code>PUBLIC.NAMES.NAME_LOWER</code>
+	 */
+	public final org.jooq.TableField<de.blizzy.backup.database.schema.tables.records.NamesRecord, java.lang.String> NAME_LOWER = createField("NAME_LOWER", org.jooq.impl.SQLDataType.VARCHAR, this);
+
+	public Names() {
+		super("NAMES", de.blizzy.backup.database.schema.Public.PUBLIC);
+	}
+
+	public Names(java.lang.String alias) {
+		super(alias, de.blizzy.backup.database.schema.Public.PUBLIC, de.blizzy.backup.database.schema.tables.Names.NAMES);
+	}
+
+	@Override
+	public org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.NamesRecord> getMainKey() {
+		return de.blizzy.backup.database.schema.Keys.CONSTRAINT_4;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public java.util.List<org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.NamesRecord>> getKeys() {
+		return java.util.Arrays.<org.jooq.UniqueKey<de.blizzy.backup.database.schema.tables.records.NamesRecord>>asList(de.blizzy.backup.database.schema.Keys.CONSTRAINT_4);
+	}
+
+	@Override
+	public de.blizzy.backup.database.schema.tables.Names as(java.lang.String alias) {
+		return new de.blizzy.backup.database.schema.tables.Names(alias);
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * This class is generated by jOOQ
+ */
+package de.blizzy.backup.database.schema.tables.records;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@java.lang.SuppressWarnings("all")
+public class ChunksRecord extends org.jooq.impl.UpdatableRecordImpl<de.blizzy.backup.database.schema.tables.records.ChunksRecord> {
+
+	private static final long serialVersionUID = -951328090;
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public void setId(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS.ID, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public java.lang.Integer getId() {
+		return getValue(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS.ID);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.BACKUP_PATH</code>
+	 */
+	public void setBackupPath(java.lang.String value) {
+		setValue(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS.BACKUP_PATH, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.BACKUP_PATH</code>
+	 */
+	public java.lang.String getBackupPath() {
+		return getValue(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS.BACKUP_PATH);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.CHECKSUM</code>
+	 */
+	public void setChecksum(java.lang.String value) {
+		setValue(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS.CHECKSUM, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.CHECKSUM</code>
+	 */
+	public java.lang.String getChecksum() {
+		return getValue(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS.CHECKSUM);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.LENGTH</code>
+	 */
+	public void setLength(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS.LENGTH, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.LENGTH</code>
+	 */
+	public java.lang.Integer getLength() {
+		return getValue(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS.LENGTH);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.COMPRESSION</code>
+	 */
+	public void setCompression(java.lang.Byte value) {
+		setValue(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS.COMPRESSION, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.CHUNKS.COMPRESSION</code>
+	 */
+	public java.lang.Byte getCompression() {
+		return getValue(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS.COMPRESSION);
+	}
+
+	/**
+	 * Create a detached ChunksRecord
+	 */
+	public ChunksRecord() {
+		super(de.blizzy.backup.database.schema.tables.Chunks.CHUNKS);
+	}
+}
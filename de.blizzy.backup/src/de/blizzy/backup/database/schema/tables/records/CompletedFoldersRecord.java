@@ -0,0 +1,52 @@
+/**
+ * This class is generated by jOOQ
+ */
+package de.blizzy.backup.database.schema.tables.records;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@java.lang.SuppressWarnings("all")
+public class CompletedFoldersRecord extends org.jooq.impl.UpdatableRecordImpl<de.blizzy.backup.database.schema.tables.records.CompletedFoldersRecord> {
+
+	private static final long serialVersionUID = 817644019;
+
+	/**
+	 * The table column <code>PUBLIC.COMPLETED_FOLDERS.ENTRY_ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public void setEntryId(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.CompletedFolders.COMPLETED_FOLDERS.ENTRY_ID, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.COMPLETED_FOLDERS.ENTRY_ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public java.lang.Integer getEntryId() {
+		return getValue(de.blizzy.backup.database.schema.tables.CompletedFolders.COMPLETED_FOLDERS.ENTRY_ID);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.COMPLETED_FOLDERS.BACKUP_ID</code>
+	 */
+	public void setBackupId(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.CompletedFolders.COMPLETED_FOLDERS.BACKUP_ID, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.COMPLETED_FOLDERS.BACKUP_ID</code>
+	 */
+	public java.lang.Integer getBackupId() {
+		return getValue(de.blizzy.backup.database.schema.tables.CompletedFolders.COMPLETED_FOLDERS.BACKUP_ID);
+	}
+
+	/**
+	 * Create a detached CompletedFoldersRecord
+	 */
+	public CompletedFoldersRecord() {
+		super(de.blizzy.backup.database.schema.tables.CompletedFolders.COMPLETED_FOLDERS);
+	}
+}
@@ -9,7 +9,7 @@ package de.blizzy.backup.database.schema.tables.records;
 @java.lang.SuppressWarnings("all")
 public class EntriesRecord extends org.jooq.impl.UpdatableRecordImpl<de.blizzy.backup.database.schema.tables.records.EntriesRecord> {
 
-	private static final long serialVersionUID = 1848954224;
+	private static final long serialVersionUID = 554573074;
 
 	/**
 	 * The table column <code>PUBLIC.ENTRIES.ID</code>
@@ -114,45 +114,45 @@ public class EntriesRecord extends org.jooq.impl.UpdatableRecordImpl<de.blizzy.b
 	}
 
 	/**
-	 * The table column <code>PUBLIC.ENTRIES.NAME</code>
+	 * The table column <code>PUBLIC.ENTRIES.NAME_ID</code>
 	 */
-	public void setName(java.lang.String value) {
-		setValue(de.blizzy.backup.database.schema.tables.Entries.ENTRIES.NAME, value);
+	public void setNameId(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.Entries.ENTRIES.NAME_ID, value);
 	}
 
 	/**
-	 * The table column <code>PUBLIC.ENTRIES.NAME</code>
+	 * The table column <code>PUBLIC.ENTRIES.NAME_ID</code>
 	 */
-	public java.lang.String getName() {
-		return getValue(de.blizzy.backup.database.schema.tables.Entries.ENTRIES.NAME);
+	public java.lang.Integer getNameId() {
+		return getValue(de.blizzy.backup.database.schema.tables.Entries.ENTRIES.NAME_ID);
 	}
 
 	/**
-	 * The table column <code>PUBLIC.ENTRIES.FILE_ID</code>
+	 * The table column <code>PUBLIC.ENTRIES.NAME_PATH</code>
 	 */
-	public void setFileId(java.lang.Integer value) {
-		setValue(de.blizzy.backup.database.schema.tables.Entries.ENTRIES.FILE_ID, value);
+	public void setNamePath(java.lang.String value) {
+		setValue(de.blizzy.backup.database.schema.tables.Entries.ENTRIES.NAME_PATH, value);
 	}
 
 	/**
-	 * The table column <code>PUBLIC.ENTRIES.FILE_ID</code>
+	 * The table column <code>PUBLIC.ENTRIES.NAME_PATH</code>
 	 */
-	public java.lang.Integer getFileId() {
-		return getValue(de.blizzy.backup.database.schema.tables.Entries.ENTRIES.FILE_ID);
+	public java.lang.String getNamePath() {
+		return getValue(de.blizzy.backup.database.schema.tables.Entries.ENTRIES.NAME_PATH);
 	}
 
 	/**
-	 * The table column <code>PUBLIC.ENTRIES.NAME_LOWER</code>
+	 * The table column <code>PUBLIC.ENTRIES.FILE_ID</code>
 	 */
-	public void setNameLower(java.lang.String value) {
-		setValue(de.blizzy.backup.database.schema.tables.Entries.ENTRIES.NAME_LOWER, value);
+	public void setFileId(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.Entries.ENTRIES.FILE_ID, value);
 	}
 
 	/**
-	 * The table column <code>PUBLIC.ENTRIES.NAME_LOWER</code>
+	 * The table column <code>PUBLIC.ENTRIES.FILE_ID</code>
 	 */
-	public java.lang.String getNameLower() {
-		return getValue(de.blizzy.backup.database.schema.tables.Entries.ENTRIES.NAME_LOWER);
+	public java.lang.Integer getFileId() {
+		return getValue(de.blizzy.backup.database.schema.tables.Entries.ENTRIES.FILE_ID);
 	}
 
 	/**
@@ -0,0 +1,70 @@
+/**
+ * This class is generated by jOOQ
+ */
+package de.blizzy.backup.database.schema.tables.records;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@java.lang.SuppressWarnings("all")
+public class FileChunksRecord extends org.jooq.impl.UpdatableRecordImpl<de.blizzy.backup.database.schema.tables.records.FileChunksRecord> {
+
+	private static final long serialVersionUID = -474335639;
+
+	/**
+	 * The table column <code>PUBLIC.FILE_CHUNKS.FILE_ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public void setFileId(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS.FILE_ID, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.FILE_CHUNKS.FILE_ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public java.lang.Integer getFileId() {
+		return getValue(de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS.FILE_ID);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.FILE_CHUNKS.IDX</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public void setIdx(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS.IDX, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.FILE_CHUNKS.IDX</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public java.lang.Integer getIdx() {
+		return getValue(de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS.IDX);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.FILE_CHUNKS.CHUNK_ID</code>
+	 */
+	public void setChunkId(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS.CHUNK_ID, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.FILE_CHUNKS.CHUNK_ID</code>
+	 */
+	public java.lang.Integer getChunkId() {
+		return getValue(de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS.CHUNK_ID);
+	}
+
+	/**
+	 * Create a detached FileChunksRecord
+	 */
+	public FileChunksRecord() {
+		super(de.blizzy.backup.database.schema.tables.FileChunks.FILE_CHUNKS);
+	}
+}
@@ -9,7 +9,7 @@ package de.blizzy.backup.database.schema.tables.records;
 @java.lang.SuppressWarnings("all")
 public class FilesRecord extends org.jooq.impl.UpdatableRecordImpl<de.blizzy.backup.database.schema.tables.records.FilesRecord> {
 
-	private static final long serialVersionUID = -1754214466;
+	private static final long serialVersionUID = -498370174;
 
 	/**
 	 * The table column <code>PUBLIC.FILES.ID</code>
@@ -85,6 +85,48 @@ public class FilesRecord extends org.jooq.impl.UpdatableRecordImpl<de.blizzy.bac
 		return getValue(de.blizzy.backup.database.schema.tables.Files.FILES.COMPRESSION);
 	}
 
+	/**
+	 * The table column <code>PUBLIC.FILES.PACK_OFFSET</code>
+	 */
+	public void setPackOffset(java.lang.Long value) {
+		setValue(de.blizzy.backup.database.schema.tables.Files.FILES.PACK_OFFSET, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.FILES.PACK_OFFSET</code>
+	 */
+	public java.lang.Long getPackOffset() {
+		return getValue(de.blizzy.backup.database.schema.tables.Files.FILES.PACK_OFFSET);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.FILES.PACK_LENGTH</code>
+	 */
+	public void setPackLength(java.lang.Long value) {
+		setValue(de.blizzy.backup.database.schema.tables.Files.FILES.PACK_LENGTH, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.FILES.PACK_LENGTH</code>
+	 */
+	public java.lang.Long getPackLength() {
+		return getValue(de.blizzy.backup.database.schema.tables.Files.FILES.PACK_LENGTH);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.FILES.REF_COUNT</code>
+	 */
+	public void setRefCount(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.Files.FILES.REF_COUNT, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.FILES.REF_COUNT</code>
+	 */
+	public java.lang.Integer getRefCount() {
+		return getValue(de.blizzy.backup.database.schema.tables.Files.FILES.REF_COUNT);
+	}
+
 	/**
 	 * Create a detached FilesRecord
 	 */
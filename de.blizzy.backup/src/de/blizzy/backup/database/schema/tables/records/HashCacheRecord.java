@@ -0,0 +1,122 @@
+/**
+ * This class is generated by jOOQ
+ */
+package de.blizzy.backup.database.schema.tables.records;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@java.lang.SuppressWarnings("all")
+public class HashCacheRecord extends org.jooq.impl.UpdatableRecordImpl<de.blizzy.backup.database.schema.tables.records.HashCacheRecord> {
+
+	private static final long serialVersionUID = -429611397;
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.PATH</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public void setPath(java.lang.String value) {
+		setValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.PATH, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.PATH</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public java.lang.String getPath() {
+		return getValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.PATH);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.FILE_KEY</code>
+	 */
+	public void setFileKey(java.lang.String value) {
+		setValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.FILE_KEY, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.FILE_KEY</code>
+	 */
+	public java.lang.String getFileKey() {
+		return getValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.FILE_KEY);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.MODIFICATION_TIME</code>
+	 */
+	public void setModificationTime(java.sql.Timestamp value) {
+		setValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.MODIFICATION_TIME, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.MODIFICATION_TIME</code>
+	 */
+	public java.sql.Timestamp getModificationTime() {
+		return getValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.MODIFICATION_TIME);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.LENGTH</code>
+	 */
+	public void setLength(java.lang.Long value) {
+		setValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.LENGTH, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.LENGTH</code>
+	 */
+	public java.lang.Long getLength() {
+		return getValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.LENGTH);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.CHECKSUM</code>
+	 */
+	public void setChecksum(java.lang.String value) {
+		setValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.CHECKSUM, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.CHECKSUM</code>
+	 */
+	public java.lang.String getChecksum() {
+		return getValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.CHECKSUM);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.HASH_BACKUP_ID</code>
+	 */
+	public void setHashBackupId(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.HASH_BACKUP_ID, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.HASH_BACKUP_ID</code>
+	 */
+	public java.lang.Integer getHashBackupId() {
+		return getValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.HASH_BACKUP_ID);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.SEEN_BACKUP_ID</code>
+	 */
+	public void setSeenBackupId(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.SEEN_BACKUP_ID, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.HASH_CACHE.SEEN_BACKUP_ID</code>
+	 */
+	public java.lang.Integer getSeenBackupId() {
+		return getValue(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE.SEEN_BACKUP_ID);
+	}
+
+	/**
+	 * Create a detached HashCacheRecord
+	 */
+	public HashCacheRecord() {
+		super(de.blizzy.backup.database.schema.tables.HashCache.HASH_CACHE);
+	}
+}
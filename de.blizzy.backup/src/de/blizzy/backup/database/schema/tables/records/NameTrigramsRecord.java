@@ -0,0 +1,56 @@
+/**
+ * This class is generated by jOOQ
+ */
+package de.blizzy.backup.database.schema.tables.records;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@java.lang.SuppressWarnings("all")
+public class NameTrigramsRecord extends org.jooq.impl.UpdatableRecordImpl<de.blizzy.backup.database.schema.tables.records.NameTrigramsRecord> {
+
+	private static final long serialVersionUID = 596634961;
+
+	/**
+	 * The table column <code>PUBLIC.NAME_TRIGRAMS.TRIGRAM</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public void setTrigram(java.lang.String value) {
+		setValue(de.blizzy.backup.database.schema.tables.NameTrigrams.NAME_TRIGRAMS.TRIGRAM, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.NAME_TRIGRAMS.TRIGRAM</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public java.lang.String getTrigram() {
+		return getValue(de.blizzy.backup.database.schema.tables.NameTrigrams.NAME_TRIGRAMS.TRIGRAM);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.NAME_TRIGRAMS.NAME_ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public void setNameId(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.NameTrigrams.NAME_TRIGRAMS.NAME_ID, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.NAME_TRIGRAMS.NAME_ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public java.lang.Integer getNameId() {
+		return getValue(de.blizzy.backup.database.schema.tables.NameTrigrams.NAME_TRIGRAMS.NAME_ID);
+	}
+
+	/**
+	 * Create a detached NameTrigramsRecord
+	 */
+	public NameTrigramsRecord() {
+		super(de.blizzy.backup.database.schema.tables.NameTrigrams.NAME_TRIGRAMS);
+	}
+}
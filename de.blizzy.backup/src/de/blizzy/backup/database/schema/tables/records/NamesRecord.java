@@ -0,0 +1,66 @@
+/**
+ * This class is generated by jOOQ
+ */
+package de.blizzy.backup.database.schema.tables.records;
+
+/**
+ * This class is generated by jOOQ.
+ */
+@java.lang.SuppressWarnings("all")
+public class NamesRecord extends org.jooq.impl.UpdatableRecordImpl<de.blizzy.backup.database.schema.tables.records.NamesRecord> {
+
+	private static final long serialVersionUID = -813534786;
+
+	/**
+	 * The table column <code>PUBLIC.NAMES.ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public void setId(java.lang.Integer value) {
+		setValue(de.blizzy.backup.database.schema.tables.Names.NAMES.ID, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.NAMES.ID</code>
+	 * <p>
+	 * This column is part of the table's PRIMARY KEY
+	 */
+	public java.lang.Integer getId() {
+		return getValue(de.blizzy.backup.database.schema.tables.Names.NAMES.ID);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.NAMES.NAME</code>
+	 */
+	public void setName(java.lang.String value) {
+		setValue(de.blizzy.backup.database.schema.tables.Names.NAMES.NAME, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.NAMES.NAME</code>
+	 */
+	public java.lang.String getName() {
+		return getValue(de.blizzy.backup.database.schema.tables.Names.NAMES.NAME);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.NAMES.NAME_LOWER</code>
+	 */
+	public void setNameLower(java.lang.String value) {
+		setValue(de.blizzy.backup.database.schema.tables.Names.NAMES.NAME_LOWER, value);
+	}
+
+	/**
+	 * The table column <code>PUBLIC.NAMES.NAME_LOWER</code>
+	 */
+	public java.lang.String getNameLower() {
+		return getValue(de.blizzy.backup.database.schema.tables.Names.NAMES.NAME_LOWER);
+	}
+
+	/**
+	 * Create a detached NamesRecord
+	 */
+	public NamesRecord() {
+		super(de.blizzy.backup.database.schema.tables.Names.NAMES);
+	}
+}
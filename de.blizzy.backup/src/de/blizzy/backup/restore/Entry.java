@@ -31,12 +31,15 @@ class Entry {
 	Date modificationTime;
 	boolean hidden;
 	long length;
+	int fileId;
 	String backupPath;
+	long packOffset;
+	long packLength;
 	Compression compression;
 	String fullPath;
 
 	Entry(int id, int parentId, String name, EntryType type, Date creationTime, Date modificationTime, boolean hidden,
-			long length, String backupPath, Compression compression) {
+			long length, int fileId, String backupPath, long packOffset, long packLength, Compression compression) {
 
 		this.id = id;
 		this.parentId = parentId;
@@ -46,7 +49,10 @@ class Entry {
 		this.modificationTime = modificationTime;
 		this.hidden = hidden;
 		this.length = length;
+		this.fileId = fileId;
 		this.backupPath = backupPath;
+		this.packOffset = packOffset;
+		this.packLength = packLength;
 		this.compression = compression;
 	}
 }
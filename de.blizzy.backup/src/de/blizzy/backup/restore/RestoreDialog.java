@@ -17,9 +17,7 @@ along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package de.blizzy.backup.restore;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
@@ -32,7 +30,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -84,9 +86,11 @@ import org.eclipse.swt.widgets.Text;
 import org.jooq.Condition;
 import org.jooq.Cursor;
 import org.jooq.Record;
+import org.jooq.SelectJoinStep;
 import org.jooq.exception.DataAccessException;
 
 import de.blizzy.backup.BackupApplication;
+import de.blizzy.backup.BackupFileReader;
 import de.blizzy.backup.BackupPlugin;
 import de.blizzy.backup.Compression;
 import de.blizzy.backup.FileAttributes;
@@ -94,7 +98,6 @@ import de.blizzy.backup.IStorageInterceptor;
 import de.blizzy.backup.Messages;
 import de.blizzy.backup.StorageInterceptorDescriptor;
 import de.blizzy.backup.Utils;
-import de.blizzy.backup.Utils.IFileOrFolderEntry;
 import de.blizzy.backup.database.Database;
 import de.blizzy.backup.database.EntryType;
 import de.blizzy.backup.database.schema.Tables;
@@ -103,6 +106,14 @@ import de.blizzy.backup.settings.Settings;
 import de.blizzy.backup.vfs.filesystem.FileSystemFileOrFolder;
 
 public class RestoreDialog extends Dialog {
+	private static final long SEARCH_DELAY = 300;
+	private static final int SEARCH_PAGE_SIZE = 200;
+	// bounds the work of each query so that the dialog's own queries don't wait long for a running search
+	private static final int SEARCH_NAMES_PAGE_SIZE = 1000;
+	// trigrams contained in more names than this are counted as equally common
+	private static final int MAX_TRIGRAM_NAMES = 10000;
+	private static final String MORE_SEARCH_RESULTS_LINK = "more"; //$NON-NLS-1$
+
 	private Settings settings;
 	private List<Backup> backups = new ArrayList<>();
 	private Database database;
@@ -114,6 +125,13 @@ public class RestoreDialog extends Dialog {
 	private Link currentFolderLink;
 	private Timer timer = new Timer();
 	private TimerTask searchTimerTask;
+	// incremented to cancel the running search
+	private volatile int searchGeneration;
+	private List<Entry> searchResults = Collections.emptyList();
+	private SearchPosition searchPosition;
+	// searches overlap while older ones notice that they have been canceled
+	private int numRunningSearches;
+	private org.eclipse.swt.graphics.Cursor searchOldCursor;
 	private List<IStorageInterceptor> storageInterceptors = new ArrayList<>();
 	private Boolean alwaysRestoreFromOlderBackups;
 
@@ -425,6 +443,11 @@ public class RestoreDialog extends Dialog {
 		currentFolderLink.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
+				if (e.text.equals(MORE_SEARCH_RESULTS_LINK)) {
+					startSearchTimer(searchText.getText(), searchPosition, 0);
+					return;
+				}
+
 				try {
 					Backup backup = (Backup) ((IStructuredSelection) backupsViewer.getSelection()).getFirstElement();
 					int pos = e.text.indexOf('_');
@@ -480,11 +503,13 @@ public class RestoreDialog extends Dialog {
 	}
 
 	private void showEntries(Backup backup, int parentFolderId) {
+		searchGeneration++;
+
 		List<Entry> entries = Collections.emptyList();
 		Cursor<Record> cursor = null;
 		try {
-			cursor = getEntriesCursor(backup.id, parentFolderId, null, -1);
-			entries = getEntries(cursor, false);
+			cursor = getEntriesCursor(backup.id, parentFolderId, -1);
+			entries = getEntries(cursor);
 		} catch (DataAccessException e) {
 			BackupPlugin.getDefault().logError("error while loading entries", e); //$NON-NLS-1$
 		} finally {
@@ -504,7 +529,7 @@ public class RestoreDialog extends Dialog {
 
 		String folder = getFolderLink(parentFolderId);
 		currentFolderLink.setText(StringUtils.isNotBlank(folder) ?
-				Messages.Label_CurrentFolder + ": " + getFolderLink(parentFolderId) : //$NON-NLS-1$
+				Messages.Label_CurrentFolder + ": " + folder : //$NON-NLS-1$
 				StringUtils.EMPTY);
 	}
 
@@ -513,74 +538,238 @@ public class RestoreDialog extends Dialog {
 			return null;
 		}
 
-		Record record = database.factory()
-			.select(Tables.ENTRIES.NAME, Tables.ENTRIES.PARENT_ID)
+		Record folderRecord = database.factory()
+			.select(Tables.ENTRIES.BACKUP_ID, Tables.ENTRIES.NAME_PATH)
 			.from(Tables.ENTRIES)
 			.where(Tables.ENTRIES.ID.equal(Integer.valueOf(folderId)))
 			.fetchOne();
-		String name = record.getValue(Tables.ENTRIES.NAME);
-		Integer parentFolderId = record.getValue(Tables.ENTRIES.PARENT_ID);
-		String parentFolder = getFolderLink((parentFolderId != null) ? parentFolderId.intValue() : -1);
-		String part = "<a href=\"" + folderId + "_" + ((parentFolderId != null) ? parentFolderId.intValue() : -1) + //$NON-NLS-1$ //$NON-NLS-2$
-			"\">" + name + "</a>"; //$NON-NLS-1$ //$NON-NLS-2$
-		return (parentFolder != null) ? parentFolder + File.separator + part : part;
-	}
+		// the parent folders' name paths are prefixes of the folder's name path
+		List<String> namePaths = new ArrayList<>();
+		for (String namePath = folderRecord.getValue(Tables.ENTRIES.NAME_PATH); namePath != null;
+				namePath = Utils.getParentNamePath(namePath)) {
 
-	private String getFolderPath(int folderId) {
-		if (folderId <= 0) {
-			return null;
+			namePaths.add(0, namePath);
 		}
+		Map<String, Record> records = new HashMap<>();
+		for (Record record : database.factory()
+				.select(Tables.ENTRIES.ID, Tables.ENTRIES.PARENT_ID, Tables.ENTRIES.NAME_PATH, Tables.NAMES.NAME)
+				.from(Tables.ENTRIES)
+				.join(Tables.NAMES)
+					.on(Tables.NAMES.ID.equal(Tables.ENTRIES.NAME_ID))
+				.where(Tables.ENTRIES.NAME_PATH.in(namePaths),
+						Tables.ENTRIES.BACKUP_ID.equal(folderRecord.getValue(Tables.ENTRIES.BACKUP_ID)))
+				.fetch()) {
 
-		Record record = database.factory()
-			.select(Tables.ENTRIES.NAME, Tables.ENTRIES.PARENT_ID)
-			.from(Tables.ENTRIES)
-			.where(Tables.ENTRIES.ID.equal(Integer.valueOf(folderId)))
-			.fetchOne();
-		String name = record.getValue(Tables.ENTRIES.NAME);
-		Integer parentFolderId = record.getValue(Tables.ENTRIES.PARENT_ID);
-		String parentPath = getFolderPath((parentFolderId != null) ? parentFolderId.intValue() : -1);
-		return (parentPath != null) ? parentPath + File.separator + name : name;
+			records.put(record.getValue(Tables.ENTRIES.NAME_PATH), record);
+		}
+		StringBuilder buf = new StringBuilder();
+		for (String namePath : namePaths) {
+			Record record = records.get(namePath);
+			if (record == null) {
+				continue;
+			}
+			Integer parentFolderId = record.getValue(Tables.ENTRIES.PARENT_ID);
+			if (buf.length() > 0) {
+				buf.append(File.separator);
+			}
+			buf.append("<a href=\"").append(record.getValue(Tables.ENTRIES.ID)).append("_") //$NON-NLS-1$ //$NON-NLS-2$
+				.append((parentFolderId != null) ? parentFolderId.intValue() : -1)
+				.append("\">").append(record.getValue(Tables.NAMES.NAME)).append("</a>"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return buf.toString();
 	}
 
-	private Cursor<Record> getEntriesCursor(int backupId, int parentFolderId, String searchText, int entryId) {
-		Condition searchCondition;
+	private Cursor<Record> getEntriesCursor(int backupId, int parentFolderId, int entryId) {
+		Condition condition;
 		if (entryId > 0) {
-			searchCondition = Tables.ENTRIES.ID.equal(Integer.valueOf(entryId));
-		} else if (StringUtils.isNotBlank(searchText)) {
-			searchCondition = Tables.ENTRIES.NAME_LOWER.like("%" + searchText.toLowerCase() + "%"); //$NON-NLS-1$ //$NON-NLS-2$
+			condition = Tables.ENTRIES.ID.equal(Integer.valueOf(entryId));
 		} else if (parentFolderId > 0) {
-			searchCondition = Tables.ENTRIES.PARENT_ID.equal(Integer.valueOf(parentFolderId));
+			condition = Tables.ENTRIES.PARENT_ID.equal(Integer.valueOf(parentFolderId));
 		} else {
-			searchCondition = Tables.ENTRIES.PARENT_ID.isNull();
+			condition = Tables.ENTRIES.PARENT_ID.isNull();
+		}
+		return selectEntries()
+			.where(Tables.ENTRIES.BACKUP_ID.equal(Integer.valueOf(backupId)),
+					condition)
+			.orderBy(Tables.NAMES.NAME.asc())
+			.fetchLazy();
+	}
+
+	// returns one more entry than fits on the page to tell whether there are more results,
+	// or null if the search has been canceled; the position is moved to the end of the page
+	private List<Entry> search(int backupId, String searchText, SearchPosition position, int generation) {
+		List<Entry> entries = new ArrayList<>();
+		String text = searchText.toLowerCase();
+		Set<String> trigrams = Utils.getTrigrams(text);
+		Map<String, Integer> trigramCounts = getTrigramCounts(trigrams);
+		if (trigramCounts.containsValue(Integer.valueOf(0))) {
+			// some part of the text does not occur in any name
+			return entries;
+		}
+
+		// the rarest trigram narrows down the names the most, even if it is common
+		String trigram = null;
+		int trigramCount = Integer.MAX_VALUE;
+		for (Map.Entry<String, Integer> entry : trigramCounts.entrySet()) {
+			if (entry.getValue().intValue() < trigramCount) {
+				trigram = entry.getKey();
+				trigramCount = entry.getValue().intValue();
+			}
 		}
+		int maxNameId = 0;
+		if (trigram == null) {
+			Integer id = database.factory().select(Tables.NAMES.ID.max()).from(Tables.NAMES).fetchOne(Tables.NAMES.ID.max());
+			maxNameId = (id != null) ? id.intValue() : 0;
+		}
+
+		Condition nameCondition = Tables.NAMES.NAME_LOWER.like("%" + text + "%"); //$NON-NLS-1$ //$NON-NLS-2$
+		List<String> parentNamePaths = new ArrayList<>();
+		int lastNameId = position.lastNameId;
+		boolean allNamesChecked = false;
+		while (!allNamesChecked && (entries.size() <= SEARCH_PAGE_SIZE)) {
+			if (generation != searchGeneration) {
+				return null;
+			}
+
+			// names are checked in ranges of IDs
+			int maxChunkNameId;
+			List<Integer> nameIds;
+			if (trigram != null) {
+				Integer nameId = database.factory()
+					.select(Tables.NAME_TRIGRAMS.NAME_ID)
+					.from(Tables.NAME_TRIGRAMS)
+					.where(Tables.NAME_TRIGRAMS.TRIGRAM.equal(trigram),
+							Tables.NAME_TRIGRAMS.NAME_ID.greaterThan(Integer.valueOf(lastNameId)))
+					// ordered like the primary key so that H2 can stop reading at the limit
+					.orderBy(Tables.NAME_TRIGRAMS.TRIGRAM.asc(), Tables.NAME_TRIGRAMS.NAME_ID.asc())
+					.limit(SEARCH_NAMES_PAGE_SIZE - 1, 1)
+					.fetchOne(Tables.NAME_TRIGRAMS.NAME_ID);
+				allNamesChecked = nameId == null;
+				maxChunkNameId = (nameId != null) ? nameId.intValue() : Integer.MAX_VALUE;
+				nameIds = database.factory()
+					.select(Tables.NAMES.ID)
+					.from(Tables.NAME_TRIGRAMS)
+					.join(Tables.NAMES)
+						.on(Tables.NAMES.ID.equal(Tables.NAME_TRIGRAMS.NAME_ID))
+					.where(Tables.NAME_TRIGRAMS.TRIGRAM.equal(trigram),
+							Tables.NAME_TRIGRAMS.NAME_ID.between(Integer.valueOf(lastNameId + 1),
+									Integer.valueOf(maxChunkNameId)),
+							nameCondition)
+					.fetch(Tables.NAMES.ID);
+			} else {
+				// text shorter than a trigram, so all names are checked
+				maxChunkNameId = lastNameId + SEARCH_NAMES_PAGE_SIZE;
+				allNamesChecked = maxChunkNameId >= maxNameId;
+				nameIds = database.factory()
+					.select(Tables.NAMES.ID)
+					.from(Tables.NAMES)
+					.where(Tables.NAMES.ID.between(Integer.valueOf(lastNameId + 1), Integer.valueOf(maxChunkNameId)),
+							nameCondition)
+					.fetch(Tables.NAMES.ID);
+			}
+			int chunkLastNameId = lastNameId;
+			lastNameId = maxChunkNameId;
+			if (nameIds.isEmpty()) {
+				continue;
+			}
+
+			Condition condition = Tables.ENTRIES.BACKUP_ID.equal(Integer.valueOf(backupId));
+			if ((position.lastName != null) && (chunkLastNameId == position.lastNameId)) {
+				// continue after the last entry of the previous page
+				condition = condition.and(Tables.NAMES.NAME.greaterThan(position.lastName)
+						.or(Tables.NAMES.NAME.equal(position.lastName)
+								.and(Tables.ENTRIES.ID.greaterThan(Integer.valueOf(position.lastEntryId)))));
+			}
+			Cursor<Record> cursor = null;
+			try {
+				cursor = selectEntries()
+					.where(Tables.ENTRIES.NAME_ID.in(Utils.inline(nameIds)), condition)
+					.orderBy(Tables.NAMES.NAME.asc(), Tables.ENTRIES.ID.asc())
+					.fetchLazy();
+				while (cursor.hasNext() && (entries.size() <= SEARCH_PAGE_SIZE)) {
+					if (generation != searchGeneration) {
+						return null;
+					}
+					Record record = cursor.fetchOne();
+					Entry entry = toEntry(record);
+					entries.add(entry);
+					parentNamePaths.add(Utils.getParentNamePath(record.getValue(Tables.ENTRIES.NAME_PATH)));
+					if (entries.size() == SEARCH_PAGE_SIZE) {
+						position.lastNameId = chunkLastNameId;
+						position.lastName = entry.name;
+						position.lastEntryId = entry.id;
+					}
+				}
+			} finally {
+				database.closeQuietly(cursor);
+			}
+		}
+		setFullPaths(entries, parentNamePaths);
+		return entries;
+	}
+
+	private void setFullPaths(List<Entry> entries, List<String> parentNamePaths) {
+		// root entries have no parent name path
+		List<String> namePaths = new ArrayList<>();
+		for (String parentNamePath : parentNamePaths) {
+			if (parentNamePath != null) {
+				namePaths.add(parentNamePath);
+			}
+		}
+		Iterator<List<String>> names = Utils.getNames(namePaths, database).iterator();
+		for (int i = 0; i < entries.size(); i++) {
+			if (parentNamePaths.get(i) != null) {
+				entries.get(i).fullPath = StringUtils.join(names.next(), File.separator);
+			}
+		}
+	}
+
+	// counts stop after MAX_TRIGRAM_NAMES + 1 names so that common trigrams are not counted in full
+	private Map<String, Integer> getTrigramCounts(Set<String> trigrams) {
+		Map<String, Integer> trigramCounts = new HashMap<>();
+		for (String trigram : trigrams) {
+			Integer count = database.factory()
+				.selectCount()
+				.from(database.factory()
+						.selectOne()
+						.from(Tables.NAME_TRIGRAMS)
+						.where(Tables.NAME_TRIGRAMS.TRIGRAM.equal(trigram))
+						.limit(MAX_TRIGRAM_NAMES + 1))
+				.fetchOne()
+				.getValueAsInteger(0);
+			trigramCounts.put(trigram, count);
+		}
+		return trigramCounts;
+	}
+
+	private SelectJoinStep selectEntries() {
 		return database.factory()
-			.select(Tables.ENTRIES.ID, Tables.ENTRIES.PARENT_ID, Tables.ENTRIES.NAME, Tables.ENTRIES.TYPE,
-					Tables.ENTRIES.CREATION_TIME, Tables.ENTRIES.MODIFICATION_TIME, Tables.ENTRIES.HIDDEN,
-					Tables.FILES.LENGTH, Tables.FILES.BACKUP_PATH, Tables.FILES.COMPRESSION)
+			.select(Tables.ENTRIES.ID, Tables.ENTRIES.PARENT_ID, Tables.NAMES.NAME, Tables.ENTRIES.NAME_PATH,
+					Tables.ENTRIES.TYPE, Tables.ENTRIES.CREATION_TIME, Tables.ENTRIES.MODIFICATION_TIME,
+					Tables.ENTRIES.HIDDEN, Tables.ENTRIES.FILE_ID, Tables.FILES.LENGTH, Tables.FILES.BACKUP_PATH,
+					Tables.FILES.PACK_OFFSET, Tables.FILES.PACK_LENGTH, Tables.FILES.COMPRESSION)
 			.from(Tables.ENTRIES)
+			.join(Tables.NAMES)
+				.on(Tables.NAMES.ID.equal(Tables.ENTRIES.NAME_ID))
 			.leftOuterJoin(Tables.FILES)
-				.on(Tables.FILES.ID.equal(Tables.ENTRIES.FILE_ID))
-			.where(Tables.ENTRIES.BACKUP_ID.equal(Integer.valueOf(backupId)),
-					searchCondition)
-			.orderBy(Tables.ENTRIES.NAME.asc())
-			.fetchLazy();
+				.on(Tables.FILES.ID.equal(Tables.ENTRIES.FILE_ID));
 	}
 
-	private List<Entry> getEntries(Cursor<Record> cursor, boolean fullPaths) {
+	private List<Entry> getEntries(Cursor<Record> cursor) {
 		List<Entry> entries = new ArrayList<>();
 		while (cursor.hasNext()) {
 			Record record = cursor.fetchOne();
-			Entry entry = toEntry(record, fullPaths);
+			Entry entry = toEntry(record);
 			entries.add(entry);
 		}
 		return entries;
 	}
 
-	private Entry toEntry(Record record, boolean fullPaths) {
+	private Entry toEntry(Record record) {
 		int id = record.getValue(Tables.ENTRIES.ID).intValue();
 		Integer parentIdInt = record.getValue(Tables.ENTRIES.PARENT_ID);
 		int parentId = (parentIdInt != null) ? parentIdInt.intValue() : -1;
-		String name = record.getValue(Tables.ENTRIES.NAME);
+		String name = record.getValue(Tables.NAMES.NAME);
 		EntryType type = EntryType.fromValue(record.getValue(Tables.ENTRIES.TYPE).intValue());
 		Timestamp createTime = record.getValue(Tables.ENTRIES.CREATION_TIME);
 		Date creationTime = (createTime != null) ? new Date(createTime.getTime()) : null;
@@ -589,107 +778,55 @@ public class RestoreDialog extends Dialog {
 		boolean hidden = record.getValue(Tables.ENTRIES.HIDDEN).booleanValue();
 		Long lengthLong = record.getValue(Tables.FILES.LENGTH);
 		long length = (lengthLong != null) ? lengthLong.longValue() : -1;
+		Integer fileIdInt = record.getValue(Tables.ENTRIES.FILE_ID);
+		int fileId = (fileIdInt != null) ? fileIdInt.intValue() : -1;
 		String backupPath = record.getValue(Tables.FILES.BACKUP_PATH);
+		Long packOffsetLong = record.getValue(Tables.FILES.PACK_OFFSET);
+		long packOffset = (packOffsetLong != null) ? packOffsetLong.longValue() : -1;
+		Long packLengthLong = record.getValue(Tables.FILES.PACK_LENGTH);
+		long packLength = (packLengthLong != null) ? packLengthLong.longValue() : -1;
 		Byte compressionByte = record.getValue(Tables.FILES.COMPRESSION);
 		Compression compression = (compressionByte != null) ? Compression.fromValue(compressionByte.intValue()) : null;
-		Entry entry = new Entry(id, parentId, name, type, creationTime, modificationTime, hidden, length, backupPath,
-				compression);
-		if (fullPaths) {
-			entry.fullPath = getFolderPath(parentId);
-		}
-		return entry;
+		return new Entry(id, parentId, name, type, creationTime, modificationTime, hidden, length, fileId,
+				backupPath, packOffset, packLength, compression);
 	}
 
-	private Entry findInOlderBackups(Entry entry) throws IOException {
-		Date runTime = new Date(database.factory()
-			.select(Tables.BACKUPS.RUN_TIME)
+	private Entry findInOlderBackups(Entry entry) {
+		Record record = database.factory()
+			.select(Tables.ENTRIES.NAME_PATH, Tables.BACKUPS.RUN_TIME)
 			.from(Tables.ENTRIES)
 			.join(Tables.BACKUPS)
 				.on(Tables.BACKUPS.ID.equal(Tables.ENTRIES.BACKUP_ID))
 			.where(Tables.ENTRIES.ID.equal(Integer.valueOf(entry.id)))
-			.fetchOne()
-			.getValue(Tables.BACKUPS.RUN_TIME).getTime());
-		Cursor<Record> cursor = database.factory()
-			.select(Tables.BACKUPS.ID)
-			.from(Tables.BACKUPS)
-			.where(Tables.BACKUPS.RUN_TIME.lessThan(new Timestamp(runTime.getTime())))
+			.fetchOne();
+		// the same file has the same name path in all backups
+		Record oldRecord = database.factory()
+			.select(Tables.ENTRIES.ID, Tables.ENTRIES.BACKUP_ID)
+			.from(Tables.ENTRIES)
+			.join(Tables.BACKUPS)
+				.on(Tables.BACKUPS.ID.equal(Tables.ENTRIES.BACKUP_ID))
+			.where(Tables.ENTRIES.NAME_PATH.equal(record.getValue(Tables.ENTRIES.NAME_PATH)),
+					Tables.ENTRIES.TYPE.equal(Byte.valueOf((byte) EntryType.FILE.getValue())),
+					Tables.BACKUPS.RUN_TIME.lessThan(record.getValue(Tables.BACKUPS.RUN_TIME)))
 			.orderBy(Tables.BACKUPS.RUN_TIME.desc())
-			.fetchLazy();
-		try {
-			while (cursor.hasNext()) {
-				Record record = cursor.fetchOne();
-				int backupId = record.getValue(Tables.BACKUPS.ID).intValue();
-				int oldEntryId = findInBackup(entry.id, backupId);
-				if (oldEntryId > 0) {
-					Cursor<Record> entriesCursor = getEntriesCursor(backupId, -1, null, oldEntryId);
-					try {
-						List<Entry> entries = getEntries(entriesCursor, false);
-						if (!entries.isEmpty()) {
-							Entry oldEntry = entries.get(0);
-							if (oldEntry.type == EntryType.FILE) {
-								return oldEntry;
-							}
-						}
-					} finally {
-						database.closeQuietly(entriesCursor);
-					}
+			.limit(1)
+			.fetchAny();
+		if (oldRecord != null) {
+			Cursor<Record> cursor = getEntriesCursor(oldRecord.getValue(Tables.ENTRIES.BACKUP_ID).intValue(), -1,
+					oldRecord.getValue(Tables.ENTRIES.ID).intValue());
+			try {
+				List<Entry> entries = getEntries(cursor);
+				if (!entries.isEmpty()) {
+					return entries.get(0);
 				}
+			} finally {
+				database.closeQuietly(cursor);
 			}
-		} finally {
-			database.closeQuietly(cursor);
 		}
 
 		return null;
 	}
 
-	private int findInBackup(int entryId, int backupId) throws IOException {
-		IFileOrFolderEntry entry = toFileOrFolderEntry(entryId);
-		return Utils.findFileOrFolderEntryInBackup(entry, backupId, database);
-	}
-
-	private Utils.IFileOrFolderEntry toFileOrFolderEntry(final int entryId) {
-		Record record = database.factory()
-				.select(Tables.ENTRIES.NAME, Tables.ENTRIES.PARENT_ID, Tables.ENTRIES.TYPE)
-				.from(Tables.ENTRIES)
-				.where(Tables.ENTRIES.ID.equal(Integer.valueOf(entryId)))
-				.fetchOne();
-		final String name = record.getValue(Tables.ENTRIES.NAME);
-		final Integer parentId = record.getValue(Tables.ENTRIES.PARENT_ID);
-		final EntryType type = EntryType.fromValue(record.getValue(Tables.ENTRIES.TYPE).intValue());
-		return new Utils.IFileOrFolderEntry() {
-			@Override
-			public boolean isFolder() {
-				return type == EntryType.FOLDER;
-			}
-
-			@Override
-			public IFileOrFolderEntry getParentFolder() {
-				return (parentId != null) ? toFileOrFolderEntry(parentId.intValue()) : null;
-			}
-
-			@Override
-			public String getName() {
-				return name;
-			}
-
-			@Override
-			public String getAbsolutePath() {
-				return RestoreDialog.this.getAbsolutePath(entryId);
-			}
-		};
-	}
-
-	private String getAbsolutePath(int entryId) {
-		Record record = database.factory()
-			.select(Tables.ENTRIES.NAME, Tables.ENTRIES.PARENT_ID)
-			.from(Tables.ENTRIES)
-			.where(Tables.ENTRIES.ID.equal(Integer.valueOf(entryId)))
-			.fetchOne();
-		String name = record.getValue(Tables.ENTRIES.NAME);
-		Integer parentId = record.getValue(Tables.ENTRIES.PARENT_ID);
-		return (parentId != null) ? getAbsolutePath(parentId.intValue()) + File.separator + name : name;
-	}
-
 	private void restore(final Collection<Entry> entries) {
 		String folder = null;
 		for (;;) {
@@ -772,9 +909,9 @@ public class RestoreDialog extends Dialog {
 				File newFolder = new File(parentFolder, escapeFileName(entry.name));
 				FileUtils.forceMkdir(newFolder);
 
-				Cursor<Record> cursor = getEntriesCursor(backupId, entry.id, null, -1);
+				Cursor<Record> cursor = getEntriesCursor(backupId, entry.id, -1);
 				try {
-					for (Entry e : getEntries(cursor, false)) {
+					for (Entry e : getEntries(cursor)) {
 						restoreEntry(e, newFolder, outputFolder, backupId, monitor, shell);
 					}
 				} finally {
@@ -783,18 +920,13 @@ public class RestoreDialog extends Dialog {
 
 				outputPath = newFolder.toPath();
 			} else {
-				File inputFile = Utils.toBackupFile(entry.backupPath, outputFolder);
 				File outputFile = new File(parentFolder, escapeFileName(entry.name));
 				outputPath = outputFile.toPath();
 				InputStream in = null;
 				try {
-					InputStream fileIn = new BufferedInputStream(new FileInputStream(inputFile));
-					InputStream interceptIn = fileIn;
-					for (IStorageInterceptor interceptor : storageInterceptors) {
-						interceptIn = interceptor.interceptInputStream(interceptIn, entry.length);
-					}
-					InputStream compressIn = entry.compression.getInputStream(interceptIn);
-					in = compressIn;
+					BackupFileReader reader = new BackupFileReader(database, outputFolder, storageInterceptors);
+					in = reader.open(entry.fileId, entry.backupPath, entry.packOffset, entry.packLength, entry.length,
+							entry.compression);
 					Files.copy(in, outputPath);
 				} finally {
 					IOUtils.closeQuietly(in);
@@ -838,7 +970,13 @@ public class RestoreDialog extends Dialog {
 			.replaceAll("__", "_"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
-	private void startSearchTimer(final String text) {
+	private void startSearchTimer(String text) {
+		startSearchTimer(text, null, SEARCH_DELAY);
+	}
+
+	// continues the search at the position, or starts a new one if it is null
+	private void startSearchTimer(final String text, final SearchPosition position, long delay) {
+		final int generation = ++searchGeneration;
 		synchronized (this) {
 			if (searchTimerTask != null) {
 				searchTimerTask.cancel();
@@ -848,7 +986,7 @@ public class RestoreDialog extends Dialog {
 				@Override
 				public void run() {
 					if (StringUtils.isNotBlank(text)) {
-						runSearchAsync(text);
+						runSearchAsync(text, position, generation);
 					} else {
 						final Shell shell = getShell();
 						final Display display = shell.getDisplay();
@@ -870,23 +1008,24 @@ public class RestoreDialog extends Dialog {
 					}
 				}
 			};
-			timer.schedule(searchTimerTask, 1000L);
+			timer.schedule(searchTimerTask, delay);
 		}
 	}
 
-	private void runSearchAsync(String text) {
+	private void runSearchAsync(String text, final SearchPosition startPosition, final int generation) {
 		final Shell shell = getShell();
 		final Display display = shell.getDisplay();
-		final org.eclipse.swt.graphics.Cursor[] oldCursor = new org.eclipse.swt.graphics.Cursor[1];
 		final int[] backupId = { -1 };
 		if (!display.isDisposed()) {
 			display.syncExec(new Runnable() {
 				@Override
 				public void run() {
 					if (!display.isDisposed() && !shell.isDisposed()) {
-						oldCursor[0] = shell.getCursor();
-						shell.setCursor(display.getSystemCursor(SWT.CURSOR_WAIT));
-						shell.setEnabled(false);
+						if (numRunningSearches++ == 0) {
+							searchOldCursor = shell.getCursor();
+							// the shell stays enabled so that typing can cancel the search
+							shell.setCursor(display.getSystemCursor(SWT.CURSOR_APPSTARTING));
+						}
 						Backup backup = (Backup) ((IStructuredSelection) backupsViewer.getSelection()).getFirstElement();
 						if (backup != null) {
 							backupId[0] = backup.id;
@@ -895,20 +1034,36 @@ public class RestoreDialog extends Dialog {
 				}
 			});
 		}
-		Cursor<Record> cursor = null;
 		try {
 			if (backupId[0] > 0) {
-				cursor = getEntriesCursor(backupId[0], -1, text, -1);
-				final List<Entry> entries = getEntries(cursor, true);
+				final SearchPosition position = (startPosition != null) ? new SearchPosition(startPosition) : new SearchPosition();
+				final List<Entry> entries = search(backupId[0], text, position, generation);
+				if (entries == null) {
+					return;
+				}
+				final boolean moreResults = entries.size() > SEARCH_PAGE_SIZE;
+				if (moreResults) {
+					entries.remove(entries.size() - 1);
+				}
 				if (!display.isDisposed()) {
 					display.syncExec(new Runnable() {
 						@Override
 						public void run() {
-							if (!display.isDisposed() && !shell.isDisposed()) {
+							if (!display.isDisposed() && !shell.isDisposed() && (generation == searchGeneration)) {
+								List<Entry> results = new ArrayList<>();
+								if (startPosition != null) {
+									results.addAll(searchResults);
+								}
+								results.addAll(entries);
+								searchResults = results;
+								searchPosition = position;
 								((EntryLabelProvider) entriesViewer.getLabelProvider()).setShowFullPath(true);
 								((EntrySorter) entriesViewer.getSorter()).setSortFullPath(true);
-								entriesViewer.setInput(entries);
-								currentFolderLink.setText(StringUtils.EMPTY);
+								entriesViewer.setInput(results);
+								currentFolderLink.setText(moreResults ?
+										"<a href=\"" + MORE_SEARCH_RESULTS_LINK + "\">" + //$NON-NLS-1$ //$NON-NLS-2$
+											Messages.Label_MoreSearchResults + "</a>" : //$NON-NLS-1$
+										StringUtils.EMPTY);
 								moveUpButton.setEnabled(false);
 							}
 						}
@@ -918,15 +1073,12 @@ public class RestoreDialog extends Dialog {
 		} catch (DataAccessException e) {
 			BackupPlugin.getDefault().logError("error while searching for entries", e); //$NON-NLS-1$
 		} finally {
-			database.closeQuietly(cursor);
-
 			if (!display.isDisposed()) {
 				display.syncExec(new Runnable() {
 					@Override
 					public void run() {
-						if (!display.isDisposed() && !shell.isDisposed()) {
-							shell.setEnabled(true);
-							shell.setCursor(oldCursor[0]);
+						if (!display.isDisposed() && !shell.isDisposed() && (--numRunningSearches == 0)) {
+							shell.setCursor(searchOldCursor);
 						}
 					}
 				});
@@ -0,0 +1,35 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.restore;
+
+// where the next page of search results starts
+class SearchPosition {
+	// entries of names up to this ID have all been returned
+	int lastNameId;
+	// last entry returned from the names after that, or null if none have been returned
+	String lastName;
+	int lastEntryId;
+
+	SearchPosition() {}
+
+	SearchPosition(SearchPosition position) {
+		lastNameId = position.lastNameId;
+		lastName = position.lastName;
+		lastEntryId = position.lastEntryId;
+	}
+}
@@ -0,0 +1,70 @@
+/*
+blizzy's Backup - Easy to use personal file backup application
+Copyright (C) 2011-2012 Maik Schreiber
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package de.blizzy.backup.settings;
+
+import java.util.Map;
+
+import de.blizzy.backup.vfs.ILocation;
+
+// limits in bytes per second, or 0 for no limit
+public class RateLimits {
+	private long readRateLimit;
+	private long writeRateLimit;
+	private Map<ILocation, Long> locationReadRateLimits;
+	private int startHour;
+	private int endHour;
+
+	public RateLimits(long readRateLimit, long writeRateLimit, Map<ILocation, Long> locationReadRateLimits,
+			int startHour, int endHour) {
+
+		this.readRateLimit = readRateLimit;
+		this.writeRateLimit = writeRateLimit;
+		this.locationReadRateLimits = locationReadRateLimits;
+		this.startHour = startHour;
+		this.endHour = endHour;
+	}
+
+	// limit for reading files from all locations
+	public long getReadRateLimit() {
+		return readRateLimit;
+	}
+
+	// limit for writing backup files to the output folder
+	public long getWriteRateLimit() {
+		return writeRateLimit;
+	}
+
+	public long getReadRateLimit(ILocation location) {
+		Long limit = locationReadRateLimits.get(location);
+		return (limit != null) ? limit.longValue() : 0;
+	}
+
+	public Map<ILocation, Long> getLocationReadRateLimits() {
+		return locationReadRateLimits;
+	}
+
+	// hour of day at which limits start to apply, or -1 if they always apply
+	public int getStartHour() {
+		return startHour;
+	}
+
+	// hour of day at which limits stop to apply, or -1 if they always apply
+	public int getEndHour() {
+		return endHour;
+	}
+}
@@ -19,6 +19,7 @@ package de.blizzy.backup.settings;
 
 import java.util.Set;
 
+import de.blizzy.backup.Compression;
 import de.blizzy.backup.vfs.ILocation;
 
 public class Settings {
@@ -30,9 +31,19 @@ public class Settings {
 	private boolean useChecksums;
 	private int maxAgeDays;
 	private int maxDiskFillRate;
+	private int backupThreads;
+	private Compression compression;
+	private int compressionLevel;
+	private long minChunkedFileLength;
+	private int rehashInterval;
+	private long maxPackedFileLength;
+	private int maxBackupFilesPerFolder;
+	private RateLimits rateLimits;
 
 	public Settings(Set<ILocation> locations, String outputFolder, boolean runHourly, int dailyHours, int dailyMinutes,
-			boolean useChecksums, int maxAgeDays, int maxDiskFillRate) {
+			boolean useChecksums, int maxAgeDays, int maxDiskFillRate, int backupThreads,
+			Compression compression, int compressionLevel, long minChunkedFileLength, int rehashInterval,
+			long maxPackedFileLength, int maxBackupFilesPerFolder, RateLimits rateLimits) {
 		
 		this.locations = locations;
 		this.outputFolder = outputFolder;
@@ -42,6 +53,14 @@ public class Settings {
 		this.useChecksums = useChecksums;
 		this.maxAgeDays = maxAgeDays;
 		this.maxDiskFillRate = maxDiskFillRate;
+		this.backupThreads = backupThreads;
+		this.compression = compression;
+		this.compressionLevel = compressionLevel;
+		this.minChunkedFileLength = minChunkedFileLength;
+		this.rehashInterval = rehashInterval;
+		this.maxPackedFileLength = maxPackedFileLength;
+		this.maxBackupFilesPerFolder = maxBackupFilesPerFolder;
+		this.rateLimits = rateLimits;
 	}
 	
 	public Set<ILocation> getLocations() {
@@ -75,4 +94,38 @@ public class Settings {
 	public int getMaxDiskFillRate() {
 		return maxDiskFillRate;
 	}
+	
+	public int getBackupThreads() {
+		return backupThreads;
+	}
+	
+	public Compression getCompression() {
+		return compression;
+	}
+	
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+	
+	public long getMinChunkedFileLength() {
+		return minChunkedFileLength;
+	}
+	
+	// number of backup runs after which cached checksums are computed again, or 0 for never
+	public int getRehashInterval() {
+		return rehashInterval;
+	}
+	
+	// files up to this length are stored in pack files, or 0 to store each file separately
+	public long getMaxPackedFileLength() {
+		return maxPackedFileLength;
+	}
+	
+	public int getMaxBackupFilesPerFolder() {
+		return maxBackupFilesPerFolder;
+	}
+	
+	public RateLimits getRateLimits() {
+		return rateLimits;
+	}
 }
@@ -19,6 +19,7 @@ package de.blizzy.backup.settings;
 
 import java.io.File;
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashSet;
 import java.util.List;
@@ -29,10 +30,13 @@ import org.eclipse.jface.dialogs.Dialog;
 import org.eclipse.jface.dialogs.IDialogConstants;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ComboViewer;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.viewers.LabelProvider;
 import org.eclipse.jface.viewers.ListViewer;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
+import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerSorter;
 import org.eclipse.osgi.util.NLS;
@@ -60,6 +64,7 @@ import org.eclipse.swt.widgets.Text;
 
 import de.blizzy.backup.BackupApplication;
 import de.blizzy.backup.BackupPlugin;
+import de.blizzy.backup.Compression;
 import de.blizzy.backup.Messages;
 import de.blizzy.backup.Utils;
 import de.blizzy.backup.vfs.ILocation;
@@ -69,6 +74,10 @@ import de.blizzy.backup.vfs.filesystem.FileSystemFileOrFolder;
 import de.blizzy.backup.vfs.filesystem.FileSystemLocationProvider;
 
 public class SettingsDialog extends Dialog {
+	private static final long KB = 1024;
+	private static final long MB = 1024 * KB;
+
+	private Settings settings;
 	private ListViewer foldersViewer;
 	private Text outputFolderText;
 	private Button runHourlyRadio;
@@ -79,6 +88,18 @@ public class SettingsDialog extends Dialog {
 	private Button maxAgeDaysRadio;
 	private Spinner maxAgeDaysSpinner;
 	private Spinner maxDiskFillRateSpinner;
+	private Spinner backupThreadsSpinner;
+	private ComboViewer compressionViewer;
+	private ComboViewer compressionLevelViewer;
+	private Spinner minChunkedFileLengthSpinner;
+	private Spinner maxPackedFileLengthSpinner;
+	private Spinner maxBackupFilesPerFolderSpinner;
+	private Spinner rehashIntervalSpinner;
+	private Spinner readRateLimitSpinner;
+	private Spinner writeRateLimitSpinner;
+	private Button rateLimitHoursCheckbox;
+	private Spinner rateLimitStartHourSpinner;
+	private Spinner rateLimitEndHourSpinner;
 
 	public SettingsDialog(Shell parentShell) {
 		super(parentShell);
@@ -98,7 +119,7 @@ public class SettingsDialog extends Dialog {
 	
 	@Override
 	protected Control createDialogArea(Composite parent) {
-		Settings settings = BackupApplication.getSettingsManager().getSettings();
+		settings = BackupApplication.getSettingsManager().getSettings();
 
 		Composite composite = (Composite) super.createDialogArea(parent);
 		((GridLayout) composite.getLayout()).numColumns = 1;
@@ -252,6 +273,181 @@ public class SettingsDialog extends Dialog {
 		label.setText("%"); //$NON-NLS-1$
 		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
 
+		Group performanceComposite = new Group(composite, SWT.NONE);
+		performanceComposite.setText(Messages.Title_Performance);
+		performanceComposite.setLayout(new GridLayout(3, false));
+		performanceComposite.setLayoutData(new GridData(SWT.FILL, SWT.TOP, true, false));
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText(Messages.Label_BackupThreads + ":"); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		backupThreadsSpinner = new Spinner(performanceComposite, SWT.BORDER);
+		backupThreadsSpinner.setMinimum(1);
+		backupThreadsSpinner.setMaximum(64);
+		backupThreadsSpinner.setSelection(settings.getBackupThreads());
+		gd = new GridData(SWT.LEFT, SWT.CENTER, false, false);
+		gd.horizontalSpan = 2;
+		backupThreadsSpinner.setLayoutData(gd);
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText(Messages.Label_Compression + ":"); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		compressionViewer = new ComboViewer(performanceComposite);
+		compressionViewer.setContentProvider(new ArrayContentProvider());
+		compressionViewer.setLabelProvider(new LabelProvider() {
+			@Override
+			public String getText(Object element) {
+				return getCompressionName((Compression) element);
+			}
+		});
+		List<Compression> compressions = new ArrayList<>();
+		for (Compression compression : Compression.values()) {
+			if (compression.isAvailable()) {
+				compressions.add(compression);
+			}
+		}
+		compressionViewer.setInput(compressions);
+		compressionViewer.setSelection(new StructuredSelection(settings.getCompression()));
+		gd = new GridData(SWT.LEFT, SWT.CENTER, false, false);
+		gd.horizontalSpan = 2;
+		compressionViewer.getControl().setLayoutData(gd);
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText(Messages.Label_CompressionLevel + ":"); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		List<Integer> compressionLevels = new ArrayList<>();
+		compressionLevels.add(Integer.valueOf(Compression.DEFAULT_LEVEL));
+		for (int level = Compression.MIN_LEVEL; level <= Compression.MAX_LEVEL; level++) {
+			compressionLevels.add(Integer.valueOf(level));
+		}
+		compressionLevelViewer = new ComboViewer(performanceComposite);
+		compressionLevelViewer.setContentProvider(new ArrayContentProvider());
+		compressionLevelViewer.setLabelProvider(new LabelProvider() {
+			@Override
+			public String getText(Object element) {
+				int level = ((Integer) element).intValue();
+				return (level != Compression.DEFAULT_LEVEL) ? String.valueOf(level) : Messages.Label_Default;
+			}
+		});
+		compressionLevelViewer.setInput(compressionLevels);
+		compressionLevelViewer.setSelection(new StructuredSelection(Integer.valueOf(settings.getCompressionLevel())));
+		compressionLevelViewer.getControl().setEnabled(settings.getCompression() != Compression.STORE);
+		gd = new GridData(SWT.LEFT, SWT.CENTER, false, false);
+		gd.horizontalSpan = 2;
+		compressionLevelViewer.getControl().setLayoutData(gd);
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText(Messages.Label_MinChunkedFileLength + ":"); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		minChunkedFileLengthSpinner = new Spinner(performanceComposite, SWT.BORDER);
+		minChunkedFileLengthSpinner.setMinimum(1);
+		minChunkedFileLengthSpinner.setMaximum(1024 * 1024);
+		minChunkedFileLengthSpinner.setSelection((int) (settings.getMinChunkedFileLength() / MB));
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText("MB"); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText(Messages.Label_MaxPackedFileLength + ":"); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		maxPackedFileLengthSpinner = new Spinner(performanceComposite, SWT.BORDER);
+		maxPackedFileLengthSpinner.setMinimum(0);
+		maxPackedFileLengthSpinner.setMaximum(1024 * 1024);
+		maxPackedFileLengthSpinner.setSelection((int) (settings.getMaxPackedFileLength() / KB));
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText("KB " + Messages.Label_ZeroMeansOff); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText(Messages.Label_MaxBackupFilesPerFolder + ":"); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		maxBackupFilesPerFolderSpinner = new Spinner(performanceComposite, SWT.BORDER);
+		maxBackupFilesPerFolderSpinner.setMinimum(1);
+		maxBackupFilesPerFolderSpinner.setMaximum(100000);
+		maxBackupFilesPerFolderSpinner.setSelection(settings.getMaxBackupFilesPerFolder());
+		gd = new GridData(SWT.LEFT, SWT.CENTER, false, false);
+		gd.horizontalSpan = 2;
+		maxBackupFilesPerFolderSpinner.setLayoutData(gd);
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText(Messages.Label_RehashInterval + ":"); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		rehashIntervalSpinner = new Spinner(performanceComposite, SWT.BORDER);
+		rehashIntervalSpinner.setMinimum(0);
+		rehashIntervalSpinner.setMaximum(1000);
+		rehashIntervalSpinner.setSelection(settings.getRehashInterval());
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText(Messages.Label_ZeroMeansOff);
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText(Messages.Label_ReadRateLimit + ":"); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		readRateLimitSpinner = new Spinner(performanceComposite, SWT.BORDER);
+		readRateLimitSpinner.setMinimum(0);
+		readRateLimitSpinner.setMaximum(Integer.MAX_VALUE);
+		readRateLimitSpinner.setSelection((int) (settings.getRateLimits().getReadRateLimit() / KB));
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText("KB/s " + Messages.Label_ZeroMeansOff); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText(Messages.Label_WriteRateLimit + ":"); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		writeRateLimitSpinner = new Spinner(performanceComposite, SWT.BORDER);
+		writeRateLimitSpinner.setMinimum(0);
+		writeRateLimitSpinner.setMaximum(Integer.MAX_VALUE);
+		writeRateLimitSpinner.setSelection((int) (settings.getRateLimits().getWriteRateLimit() / KB));
+
+		label = new Label(performanceComposite, SWT.NONE);
+		label.setText("KB/s " + Messages.Label_ZeroMeansOff); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		rateLimitHoursCheckbox = new Button(performanceComposite, SWT.CHECK);
+		rateLimitHoursCheckbox.setText(Messages.Label_RateLimitHours + ":"); //$NON-NLS-1$
+		rateLimitHoursCheckbox.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		Composite rateLimitHoursComposite = new Composite(performanceComposite, SWT.NONE);
+		layout = new GridLayout(3, false);
+		layout.marginWidth = 0;
+		layout.marginHeight = 0;
+		rateLimitHoursComposite.setLayout(layout);
+		gd = new GridData(SWT.LEFT, SWT.CENTER, false, false);
+		gd.horizontalSpan = 2;
+		rateLimitHoursComposite.setLayoutData(gd);
+
+		rateLimitStartHourSpinner = new Spinner(rateLimitHoursComposite, SWT.BORDER);
+		rateLimitStartHourSpinner.setMinimum(0);
+		rateLimitStartHourSpinner.setMaximum(23);
+
+		label = new Label(rateLimitHoursComposite, SWT.NONE);
+		label.setText("-"); //$NON-NLS-1$
+		label.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false));
+
+		rateLimitEndHourSpinner = new Spinner(rateLimitHoursComposite, SWT.BORDER);
+		rateLimitEndHourSpinner.setMinimum(0);
+		rateLimitEndHourSpinner.setMaximum(23);
+
+		boolean rateLimitHours = settings.getRateLimits().getStartHour() >= 0;
+		rateLimitHoursCheckbox.setSelection(rateLimitHours);
+		rateLimitStartHourSpinner.setEnabled(rateLimitHours);
+		rateLimitEndHourSpinner.setEnabled(rateLimitHours);
+		rateLimitStartHourSpinner.setSelection(rateLimitHours ? settings.getRateLimits().getStartHour() : 22);
+		rateLimitEndHourSpinner.setSelection(rateLimitHours ? settings.getRateLimits().getEndHour() : 6);
+
 		Group scheduleExplanationComposite = new Group(composite, SWT.NONE);
 		scheduleExplanationComposite.setText(Messages.Title_ScheduleExplanation);
 		scheduleExplanationComposite.setLayout(new GridLayout(1, false));
@@ -326,6 +522,21 @@ public class SettingsDialog extends Dialog {
 				updateExplanationLabel();
 			}
 		});
+
+		compressionViewer.addSelectionChangedListener(new ISelectionChangedListener() {
+			@Override
+			public void selectionChanged(SelectionChangedEvent e) {
+				compressionLevelViewer.getControl().setEnabled(getSelectedCompression() != Compression.STORE);
+			}
+		});
+
+		rateLimitHoursCheckbox.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				rateLimitStartHourSpinner.setEnabled(rateLimitHoursCheckbox.getSelection());
+				rateLimitEndHourSpinner.setEnabled(rateLimitHoursCheckbox.getSelection());
+			}
+		});
 		
 		DropTarget dropTarget = new DropTarget(foldersViewer.getControl(), DND.DROP_LINK);
 		dropTarget.setTransfer(new Transfer[] { FileTransfer.getInstance() });
@@ -395,6 +606,31 @@ public class SettingsDialog extends Dialog {
 		return composite;
 	}
 
+	private static String getCompressionName(Compression compression) {
+		switch (compression) {
+			case GZIP:
+				return Messages.Compression_GZIP;
+			case BZIP2:
+				return Messages.Compression_BZIP2;
+			case STORE:
+				return Messages.Compression_STORE;
+			case LZ4:
+				return Messages.Compression_LZ4;
+			case ZSTD:
+				return Messages.Compression_ZSTD;
+		}
+		throw new IllegalArgumentException("unknown compression: " + compression); //$NON-NLS-1$
+	}
+
+	private Compression getSelectedCompression() {
+		return (Compression) ((IStructuredSelection) compressionViewer.getSelection()).getFirstElement();
+	}
+
+	// keeps the exact length if the value shown in units has not been changed
+	private static long getLength(Spinner spinner, long oldLength, long unit) {
+		return (spinner.getSelection() != (int) (oldLength / unit)) ? spinner.getSelection() * unit : oldLength;
+	}
+
 	private void showWarnings(Control selectedControl) {
 		if ((selectedControl == fileCompareChecksumRadio) && fileCompareChecksumRadio.getSelection()) {
 			MessageDialog.openInformation(getShell(), Messages.Title_Information, Messages.Warning_CompareChecksum);
@@ -564,11 +800,23 @@ public class SettingsDialog extends Dialog {
 			if (StringUtils.isBlank(outputFolder)) {
 				outputFolder = null;
 			}
-			Settings settings = new Settings(folders, outputFolder, runHourlyRadio.getSelection(),
+			RateLimits rateLimits = new RateLimits(
+					getLength(readRateLimitSpinner, settings.getRateLimits().getReadRateLimit(), KB),
+					getLength(writeRateLimitSpinner, settings.getRateLimits().getWriteRateLimit(), KB),
+					settings.getRateLimits().getLocationReadRateLimits(),
+					rateLimitHoursCheckbox.getSelection() ? rateLimitStartHourSpinner.getSelection() : -1,
+					rateLimitHoursCheckbox.getSelection() ? rateLimitEndHourSpinner.getSelection() : -1);
+			Settings newSettings = new Settings(folders, outputFolder, runHourlyRadio.getSelection(),
 					dailyTime.getHours(), dailyTime.getMinutes(), fileCompareChecksumRadio.getSelection(),
 					maxAgeDaysRadio.getSelection() ? maxAgeDaysSpinner.getSelection() : -1,
-					maxDiskFillRateSpinner.getSelection());
-			BackupApplication.getSettingsManager().setSettings(settings);
+					maxDiskFillRateSpinner.getSelection(), backupThreadsSpinner.getSelection(),
+					getSelectedCompression(),
+					((Integer) ((IStructuredSelection) compressionLevelViewer.getSelection()).getFirstElement()).intValue(),
+					getLength(minChunkedFileLengthSpinner, settings.getMinChunkedFileLength(), MB),
+					rehashIntervalSpinner.getSelection(),
+					getLength(maxPackedFileLengthSpinner, settings.getMaxPackedFileLength(), KB),
+					maxBackupFilesPerFolderSpinner.getSelection(), rateLimits);
+			BackupApplication.getSettingsManager().setSettings(newSettings);
 		}
 		
 		super.buttonPressed(buttonId);
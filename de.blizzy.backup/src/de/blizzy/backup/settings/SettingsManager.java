@@ -19,8 +19,10 @@ package de.blizzy.backup.settings;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang3.ArrayUtils;
@@ -30,6 +32,7 @@ import org.eclipse.core.runtime.SafeRunner;
 import org.eclipse.jface.dialogs.IDialogSettings;
 
 import de.blizzy.backup.BackupPlugin;
+import de.blizzy.backup.Compression;
 import de.blizzy.backup.Utils;
 import de.blizzy.backup.vfs.ILocation;
 import de.blizzy.backup.vfs.LocationProviderDescriptor;
@@ -41,6 +44,7 @@ public class SettingsManager {
 	public Settings getSettings() {
 		IDialogSettings section = getSection();
 		Set<ILocation> locations = new HashSet<>();
+		Map<ILocation, Long> locationReadRateLimits = new HashMap<>();
 
 		IDialogSettings locationsSection = section.getSection("locations"); //$NON-NLS-1$
 		if (locationsSection != null) {
@@ -51,7 +55,11 @@ public class SettingsManager {
 					String type = locationSection.get("__type"); //$NON-NLS-1$
 					for (LocationProviderDescriptor desc : descriptors) {
 						if (desc.getLocationProvider().getId().equals(type)) {
-							locations.add(desc.getLocationProvider().getLocation(locationSection));
+							ILocation location = desc.getLocationProvider().getLocation(locationSection);
+							locations.add(location);
+							if (locationSection.get("readRateLimit") != null) { //$NON-NLS-1$
+								locationReadRateLimits.put(location, Long.valueOf(locationSection.getLong("readRateLimit"))); //$NON-NLS-1$
+							}
 							break;
 						}
 					}
@@ -92,9 +100,60 @@ public class SettingsManager {
 		if (section.get("maxDiskFillRate") != null) { //$NON-NLS-1$
 			maxDiskFillRate = section.getInt("maxDiskFillRate"); //$NON-NLS-1$
 		}
+		int backupThreads = Runtime.getRuntime().availableProcessors();
+		if (section.get("backupThreads") != null) { //$NON-NLS-1$
+			backupThreads = section.getInt("backupThreads"); //$NON-NLS-1$
+		}
+		Compression compression = Compression.BZIP2;
+		if (section.get("compression") != null) { //$NON-NLS-1$
+			compression = Compression.fromValue(section.getInt("compression")); //$NON-NLS-1$
+		}
+		int compressionLevel = Compression.DEFAULT_LEVEL;
+		if (section.get("compressionLevel") != null) { //$NON-NLS-1$
+			compressionLevel = section.getInt("compressionLevel"); //$NON-NLS-1$
+			// the compressors fail on levels they don't know
+			if ((compressionLevel < Compression.MIN_LEVEL) || (compressionLevel > Compression.MAX_LEVEL)) {
+				compressionLevel = Compression.DEFAULT_LEVEL;
+			}
+		}
+		long minChunkedFileLength = 64L * 1024 * 1024;
+		if (section.get("minChunkedFileLength") != null) { //$NON-NLS-1$
+			minChunkedFileLength = section.getLong("minChunkedFileLength"); //$NON-NLS-1$
+		}
+		int rehashInterval = 0;
+		if (section.get("rehashInterval") != null) { //$NON-NLS-1$
+			rehashInterval = section.getInt("rehashInterval"); //$NON-NLS-1$
+		}
+		long maxPackedFileLength = 0;
+		if (section.get("maxPackedFileLength") != null) { //$NON-NLS-1$
+			maxPackedFileLength = section.getLong("maxPackedFileLength"); //$NON-NLS-1$
+		}
+		int maxBackupFilesPerFolder = 1000;
+		if (section.get("maxBackupFilesPerFolder") != null) { //$NON-NLS-1$
+			maxBackupFilesPerFolder = section.getInt("maxBackupFilesPerFolder"); //$NON-NLS-1$
+		}
+		long readRateLimit = 0;
+		if (section.get("readRateLimit") != null) { //$NON-NLS-1$
+			readRateLimit = section.getLong("readRateLimit"); //$NON-NLS-1$
+		}
+		long writeRateLimit = 0;
+		if (section.get("writeRateLimit") != null) { //$NON-NLS-1$
+			writeRateLimit = section.getLong("writeRateLimit"); //$NON-NLS-1$
+		}
+		int rateLimitStartHour = -1;
+		if (section.get("rateLimitStartHour") != null) { //$NON-NLS-1$
+			rateLimitStartHour = section.getInt("rateLimitStartHour"); //$NON-NLS-1$
+		}
+		int rateLimitEndHour = -1;
+		if (section.get("rateLimitEndHour") != null) { //$NON-NLS-1$
+			rateLimitEndHour = section.getInt("rateLimitEndHour"); //$NON-NLS-1$
+		}
+		RateLimits rateLimits = new RateLimits(readRateLimit, writeRateLimit, locationReadRateLimits,
+				rateLimitStartHour, rateLimitEndHour);
 
 		return new Settings(locations, outputFolder, runHourly, dailyHours, dailyMinutes, useChecksums,
-				maxAgeDays, maxDiskFillRate);
+				maxAgeDays, maxDiskFillRate, backupThreads, compression, compressionLevel,
+				minChunkedFileLength, rehashInterval, maxPackedFileLength, maxBackupFilesPerFolder, rateLimits);
 	}
 
 	private IDialogSettings getSection() {
@@ -110,6 +169,10 @@ public class SettingsManager {
 			IDialogSettings locationSection = locationsSection.addNewSection("location." + idx++); //$NON-NLS-1$
 			locationSection.put("__type", location.getProvider().getId()); //$NON-NLS-1$
 			location.getProvider().saveSettings(location, locationSection);
+			long readRateLimit = settings.getRateLimits().getReadRateLimit(location);
+			if (readRateLimit > 0) {
+				locationSection.put("readRateLimit", readRateLimit); //$NON-NLS-1$
+			}
 		}
 
 		// clean out old folders section
@@ -122,6 +185,17 @@ public class SettingsManager {
 		section.put("useChecksums", settings.isUseChecksums()); //$NON-NLS-1$
 		section.put("maxAgeDays", settings.getMaxAgeDays()); //$NON-NLS-1$
 		section.put("maxDiskFillRate", settings.getMaxDiskFillRate()); //$NON-NLS-1$
+		section.put("backupThreads", settings.getBackupThreads()); //$NON-NLS-1$
+		section.put("compression", settings.getCompression().getValue()); //$NON-NLS-1$
+		section.put("compressionLevel", settings.getCompressionLevel()); //$NON-NLS-1$
+		section.put("minChunkedFileLength", settings.getMinChunkedFileLength()); //$NON-NLS-1$
+		section.put("rehashInterval", settings.getRehashInterval()); //$NON-NLS-1$
+		section.put("maxPackedFileLength", settings.getMaxPackedFileLength()); //$NON-NLS-1$
+		section.put("maxBackupFilesPerFolder", settings.getMaxBackupFilesPerFolder()); //$NON-NLS-1$
+		section.put("readRateLimit", settings.getRateLimits().getReadRateLimit()); //$NON-NLS-1$
+		section.put("writeRateLimit", settings.getRateLimits().getWriteRateLimit()); //$NON-NLS-1$
+		section.put("rateLimitStartHour", settings.getRateLimits().getStartHour()); //$NON-NLS-1$
+		section.put("rateLimitEndHour", settings.getRateLimits().getEndHour()); //$NON-NLS-1$
 
 		fireSettingsChanged();
 	}
@@ -19,21 +19,22 @@ package de.blizzy.backup.vfs.filesystem;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.util.HashSet;
 import java.util.Set;
 
-import org.apache.commons.io.IOUtils;
-
 import de.blizzy.backup.FileAttributes;
-import de.blizzy.backup.vfs.IFile;
+import de.blizzy.backup.Utils;
+import de.blizzy.backup.vfs.IChannelFile;
 import de.blizzy.backup.vfs.IFileSystemEntry;
 import de.blizzy.backup.vfs.IFolder;
+import de.blizzy.backup.vfs.IKeyedFile;
 import de.blizzy.backup.vfs.IOutputStreamProvider;
 
-public class FileSystemFileOrFolder implements IFile, IFolder {
+public class FileSystemFileOrFolder implements IChannelFile, IKeyedFile, IFolder {
 	private File file;
 	private FileAttributes attrs;
 
@@ -73,6 +74,11 @@ public class FileSystemFileOrFolder implements IFile, IFolder {
 		return getAttributes().getModificationTime();
 	}
 
+	@Override
+	public String getFileKey() throws IOException {
+		return getAttributes().getFileKey();
+	}
+
 	@Override
 	public Set<IFileSystemEntry> list() {
 		Set<IFileSystemEntry> result = new HashSet<>();
@@ -87,13 +93,12 @@ public class FileSystemFileOrFolder implements IFile, IFolder {
 
 	@Override
 	public void copy(IOutputStreamProvider outputStreamProvider) throws IOException {
-		OutputStream out = null;
-		try {
-			out = outputStreamProvider.getOutputStream();
-			Files.copy(file.toPath(), out);
-		} finally {
-			IOUtils.closeQuietly(out);
-		}
+		Utils.copy(this, outputStreamProvider);
+	}
+
+	@Override
+	public ReadableByteChannel openChannel() throws IOException {
+		return FileChannel.open(file.toPath(), StandardOpenOption.READ);
 	}
 	
 	@Override